@@ -0,0 +1,114 @@
+package io.github.putme2yourheart.qrcodereaderview.benchmark;
+
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.github.putme2yourheart.qrcodereaderview.core.DecodeExecutor;
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+
+/**
+ * Frames decoded per second by a {@link DecodeExecutor} with 1, 2 or 4 workers, results
+ * delivered in frame order. The feeder never lets the workers wait: a worker taking a frame
+ * posts the next one at once, as a camera faster than the decoders would. One operation is one
+ * result delivered, so the score is in frames per second, and only grows with the workers on
+ * as many cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeExecutorBenchmark {
+
+    // Matches the rotation QRCodeReaderView applies to back camera frames
+    private static final int ROTATION = 90;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"640x480", "1280x720"})
+    public String previewSize;
+
+    private int previewWidth;
+    private int previewHeight;
+    private int windowSize;
+    private byte[] frame;
+    private FrameDecoder[] decoders;
+    private DecodeExecutor<byte[], Result> executor;
+    private final Semaphore delivered = new Semaphore(0);
+
+    @Setup
+    public void setUp() throws ReaderException {
+        String[] size = previewSize.split("x");
+        previewWidth = Integer.parseInt(size[0]);
+        previewHeight = Integer.parseInt(size[1]);
+        windowSize = Math.min(previewWidth, previewHeight) * 7 / 10;
+        frame = SyntheticFrame.create(previewWidth, previewHeight, windowSize * 3 / 4,
+                SyntheticFrame.Variant.CLEAN);
+
+        decoders = new FrameDecoder[workers];
+        for (int i = 0; i < workers; i++) {
+            decoders[i] = new FrameDecoder();
+        }
+        // A benchmark of the failure path would tell us nothing
+        decode(decoders[0]);
+
+        executor = new DecodeExecutor<>(new DecodeExecutor.FrameHandler<byte[], Result>() {
+            @Override
+            public Result onDecodeFrame(byte[] frame, int worker) {
+                // The frames are only read, the same one is posted every time
+                executor.post(frame);
+                try {
+                    return decode(decoders[worker]);
+                } catch (ReaderException e) {
+                    return null;
+                }
+            }
+
+            @Override
+            public void onDropFrame(byte[] frame) {
+            }
+
+            @Override
+            public void onFrameResult(Result result, long sequence) {
+                delivered.release();
+            }
+        }, workers);
+        executor.start();
+        executor.post(frame);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.stop();
+    }
+
+    private Result decode(FrameDecoder decoder) throws ReaderException {
+        // The framing rect, centered in portrait coordinates
+        return decoder.decode(frame, previewWidth, previewHeight, ROTATION,
+                (previewHeight - windowSize) / 2, (previewWidth - windowSize) / 2,
+                windowSize, windowSize);
+    }
+
+    @Benchmark
+    public void decodedFrame() throws InterruptedException {
+        delivered.acquire();
+    }
+}
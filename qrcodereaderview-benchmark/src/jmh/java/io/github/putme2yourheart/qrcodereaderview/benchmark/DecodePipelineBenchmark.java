@@ -0,0 +1,219 @@
+package io.github.putme2yourheart.qrcodereaderview.benchmark;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedPlaneLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
+
+/**
+ * The steps a preview frame goes through before a result comes out, each measured on its own:
+ * rotating the NV21 frame to portrait, building the luminance source of the framing rect,
+ * binarizing it and running the QR reader over it, plus the whole {@link FrameDecoder} pass.
+ * <p>
+ * Run with the gc profiler (the default of this module) to get the allocation rate next to ns/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodePipelineBenchmark {
+
+    /**
+     * Matches the rotation QRCodeReaderView applies to back camera frames.
+     */
+    private static final int ROTATION = 90;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String previewSize;
+
+    @Param({"CLEAN", "NOISE", "BLUR", "ROTATED"})
+    public String variant;
+
+    private int previewWidth;
+    private int previewHeight;
+    private byte[] frame;
+    private byte[] rotatedFrame;
+    // the Y plane of the frame as a camera2 Image hands it over: direct, padded rows
+    private ByteBuffer plane;
+    private int planeRowStride;
+
+    // the framing rect, in portrait coordinates
+    private int windowLeft;
+    private int windowTop;
+    private int windowSize;
+
+    private LuminanceSource windowSource;
+    private BinaryBitmap binaryBitmap;
+    private QRCodeReader qrCodeReader;
+    private FrameDecoder frameDecoder;
+    private FrameDecoder hybridFrameDecoder;
+    private FrameDecoder downsampledFrameDecoder;
+
+    @Setup
+    public void setUp() throws ReaderException {
+        String[] size = previewSize.split("x");
+        previewWidth = Integer.parseInt(size[0]);
+        previewHeight = Integer.parseInt(size[1]);
+
+        // same proportions as CameraManager.getFramingRect(): 7/10 of the short edge, centered
+        windowSize = Math.min(previewWidth, previewHeight) * 7 / 10;
+        windowLeft = (previewHeight - windowSize) / 2;
+        windowTop = (previewWidth - windowSize) / 2;
+
+        frame = SyntheticFrame.create(previewWidth, previewHeight, windowSize * 3 / 4,
+                SyntheticFrame.Variant.valueOf(variant));
+        rotatedFrame = rotateFrame();
+        planeRowStride = previewWidth + 64;
+        plane = ByteBuffer.allocateDirect((previewHeight - 1) * planeRowStride + previewWidth);
+        for (int y = 0; y < previewHeight; y++) {
+            plane.position(y * planeRowStride);
+            plane.put(frame, y * previewWidth, previewWidth);
+        }
+        plane.clear();
+        windowSource = planarYUVLuminanceSource();
+        binaryBitmap = new BinaryBitmap(new HybridBinarizer(windowSource));
+        // computed once here, so qrCodeReaderDecode() only measures the reader
+        binaryBitmap.getBlackMatrix();
+
+        qrCodeReader = new QRCodeReader();
+        frameDecoder = new FrameDecoder();
+        hybridFrameDecoder = new FrameDecoder();
+        hybridFrameDecoder.setAdaptiveBinarizerEnabled(false);
+        downsampledFrameDecoder = new FrameDecoder();
+        downsampledFrameDecoder.setDownsampledPassEnabled(true);
+
+        // a benchmark of the failure path would tell us nothing, make sure every input decodes
+        Result result = frameDecoder.decode(frame, previewWidth, previewHeight, ROTATION,
+                windowLeft, windowTop, windowSize, windowSize);
+        if (!SyntheticFrame.TEXT.equals(result.getText())) {
+            throw new IllegalStateException("Decoded " + result.getText());
+        }
+    }
+
+    /**
+     * The full frame rotation QRCodeReaderView used to run on every frame before cropping.
+     */
+    @Benchmark
+    public byte[] rotateFrame() {
+        byte[] rotated = new byte[frame.length];
+        for (int y = 0; y < previewHeight; y++) {
+            for (int x = 0; x < previewWidth; x++) {
+                rotated[x * previewHeight + previewHeight - y - 1] = frame[x + y * previewWidth];
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * Rotating only the framing rect, which replaced {@link #rotateFrame()}.
+     */
+    @Benchmark
+    public byte[] rotatedYUVLuminanceSource() {
+        return new RotatedYUVLuminanceSource(frame, previewWidth, previewHeight, ROTATION,
+                windowLeft, windowTop, windowSize, windowSize).getMatrix();
+    }
+
+    /**
+     * Same as {@link #rotatedYUVLuminanceSource()}, reading the direct plane in place.
+     */
+    @Benchmark
+    public byte[] rotatedPlaneLuminanceSource() {
+        return new RotatedPlaneLuminanceSource(plane, previewWidth, previewHeight,
+                planeRowStride, 1, ROTATION, windowLeft, windowTop, windowSize, windowSize)
+                .getMatrix();
+    }
+
+    @Benchmark
+    public PlanarYUVLuminanceSource planarYUVLuminanceSource() {
+        return new PlanarYUVLuminanceSource(rotatedFrame, previewHeight, previewWidth,
+                windowLeft, windowTop, windowSize, windowSize, false);
+    }
+
+    @Benchmark
+    public BitMatrix hybridBinarizer() throws NotFoundException {
+        return new HybridBinarizer(windowSource).getBlackMatrix();
+    }
+
+    @Benchmark
+    public BitMatrix globalHistogramBinarizer() {
+        try {
+            return new GlobalHistogramBinarizer(windowSource).getBlackMatrix();
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Result qrCodeReaderDecode() {
+        try {
+            return qrCodeReader.decode(binaryBitmap);
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            qrCodeReader.reset();
+        }
+    }
+
+    @Benchmark
+    public Result frameDecoder() {
+        try {
+            return frameDecoder.decode(frame, previewWidth, previewHeight, ROTATION,
+                    windowLeft, windowTop, windowSize, windowSize);
+        } catch (ReaderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@link #frameDecoder()} without the global histogram fast path.
+     */
+    @Benchmark
+    public Result hybridFrameDecoder() {
+        try {
+            return hybridFrameDecoder.decode(frame, previewWidth, previewHeight, ROTATION,
+                    windowLeft, windowTop, windowSize, windowSize);
+        } catch (ReaderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@link #frameDecoder()} trying half resolution first.
+     */
+    @Benchmark
+    public Result downsampledFrameDecoder() {
+        try {
+            return downsampledFrameDecoder.decode(frame, previewWidth, previewHeight, ROTATION,
+                    windowLeft, windowTop, windowSize, windowSize);
+        } catch (ReaderException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.putme2yourheart.qrcodereaderview.benchmark;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+import io.github.putme2yourheart.qrcodereaderview.core.ResultPoints;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.TiledDecoder;
+
+/**
+ * A 12 MP photo, 4000x3000, searched the way QRCodeImageDecoder of the view module does: first
+ * scaled down to 1000x750, then in 1024 pixel tiles at full resolution on a pool of one thread
+ * per CPU. That class reads Android bitmaps, so its passes are rebuilt here from the same core
+ * classes and sizes, the luminance being scaled down by keeping one pixel out of 4.
+ * <p>
+ * A 1600 pixel code is found by the first pass, which {@link #firstPassThenTiles()} stops at
+ * while {@link #bothPasses()} tiles the photo anyway. A 100 pixel code is only found in the
+ * tiles, both then do the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageDecodeBenchmark {
+
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    // The sample size QRCodeImageDecoder picks for the first pass of a 12 MP image
+    private static final int FIRST_PASS_SAMPLE_SIZE = 4;
+    private static final int TILE_SIZE = 1024;
+    private static final int TILE_OVERLAP = 384;
+
+    @Param({"1600", "100"})
+    public int codeSize;
+
+    private byte[] image;
+    private ExecutorService executor;
+    private TiledDecoder tiledDecoder;
+
+    @Setup
+    public void setUp() {
+        // The Y plane of the frame is the luminance of the photo
+        image = SyntheticFrame.create(WIDTH, HEIGHT, codeSize, SyntheticFrame.Variant.CLEAN);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        tiledDecoder = new TiledDecoder(executor, TILE_SIZE, TILE_OVERLAP);
+
+        if (bothPasses().isEmpty()) {
+            throw new IllegalStateException("No code found in the photo");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Result> firstPassThenTiles() {
+        List<Result> results = new ArrayList<>();
+        decodeFirstPass(results);
+        if (results.isEmpty()) {
+            decodeTiles(results);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<Result> bothPasses() {
+        List<Result> results = new ArrayList<>();
+        decodeFirstPass(results);
+        decodeTiles(results);
+        return results;
+    }
+
+    private void decodeFirstPass(List<Result> results) {
+        try {
+            for (Result result : new FrameDecoder().decodeMultiple(
+                    scaledLuminance(FIRST_PASS_SAMPLE_SIZE))) {
+                ResultPoints.scale(result, FIRST_PASS_SAMPLE_SIZE);
+                results.add(result);
+            }
+        } catch (NotFoundException e) {
+            // left to the tiles
+        }
+    }
+
+    private void decodeTiles(List<Result> results) {
+        try {
+            for (Result result : tiledDecoder.decodeMultiple(new RotatedYUVLuminanceSource(
+                    image, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT))) {
+                results.add(result);
+            }
+        } catch (NotFoundException e) {
+            // nothing in the photo
+        }
+    }
+
+    private LuminanceSource scaledLuminance(int sampleSize) {
+        int width = WIDTH / sampleSize;
+        int height = HEIGHT / sampleSize;
+        byte[] luminance = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                luminance[y * width + x] = image[y * sampleSize * WIDTH + x * sampleSize];
+            }
+        }
+        return new RotatedYUVLuminanceSource(luminance, width, height, 0, 0, 0, width, height);
+    }
+}
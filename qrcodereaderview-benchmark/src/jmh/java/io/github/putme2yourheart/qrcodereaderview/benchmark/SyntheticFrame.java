@@ -0,0 +1,193 @@
+package io.github.putme2yourheart.qrcodereaderview.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds NV21 preview frames showing a QR code in the middle, the way the camera hands them to
+ * the decoder: landscape, Y plane first, the code as large as it is inside the framing rect.
+ * Frames with many small codes are built by {@link #createScattered}.
+ */
+final class SyntheticFrame {
+
+    /**
+     * How the code is degraded before it is written into the frame.
+     */
+    enum Variant {
+        /** A sharp code on an evenly lit background. */
+        CLEAN,
+        /** Gaussian sensor noise on every luminance sample. */
+        NOISE,
+        /** Out of focus, two passes of a 3x3 box blur. */
+        BLUR,
+        /** The code tilted by 15 degrees. */
+        ROTATED
+    }
+
+    static final String TEXT = "https://github.com/putme2yourheart/QRCodeReaderView";
+
+    private static final int LIGHT = 200;
+    private static final int DARK = 30;
+    private static final byte CHROMA = (byte) 128;
+    // HybridBinarizer thresholds 8x8 blocks spanning more than 24 levels at their mean, so
+    // stronger noise turns the inside of large modules into speckle and nothing decodes at 1080p
+    private static final double NOISE_SIGMA = 4;
+    private static final double TILT_DEGREES = 15;
+    private static final long SEED = 0x5eedL;
+
+    private SyntheticFrame() {
+    }
+
+    /**
+     * @param width    the preview width.
+     * @param height   the preview height.
+     * @param codeSize the size of the code, quiet zone included, in pixels.
+     */
+    static byte[] create(int width, int height, int codeSize, Variant variant) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int i = 0; i < width * height; i++) {
+            frame[i] = (byte) LIGHT;
+        }
+        for (int i = width * height; i < frame.length; i++) {
+            frame[i] = CHROMA;
+        }
+
+        BitMatrix code = encode(codeSize);
+        double angle = variant == Variant.ROTATED ? Math.toRadians(TILT_DEGREES) : 0;
+        drawCode(frame, width, height, code, angle);
+
+        if (variant == Variant.BLUR) {
+            boxBlur(frame, width, height);
+            boxBlur(frame, width, height);
+        } else if (variant == Variant.NOISE) {
+            addNoise(frame, width, height);
+        }
+        return frame;
+    }
+
+    /**
+     * Builds a frame showing {@code columns * rows} small clean codes spread over a grid, each
+     * nudged by a random offset inside its cell, such as a shelf of labelled parcels.
+     *
+     * @param codeSize the size of a code, quiet zone included, in pixels.
+     * @see #text(int)
+     */
+    static byte[] createScattered(int width, int height, int codeSize, int columns, int rows) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int i = 0; i < width * height; i++) {
+            frame[i] = (byte) LIGHT;
+        }
+        for (int i = width * height; i < frame.length; i++) {
+            frame[i] = CHROMA;
+        }
+
+        Random random = new Random(SEED);
+        int cellWidth = width / columns;
+        int cellHeight = height / rows;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                BitMatrix code = encode(text(row * columns + column), codeSize);
+                int left = column * cellWidth + random.nextInt(cellWidth - codeSize + 1);
+                int top = row * cellHeight + random.nextInt(cellHeight - codeSize + 1);
+                for (int y = 0; y < code.getHeight(); y++) {
+                    for (int x = 0; x < code.getWidth(); x++) {
+                        frame[(top + y) * width + left + x] =
+                                (byte) (code.get(x, y) ? DARK : LIGHT);
+                    }
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * @return the text of the code at {@code index} of {@link #createScattered}, row by row.
+     */
+    static String text(int index) {
+        return TEXT + "#" + index;
+    }
+
+    private static BitMatrix encode(int size) {
+        return encode(TEXT, size);
+    }
+
+    private static BitMatrix encode(String text, int size) {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 2);
+        try {
+            return new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size, hints);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Draws the code centered in the frame, turned by {@code angle} radians around its center.
+     */
+    private static void drawCode(byte[] frame, int width, int height, BitMatrix code,
+                                 double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double half = code.getWidth() / 2.0;
+        double centerX = width / 2.0;
+        double centerY = height / 2.0;
+        int reach = (int) Math.ceil(half * (Math.abs(cos) + Math.abs(sin)));
+        int top = Math.max(0, (int) centerY - reach);
+        int bottom = Math.min(height, (int) centerY + reach);
+        int left = Math.max(0, (int) centerX - reach);
+        int right = Math.min(width, (int) centerX + reach);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                // map the frame pixel back onto the unrotated code
+                double dx = x + 0.5 - centerX;
+                double dy = y + 0.5 - centerY;
+                int codeX = (int) Math.floor(dx * cos + dy * sin + half);
+                int codeY = (int) Math.floor(-dx * sin + dy * cos + half);
+                if (codeX >= 0 && codeX < code.getWidth() && codeY >= 0 && codeY < code.getHeight()) {
+                    frame[y * width + x] = (byte) (code.get(codeX, codeY) ? DARK : LIGHT);
+                }
+            }
+        }
+    }
+
+    private static void boxBlur(byte[] frame, int width, int height) {
+        int[] sums = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int i = -1; i <= 1; i++) {
+                    sum += frame[y * width + clamp(x + i, width)] & 0xff;
+                }
+                sums[y * width + x] = sum;
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int i = -1; i <= 1; i++) {
+                    sum += sums[clamp(y + i, height) * width + x];
+                }
+                frame[y * width + x] = (byte) (sum / 9);
+            }
+        }
+    }
+
+    private static void addNoise(byte[] frame, int width, int height) {
+        Random random = new Random(SEED);
+        for (int i = 0; i < width * height; i++) {
+            int value = (frame[i] & 0xff) + (int) Math.round(random.nextGaussian() * NOISE_SIGMA);
+            frame[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : value >= size ? size - 1 : value;
+    }
+}
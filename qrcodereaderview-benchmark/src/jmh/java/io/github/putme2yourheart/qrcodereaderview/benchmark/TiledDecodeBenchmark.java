@@ -0,0 +1,104 @@
+package io.github.putme2yourheart.qrcodereaderview.benchmark;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.TiledDecoder;
+
+/**
+ * A 1920x1080 preview showing a grid of small codes, decoded whole in one multiple decoding
+ * pass against decoded in overlapping tiles on a pool of 1, 2 or 4 threads. The single pass
+ * misses some of the codes, see the count printed by the setup.
+ * <p>
+ * The pool is a plain fixed thread pool, as on the device where ForkJoinPool needs Android 5.0.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TiledDecodeBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 3;
+    // Matches the rotation QRCodeReaderView applies to back camera frames
+    private static final int ROTATION = 90;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    @Param({"100", "130"})
+    public int codeSize;
+
+    private byte[] frame;
+    private LuminanceSource source;
+    private FrameDecoder frameDecoder;
+    private ExecutorService executor;
+    private TiledDecoder tiledDecoder;
+
+    @Setup
+    public void setUp() throws NotFoundException {
+        frame = SyntheticFrame.createScattered(WIDTH, HEIGHT, codeSize, COLUMNS, ROWS);
+        // The whole preview in portrait, as if the framing rect covered it
+        source = new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, ROTATION,
+                0, 0, HEIGHT, WIDTH);
+        frameDecoder = new FrameDecoder();
+        executor = Executors.newFixedThreadPool(threads);
+        tiledDecoder = new TiledDecoder(executor, 384, 160);
+
+        // The tiles must find every code for the comparison to mean anything
+        int found = tiledDecoder().length;
+        if (found != COLUMNS * ROWS) {
+            throw new IllegalStateException("Tiles found " + found + " codes");
+        }
+        System.out.println("Single pass found " + singlePass().length + " of "
+                + COLUMNS * ROWS + " codes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Result[] singlePass() {
+        try {
+            return frameDecoder.decodeMultiple(frame, WIDTH, HEIGHT, ROTATION,
+                    0, 0, HEIGHT, WIDTH);
+        } catch (NotFoundException e) {
+            return new Result[0];
+        }
+    }
+
+    @Benchmark
+    public Result[] tiledDecoder() {
+        try {
+            return tiledDecoder.decodeMultiple(source);
+        } catch (NotFoundException e) {
+            return new Result[0];
+        }
+    }
+}
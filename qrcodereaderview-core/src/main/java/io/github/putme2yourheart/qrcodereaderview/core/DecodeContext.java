@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The buffers a frame goes through on its way to the readers, kept from one frame to the next.
+ * <p>
+ * The scan window is copied, rotated, into a luminance array and binarized into a BitMatrix. It
+ * is read either from a byte array or from a plane of strided pixels, such as the Y plane of an
+ * {@code android.media.Image}, without copying the rest of the frame.
+ * Both, together with the block thresholds, are only reallocated when the preview size, the
+ * rotation or the scan window change, so once the first frame of a session has been decoded
+ * neither step allocates anything.
+ * <p>
+ * The thresholding is the one of ZXing's GlobalHistogramBinarizer and HybridBinarizer, rewritten
+ * to work in place. Not thread safe, each decode thread needs its own context.
+ */
+final class DecodeContext {
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+    // HybridBinarizer uses 5x5 blocks to compute local luminance, where each block is 8x8 pixels.
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    // the frame layout, the window, in rotated coordinates, and the scale the buffers were
+    // made for
+    private int dataWidth = -1;
+    private int dataHeight = -1;
+    private int rowStride;
+    private int pixelStride;
+    private int rotation = -1;
+    private int left;
+    private int top;
+    private int windowWidth;
+    private int windowHeight;
+    private int scale;
+
+    // the size of the buffers
+    private int width;
+    private int height;
+
+    private int base;
+    private int dx;
+    private int dy;
+
+    private byte[] luminances;
+    private int[][] blackPoints;
+    private final int[] buckets = new int[LUMINANCE_BUCKETS];
+    private BitMatrix matrix;
+    private WindowSource source;
+    private BinaryBitmap bitmap;
+
+    /**
+     * Copies the scan window out of a YUV frame, see
+     * {@link RotatedYUVLuminanceSource#RotatedYUVLuminanceSource(byte[], int, int, int, int, int, int, int)}
+     * for the parameters.
+     *
+     * @return the luminance of the window, valid until the next call.
+     */
+    LuminanceSource load(byte[] data, int dataWidth, int dataHeight, int rotation,
+                         int left, int top, int width, int height) {
+        return load(data, dataWidth, dataHeight, rotation, left, top, width, height, 1);
+    }
+
+    /**
+     * Same as {@link #load(byte[], int, int, int, int, int, int, int)}, but scales the window
+     * down by averaging blocks of {@code scale} by {@code scale} pixels.
+     *
+     * @param scale 1 to copy the window as is, 2 to halve its width and height.
+     * @return the luminance of the scaled down window, valid until the next call.
+     */
+    LuminanceSource load(byte[] data, int dataWidth, int dataHeight, int rotation,
+                         int left, int top, int width, int height, int scale) {
+        prepare(dataWidth, dataHeight, dataWidth, 1, rotation, left, top, width, height, scale);
+        if (scale == 1) {
+            copyWindow(data);
+        } else {
+            copyHalfWindow(data);
+        }
+        return source;
+    }
+
+    /**
+     * Same as {@link #load(byte[], int, int, int, int, int, int, int, int)}, but reads the
+     * frame from a plane in which rows start every {@code rowStride} bytes and pixels are
+     * {@code pixelStride} bytes apart. Indexes are taken from the start of the buffer, its
+     * position and limit are neither used nor changed.
+     *
+     * @return the luminance of the window, valid until the next call.
+     */
+    LuminanceSource load(ByteBuffer plane, int dataWidth, int dataHeight, int rowStride,
+                         int pixelStride, int rotation, int left, int top, int width, int height,
+                         int scale) {
+        prepare(dataWidth, dataHeight, rowStride, pixelStride, rotation, left, top, width, height,
+                scale);
+        RotatedYUVLuminanceSource.checkPlane(plane.capacity(), dataWidth, dataHeight, rowStride,
+                pixelStride);
+        if (scale == 1) {
+            copyWindow(plane);
+        } else {
+            copyHalfWindow(plane);
+        }
+        return source;
+    }
+
+    private void prepare(int dataWidth, int dataHeight, int rowStride, int pixelStride,
+                         int rotation, int left, int top, int width, int height, int scale) {
+        if (scale != 1 && scale != 2) {
+            throw new IllegalArgumentException("Unsupported scale: " + scale);
+        }
+        if (dataWidth != this.dataWidth || dataHeight != this.dataHeight
+                || rowStride != this.rowStride || pixelStride != this.pixelStride
+                || rotation != this.rotation || left != this.left || top != this.top
+                || width != this.windowWidth || height != this.windowHeight
+                || scale != this.scale) {
+            RotatedYUVLuminanceSource.checkWindow(dataWidth, dataHeight, rotation,
+                    left, top, width, height);
+            this.dx = RotatedYUVLuminanceSource.stepX(rotation, rowStride, pixelStride);
+            this.dy = RotatedYUVLuminanceSource.stepY(rotation, rowStride, pixelStride);
+            this.base = RotatedYUVLuminanceSource.origin(rotation, dataWidth, dataHeight,
+                    rowStride, pixelStride) + left * dx + top * dy;
+            this.dataWidth = dataWidth;
+            this.dataHeight = dataHeight;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+            this.rotation = rotation;
+            this.left = left;
+            this.top = top;
+            this.windowWidth = width;
+            this.windowHeight = height;
+            this.scale = scale;
+            resize(width / scale, height / scale);
+        }
+    }
+
+    private void copyWindow(byte[] data) {
+        byte[] luminances = this.luminances;
+        for (int y = 0, offset = base, row = 0; y < height; y++, offset += dy, row += width) {
+            if (dx == 1) {
+                System.arraycopy(data, offset, luminances, row, width);
+            } else {
+                for (int x = 0, index = offset; x < width; x++, index += dx) {
+                    luminances[row + x] = data[index];
+                }
+            }
+        }
+    }
+
+    /**
+     * A 2x2 box filter, each pixel is the rounded average of the four pixels it replaces.
+     */
+    private void copyHalfWindow(byte[] data) {
+        byte[] luminances = this.luminances;
+        int dx = this.dx;
+        int dy = this.dy;
+        for (int y = 0, offset = base, row = 0; y < height; y++, offset += 2 * dy, row += width) {
+            for (int x = 0, index = offset; x < width; x++, index += 2 * dx) {
+                int sum = (data[index] & 0xff) + (data[index + dx] & 0xff)
+                        + (data[index + dy] & 0xff) + (data[index + dx + dy] & 0xff);
+                luminances[row + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    /**
+     * Reads the window one pixel at a time: the preview is rotated by 90 degrees, so rows of the
+     * window are never contiguous in the plane anyway.
+     */
+    private void copyWindow(ByteBuffer plane) {
+        byte[] luminances = this.luminances;
+        for (int y = 0, offset = base, row = 0; y < height; y++, offset += dy, row += width) {
+            for (int x = 0, index = offset; x < width; x++, index += dx) {
+                luminances[row + x] = plane.get(index);
+            }
+        }
+    }
+
+    private void copyHalfWindow(ByteBuffer plane) {
+        byte[] luminances = this.luminances;
+        int dx = this.dx;
+        int dy = this.dy;
+        for (int y = 0, offset = base, row = 0; y < height; y++, offset += 2 * dy, row += width) {
+            for (int x = 0, index = offset; x < width; x++, index += 2 * dx) {
+                int sum = (plane.get(index) & 0xff) + (plane.get(index + dx) & 0xff)
+                        + (plane.get(index + dy) & 0xff) + (plane.get(index + dx + dy) & 0xff);
+                luminances[row + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    /**
+     * Copies any luminance source.
+     *
+     * @return a copy of {@code source}, valid until the next call.
+     */
+    LuminanceSource load(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (dataWidth != -1 || width != this.width || height != this.height) {
+            dataWidth = -1;
+            dataHeight = -1;
+            rotation = -1;
+            resize(width, height);
+        }
+
+        if (source instanceof RotatedYUVLuminanceSource) {
+            ((RotatedYUVLuminanceSource) source).getMatrix(luminances);
+        } else {
+            System.arraycopy(source.getMatrix(), 0, luminances, 0, width * height);
+        }
+        return this.source;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        luminances = new byte[width * height];
+        blackPoints = new int[subSize(height)][subSize(width)];
+        matrix = new BitMatrix(width, height);
+        source = new WindowSource(luminances, width, height);
+        bitmap = new BinaryBitmap(new WindowBinarizer(source, matrix));
+    }
+
+    private static int subSize(int size) {
+        int subSize = size >> BLOCK_SIZE_POWER;
+        if ((size & BLOCK_SIZE_MASK) != 0) {
+            subSize++;
+        }
+        return subSize;
+    }
+
+    /**
+     * Binarizes the loaded window with a single threshold taken from its histogram, like
+     * GlobalHistogramBinarizer.
+     *
+     * @return the binarized window, valid until the next call.
+     * @throws NotFoundException if the window has too little contrast.
+     */
+    BinaryBitmap binarizeGlobalHistogram() throws NotFoundException {
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        // Sample four rows, as GlobalHistogramBinarizer does.
+        for (int y = 1; y < 5; y++) {
+            int offset = height * y / 5 * width;
+            int right = (width * 4) / 5;
+            for (int x = width / 5; x < right; x++) {
+                buckets[(luminances[offset + x] & 0xff) >> LUMINANCE_SHIFT]++;
+            }
+        }
+        int blackPoint = estimateBlackPoint(buckets);
+
+        matrix.clear();
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if ((luminances[offset + x] & 0xff) < blackPoint) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Binarizes the loaded window with local thresholds, like HybridBinarizer.
+     *
+     * @return the binarized window, valid until the next call.
+     * @throws NotFoundException if the window is too small for local thresholds and has too
+     *                           little contrast for a global one.
+     */
+    BinaryBitmap binarizeHybrid() throws NotFoundException {
+        if (width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            return binarizeGlobalHistogram();
+        }
+        int subWidth = subSize(width);
+        int subHeight = subSize(height);
+        calculateBlackPoints(subWidth, subHeight);
+        matrix.clear();
+        calculateThresholdForBlock(subWidth, subHeight);
+        return bitmap;
+    }
+
+    /**
+     * For each block in the image, calculate the average black point using a 5x5 grid
+     * of the blocks around it. Also handles the corner cases (fractional blocks are computed based
+     * on the last pixels in the row/column which are also used in the previous block).
+     */
+    private void calculateThresholdForBlock(int subWidth, int subHeight) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = y << BLOCK_SIZE_POWER;
+            if (yoffset > maxYOffset) {
+                yoffset = maxYOffset;
+            }
+            int top = cap(y, 2, subHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = x << BLOCK_SIZE_POWER;
+                if (xoffset > maxXOffset) {
+                    xoffset = maxXOffset;
+                }
+                int left = cap(x, 2, subWidth - 3);
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int[] blackRow = blackPoints[top + z];
+                    sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left]
+                            + blackRow[left + 1] + blackRow[left + 2];
+                }
+                thresholdBlock(xoffset, yoffset, sum / 25);
+            }
+        }
+    }
+
+    private static int cap(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    /**
+     * Applies a single threshold to a block of pixels.
+     */
+    private void thresholdBlock(int xoffset, int yoffset, int threshold) {
+        for (int y = 0, offset = yoffset * width + xoffset; y < BLOCK_SIZE; y++, offset += width) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                // Comparison needs to be <= so that black == 0 pixels are black even if the
+                // threshold is 0.
+                if ((luminances[offset + x] & 0xFF) <= threshold) {
+                    matrix.set(xoffset + x, yoffset + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates a single black point for each block of pixels and saves it away.
+     */
+    private void calculateBlackPoints(int subWidth, int subHeight) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = y << BLOCK_SIZE_POWER;
+            if (yoffset > maxYOffset) {
+                yoffset = maxYOffset;
+            }
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = x << BLOCK_SIZE_POWER;
+                if (xoffset > maxXOffset) {
+                    xoffset = maxXOffset;
+                }
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE;
+                     yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        if (pixel < min) {
+                            min = pixel;
+                        }
+                        if (pixel > max) {
+                            max = pixel;
+                        }
+                    }
+                    // short-circuit min/max tests once dynamic range is met
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += luminances[offset + xx] & 0xFF;
+                            }
+                        }
+                    }
+                }
+
+                // The default estimate is the average of the values in the block.
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    // A low contrast block is assumed to be background, unless it is darker than
+                    // the black points of its neighbors, which then carry over to it.
+                    average = min / 2;
+                    if (y > 0 && x > 0) {
+                        int averageNeighborBlackPoint = (blackPoints[y - 1][x]
+                                + (2 * blackPoints[y][x - 1]) + blackPoints[y - 1][x - 1]) / 4;
+                        if (min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+                blackPoints[y][x] = average;
+            }
+        }
+    }
+
+    private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+        // Find the tallest peak in the histogram.
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            if (buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if (buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+
+        // Find the second-tallest peak which is somewhat far from the tallest peak.
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if (score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+
+        if (firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+
+        // Too little contrast to pick a meaningful black point.
+        if (secondPeak - firstPeak <= numBuckets / 16) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        // Find a valley between them that is low and closer to the white peak.
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for (int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if (score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+
+        return bestValley << LUMINANCE_SHIFT;
+    }
+
+    /**
+     * The luminance array of the context seen as a LuminanceSource. Crops and rotations, which
+     * only some readers ask for, are views over the array.
+     */
+    private static final class WindowSource extends LuminanceSource {
+
+        private final byte[] luminances;
+
+        WindowSource(byte[] luminances, int width, int height) {
+            super(width, height);
+            this.luminances = luminances;
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            if (y < 0 || y >= getHeight()) {
+                throw new IllegalArgumentException("Requested row is outside the image: " + y);
+            }
+            int width = getWidth();
+            if (row == null || row.length < width) {
+                row = new byte[width];
+            }
+            System.arraycopy(luminances, y * width, row, 0, width);
+            return row;
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            return luminances;
+        }
+
+        @Override
+        public boolean isCropSupported() {
+            return true;
+        }
+
+        @Override
+        public LuminanceSource crop(int left, int top, int width, int height) {
+            return new PlanarYUVLuminanceSource(luminances, getWidth(), getHeight(),
+                    left, top, width, height, false);
+        }
+
+        @Override
+        public boolean isRotateSupported() {
+            return true;
+        }
+
+        @Override
+        public LuminanceSource rotateCounterClockwise() {
+            return new RotatedYUVLuminanceSource(luminances, getWidth(), getHeight(), 270,
+                    0, 0, getHeight(), getWidth());
+        }
+    }
+
+    /**
+     * Hands the matrix last binarized by the context to the readers. Row access for the 1D
+     * readers and binarizers of derived sources behave like HybridBinarizer.
+     */
+    private static final class WindowBinarizer extends GlobalHistogramBinarizer {
+
+        private final BitMatrix matrix;
+
+        WindowBinarizer(LuminanceSource source, BitMatrix matrix) {
+            super(source);
+            this.matrix = matrix;
+        }
+
+        @Override
+        public BitMatrix getBlackMatrix() {
+            return matrix;
+        }
+
+        @Override
+        public Binarizer createBinarizer(LuminanceSource source) {
+            return new HybridBinarizer(source);
+        }
+    }
+}
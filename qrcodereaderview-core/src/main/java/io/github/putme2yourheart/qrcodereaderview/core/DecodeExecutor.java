@@ -0,0 +1,323 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs frame decoding on dedicated background threads, so decoding never waits behind other
+ * work of the host app the way it does on the shared AsyncTask executor.
+ * <p>
+ * Frames are handed over through a lock-free single-slot mailbox: posting a frame replaces the
+ * frame no decode thread has picked up yet, so the decoders always work on the newest frame and
+ * stale frames never pile up. Nothing is allocated per frame, the reorder buffer only
+ * grows while a slow decode holds back more results than it has room for.
+ * <p>
+ * With more than one worker, consecutive frames are decoded at the same time. Every frame taken
+ * from the mailbox gets a sequence number, and results are handed to
+ * {@link FrameHandler#onFrameResult(Object, long)} in that order: a result waits until every
+ * older frame still being decoded is done.
+ * <p>
+ * Results are handed over without holding the lock the workers take their frames under. The
+ * worker which finds results ready delivers them, and keeps delivering those which become ready
+ * meanwhile, while the other workers go on decoding. A slow
+ * {@link FrameHandler#onFrameResult(Object, long)} therefore only holds back the worker making
+ * the call.
+ *
+ * @param <F> the type of a frame, such as the byte array of a preview frame
+ * @param <R> the type of a decode result
+ */
+public final class DecodeExecutor<F, R> {
+
+    public interface FrameHandler<F, R> {
+
+        /**
+         * Called on a decode thread for every frame taken from the mailbox. Must not throw,
+         * an exception would end the worker.
+         *
+         * @param frame  the frame to decode.
+         * @param worker index of the calling worker, from 0 to worker count - 1, so per worker
+         *               state can be kept without locking.
+         * @return the decode result, or null if nothing was found.
+         */
+        R onDecodeFrame(F frame, int worker);
+
+        /**
+         * Called for frames which were replaced by a newer one, or posted while stopped,
+         * before they could be decoded.
+         */
+        void onDropFrame(F frame);
+
+        /**
+         * Called on a decode thread with the non-null results of
+         * {@link #onDecodeFrame(Object, int)}, in frame order. Calls never overlap and must not
+         * throw.
+         *
+         * @param result   the decode result.
+         * @param sequence sequence number of the decoded frame.
+         */
+        void onFrameResult(R result, long sequence);
+    }
+
+    private static final String THREAD_NAME = "QRCodeDecode";
+    private static final long IDLE = Long.MAX_VALUE;
+
+    private final AtomicReference<F> mailbox = new AtomicReference<>();
+    private final FrameHandler<F, R> handler;
+    private final int workerCount;
+
+    // Guards the sequence numbers, the reorder buffer and the delivery token, never taken by
+    // post()
+    private final Object sequenceLock = new Object();
+    private final long[] inFlight;
+    // Results waiting for older frames, sorted by sequence number
+    private long[] pendingSequences;
+    private Object[] pendingResults;
+    private int pendingCount;
+    private long nextSequence;
+    // Held by the worker handing results over, so only one does and in frame order
+    private boolean delivering;
+
+    private volatile boolean running;
+    // The thread of each worker, null once it has ended, only set while holding this
+    private final AtomicReferenceArray<Thread> threads;
+
+    public DecodeExecutor(FrameHandler<F, R> handler) {
+        this(handler, 1);
+    }
+
+    public DecodeExecutor(FrameHandler<F, R> handler, int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be greater than 0.");
+        }
+        this.handler = handler;
+        this.workerCount = workerCount;
+        this.inFlight = new long[workerCount];
+        this.pendingSequences = new long[workerCount];
+        this.pendingResults = new Object[workerCount];
+        this.threads = new AtomicReferenceArray<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            inFlight[i] = IDLE;
+        }
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Starts the decode threads, if they are not running yet. A worker whose thread is still
+     * finishing a decode begun before {@link #stop()} keeps that thread, so the state of a
+     * worker is never used by two threads at once.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            if (threads.get(i) != null) {
+                continue;
+            }
+            final int worker = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop(worker);
+                }
+            }, workerCount == 1 ? THREAD_NAME : THREAD_NAME + "-" + i);
+            threads.set(i, thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the decode threads. Decodes in progress are allowed to finish, pending frames are
+     * dropped. Returns without waiting for the threads to end.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        unparkWorkers();
+        drop(mailbox.getAndSet(null));
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Hands a frame over to the decode threads, replacing the pending frame if there is one.
+     * Safe to call from any thread.
+     */
+    public void post(F frame) {
+        if (!running) {
+            drop(frame);
+            return;
+        }
+        drop(mailbox.getAndSet(frame));
+        unparkWorkers();
+
+        // stop() may have run in between, make sure the frame is not left behind
+        if (!running) {
+            drop(mailbox.getAndSet(null));
+        }
+    }
+
+    private void unparkWorkers() {
+        for (int i = 0; i < workerCount; i++) {
+            Thread thread = threads.get(i);
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * @return false once the executor is stopped, the calling thread is then no longer the
+     * thread of the worker and must end.
+     */
+    private boolean keepRunning(int worker) {
+        if (running) {
+            return true;
+        }
+        // Decided under the lock of start(), which either sees the thread gone or keeps it
+        synchronized (this) {
+            if (running) {
+                return true;
+            }
+            threads.set(worker, null);
+            return false;
+        }
+    }
+
+    private void loop(int worker) {
+        Thread self = Thread.currentThread();
+        while (keepRunning(worker)) {
+            F frame;
+            long sequence;
+            synchronized (sequenceLock) {
+                // Taking the frame and numbering it is one step, so numbers follow frame order
+                frame = mailbox.getAndSet(null);
+                sequence = nextSequence;
+                if (frame != null) {
+                    nextSequence++;
+                    inFlight[worker] = sequence;
+                }
+            }
+            if (frame == null) {
+                LockSupport.park(self);
+                continue;
+            }
+
+            R result = null;
+            try {
+                result = handler.onDecodeFrame(frame, worker);
+            } finally {
+                complete(worker, sequence, result);
+            }
+        }
+    }
+
+    private void complete(int worker, long sequence, R result) {
+        synchronized (sequenceLock) {
+            if (inFlight[worker] == sequence) {
+                inFlight[worker] = IDLE;
+            }
+            if (result != null) {
+                addPending(sequence, result);
+            }
+            if (delivering || !hasReadyResult()) {
+                // The worker delivering picks up whatever became ready
+                return;
+            }
+            delivering = true;
+        }
+        deliverReadyResults();
+    }
+
+    /**
+     * Hands the ready results over one by one, without holding the lock, until none is left.
+     * Called by the worker holding the delivery token, which it gives back when done.
+     */
+    private void deliverReadyResults() {
+        boolean done = false;
+        try {
+            while (true) {
+                R readyResult;
+                long readySequence;
+                synchronized (sequenceLock) {
+                    if (!hasReadyResult()) {
+                        delivering = false;
+                        done = true;
+                        return;
+                    }
+                    @SuppressWarnings("unchecked")
+                    R first = (R) pendingResults[0];
+                    readyResult = first;
+                    readySequence = pendingSequences[0];
+                    removePending(1);
+                }
+                handler.onFrameResult(readyResult, readySequence);
+            }
+        } finally {
+            if (!done) {
+                synchronized (sequenceLock) {
+                    delivering = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the oldest pending result is older than every frame being decoded. Every
+     * result added later comes from one of those frames, so it can be delivered right away.
+     */
+    private boolean hasReadyResult() {
+        if (pendingCount == 0) {
+            return false;
+        }
+        for (long inFlightSequence : inFlight) {
+            if (inFlightSequence < pendingSequences[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addPending(long sequence, R result) {
+        if (pendingCount == pendingSequences.length) {
+            pendingSequences = Arrays.copyOf(pendingSequences, pendingCount * 2);
+            pendingResults = Arrays.copyOf(pendingResults, pendingCount * 2);
+        }
+        int index = pendingCount;
+        while (index > 0 && pendingSequences[index - 1] > sequence) {
+            index--;
+        }
+        System.arraycopy(pendingSequences, index, pendingSequences, index + 1, pendingCount - index);
+        System.arraycopy(pendingResults, index, pendingResults, index + 1, pendingCount - index);
+        pendingSequences[index] = sequence;
+        pendingResults[index] = result;
+        pendingCount++;
+    }
+
+    private void removePending(int count) {
+        if (count == 0) {
+            return;
+        }
+        pendingCount -= count;
+        System.arraycopy(pendingSequences, count, pendingSequences, 0, pendingCount);
+        System.arraycopy(pendingResults, count, pendingResults, 0, pendingCount);
+        // Let go of the delivered results
+        Arrays.fill(pendingResults, pendingCount, pendingCount + count, null);
+    }
+
+    private void drop(F frame) {
+        if (frame != null) {
+            handler.onDropFrame(frame);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.multi.MultipleBarcodeReader;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes camera preview frames: crops the scan window out of the frame while rotating it,
+ * binarizes it and runs the reader chain built from the decode hints over it. Frames are either
+ * byte arrays with the Y plane first, as delivered by {@code android.hardware.Camera}, or planes
+ * of strided pixels, such as the Y plane of an {@code android.media.Image}.
+ * <p>
+ * Evenly lit, high contrast windows are first binarized with the cheaper global histogram
+ * threshold, falling back to HybridBinarizer when that finds nothing.
+ * <p>
+ * The luminance and binarized buffers are kept between frames and only reallocated when the
+ * frame size or the scan window change.
+ * <p>
+ * Large windows can first be decoded at half resolution, see
+ * {@link #setDownsampledPassEnabled(boolean)}.
+ * <p>
+ * Attempts, successes and the latency of every stage can be counted, see
+ * {@link #setMetrics(ScanMetrics)}.
+ * <p>
+ * Nothing in here depends on Android, so the whole decode pipeline can be tested and profiled
+ * on a plain JVM. Not thread safe, use one FrameDecoder per decode thread.
+ */
+public final class FrameDecoder {
+
+    /**
+     * {@link #getLastLevel()} after a frame without a code.
+     */
+    public static final int LEVEL_NONE = -1;
+    /**
+     * {@link #getLastLevel()} after a code was decoded at full resolution.
+     */
+    public static final int LEVEL_FULL = 0;
+    /**
+     * {@link #getLastLevel()} after a code was decoded at half resolution.
+     */
+    public static final int LEVEL_HALF = 1;
+
+    /**
+     * Windows whose short side is smaller than this are always decoded at full resolution,
+     * halving them would leave too few pixels per module for all but the biggest codes.
+     */
+    public static final int MIN_DOWNSAMPLED_SIZE = 400;
+
+    private Map<DecodeHintType, ?> hints;
+    private Map<DecodeHintType, ?> readerHints;
+    private final ScalingResultPointCallback resultPointCallback =
+            new ScalingResultPointCallback();
+    private ReaderChain readerChain;
+    private MultipleBarcodeReader multipleReader;
+    private final DecodeContext context = new DecodeContext();
+    private final DecodeContext halfContext = new DecodeContext();
+    private final LuminanceHistogram histogram = new LuminanceHistogram();
+    private boolean adaptiveBinarizerEnabled = true;
+    private boolean downsampledPassEnabled = false;
+    private int lastLevel = LEVEL_NONE;
+    private final FrameQuality quality = new FrameQuality();
+    private float minSharpness;
+    private float minContrast;
+    private boolean lastFrameSkipped;
+    private ScanMetrics metrics;
+
+    // The frame being decoded, either data or plane, only set for the duration of a decode
+    private byte[] frameData;
+    private ByteBuffer framePlane;
+    private int frameWidth;
+    private int frameHeight;
+    private int frameRowStride;
+    private int framePixelStride;
+    private int frameRotation;
+
+    public FrameDecoder() {
+        this(null);
+    }
+
+    public FrameDecoder(Map<DecodeHintType, ?> hints) {
+        setHints(hints);
+    }
+
+    /**
+     * Set the hints used for decoding. The reader chain is only rebuilt when a different map is
+     * given, which also forgets which format was decoded last.
+     *
+     * @param hints decode hints, may be null.
+     */
+    public void setHints(Map<DecodeHintType, ?> hints) {
+        if (readerChain != null && hints == this.hints) {
+            return;
+        }
+        this.hints = hints;
+        this.readerChain = ReaderChain.fromHints(hints);
+        this.multipleReader = null;
+        this.readerHints = withResultPointCallback(hints, resultPointCallback);
+    }
+
+    /**
+     * Set a callback told about every point of interest the readers find, such as finder
+     * patterns, including those of frames which end up not decoding. Points are in the
+     * coordinates of the decoded window.
+     *
+     * @param callback the callback, null to remove it.
+     */
+    public void setResultPointCallback(ResultPointCallback callback) {
+        resultPointCallback.target = callback;
+        this.readerHints = withResultPointCallback(hints, resultPointCallback);
+    }
+
+    private static Map<DecodeHintType, ?> withResultPointCallback(
+            Map<DecodeHintType, ?> hints, ScalingResultPointCallback callback) {
+        if (callback.target == null) {
+            return hints;
+        }
+        Map<DecodeHintType, Object> readerHints = new EnumMap<>(DecodeHintType.class);
+        if (hints != null) {
+            readerHints.putAll(hints);
+        }
+        readerHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, callback);
+        return readerHints;
+    }
+
+    /**
+     * Enable/disable trying GlobalHistogramBinarizer before HybridBinarizer on evenly lit, high
+     * contrast windows. Enabled by default.
+     */
+    public void setAdaptiveBinarizerEnabled(boolean adaptiveBinarizerEnabled) {
+        this.adaptiveBinarizerEnabled = adaptiveBinarizerEnabled;
+    }
+
+    /**
+     * Enable/disable decoding windows of at least {@link #MIN_DOWNSAMPLED_SIZE} pixels at half
+     * resolution first, and only at full resolution when that finds nothing. Large, close codes
+     * decode from a quarter of the pixels, at the cost of a wasted half resolution pass for
+     * small or far codes. Disabled by default.
+     */
+    public void setDownsampledPassEnabled(boolean downsampledPassEnabled) {
+        this.downsampledPassEnabled = downsampledPassEnabled;
+    }
+
+    /**
+     * @return the resolution the last frame was decoded at, {@link #LEVEL_FULL},
+     * {@link #LEVEL_HALF}, or {@link #LEVEL_NONE} if nothing was decoded.
+     */
+    public int getLastLevel() {
+        return lastLevel;
+    }
+
+    /**
+     * Skip frames whose scan window is too blurry or too flat to be worth decoding, before
+     * anything is binarized. See {@link FrameQuality} for what is measured. Both thresholds are
+     * 0 by default, which lets every frame through.
+     *
+     * @param minSharpness minimum {@link FrameQuality#getSharpness()}.
+     * @param minContrast  minimum {@link FrameQuality#getContrast()}.
+     */
+    public void setQualityGate(float minSharpness, float minContrast) {
+        this.minSharpness = minSharpness;
+        this.minContrast = minContrast;
+    }
+
+    /**
+     * @return true if the last frame was skipped by the quality gate, in which case decoding it
+     * threw NotFoundException without running any reader.
+     */
+    public boolean wasLastFrameSkipped() {
+        return lastFrameSkipped;
+    }
+
+    /**
+     * Count the frames decoded by this decoder, and time their stages, in the given metrics.
+     * The same metrics can be shared by the decoders of several threads.
+     *
+     * @param metrics the metrics, null to stop counting.
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decodes a single code inside the crop window of a YUV frame.
+     *
+     * @param data       A preview frame, Y plane first.
+     * @param dataWidth  The width of the frame.
+     * @param dataHeight The height of the frame.
+     * @param rotation   Clockwise rotation applied to the frame before cropping: 0, 90, 180 or 270.
+     * @param left       Left edge of the crop window, in rotated coordinates.
+     * @param top        Top edge of the crop window, in rotated coordinates.
+     * @param width      Width of the crop window.
+     * @param height     Height of the crop window.
+     * @return the decoded code.
+     */
+    public Result decode(byte[] data, int dataWidth, int dataHeight, int rotation,
+                         int left, int top, int width, int height)
+            throws NotFoundException, ChecksumException, FormatException {
+        setFrame(data, null, dataWidth, dataHeight, dataWidth, 1, rotation);
+        try {
+            return decodeFrame(left, top, width, height);
+        } finally {
+            clearFrame();
+        }
+    }
+
+    /**
+     * Decodes a single code inside the crop window of a plane of luminance, such as the Y
+     * plane of an {@code android.media.Image}, without copying the frame out of it.
+     *
+     * @param plane       The plane, indexed from its start whatever its position.
+     * @param dataWidth   The width of the frame.
+     * @param dataHeight  The height of the frame.
+     * @param rowStride   The distance between the starts of two rows, in bytes.
+     * @param pixelStride The distance between two pixels of a row, in bytes.
+     * @param rotation    Clockwise rotation applied to the frame before cropping: 0, 90, 180 or
+     *                    270.
+     * @param left        Left edge of the crop window, in rotated coordinates.
+     * @param top         Top edge of the crop window, in rotated coordinates.
+     * @param width       Width of the crop window.
+     * @param height      Height of the crop window.
+     * @return the decoded code.
+     */
+    public Result decode(ByteBuffer plane, int dataWidth, int dataHeight, int rowStride,
+                         int pixelStride, int rotation, int left, int top, int width, int height)
+            throws NotFoundException, ChecksumException, FormatException {
+        setFrame(null, plane, dataWidth, dataHeight, rowStride, pixelStride, rotation);
+        try {
+            return decodeFrame(left, top, width, height);
+        } finally {
+            clearFrame();
+        }
+    }
+
+    /**
+     * Decodes every code inside the crop window of a YUV frame, see
+     * {@link #decode(byte[], int, int, int, int, int, int, int)} for the parameters.
+     *
+     * @return the decoded codes, never empty.
+     */
+    public Result[] decodeMultiple(byte[] data, int dataWidth, int dataHeight, int rotation,
+                                   int left, int top, int width, int height)
+            throws NotFoundException {
+        setFrame(data, null, dataWidth, dataHeight, dataWidth, 1, rotation);
+        try {
+            return decodeMultipleFrame(left, top, width, height);
+        } finally {
+            clearFrame();
+        }
+    }
+
+    /**
+     * Decodes every code inside the crop window of a plane of luminance, see
+     * {@link #decode(ByteBuffer, int, int, int, int, int, int, int, int, int)} for the
+     * parameters.
+     *
+     * @return the decoded codes, never empty.
+     */
+    public Result[] decodeMultiple(ByteBuffer plane, int dataWidth, int dataHeight,
+                                   int rowStride, int pixelStride, int rotation,
+                                   int left, int top, int width, int height)
+            throws NotFoundException {
+        setFrame(null, plane, dataWidth, dataHeight, rowStride, pixelStride, rotation);
+        try {
+            return decodeMultipleFrame(left, top, width, height);
+        } finally {
+            clearFrame();
+        }
+    }
+
+    private void setFrame(byte[] data, ByteBuffer plane, int dataWidth, int dataHeight,
+                          int rowStride, int pixelStride, int rotation) {
+        frameData = data;
+        framePlane = plane;
+        frameWidth = dataWidth;
+        frameHeight = dataHeight;
+        frameRowStride = rowStride;
+        framePixelStride = pixelStride;
+        frameRotation = rotation;
+    }
+
+    private void clearFrame() {
+        // Do not hold on to a buffer the camera wants back
+        frameData = null;
+        framePlane = null;
+    }
+
+    private Result decodeFrame(int left, int top, int width, int height)
+            throws NotFoundException, ChecksumException, FormatException {
+        lastLevel = LEVEL_NONE;
+        checkQuality(left, top, width, height);
+        onAttempt();
+        if (usesDownsampledPass(width, height)) {
+            try {
+                Result result = decodeLoaded(halfContext,
+                        load(halfContext, left, top, width, height, 2), 2);
+                ResultPoints.scale(result, 2);
+                onSuccess(LEVEL_HALF);
+                return result;
+            } catch (ReaderException e) {
+                // retry at full resolution
+            }
+        }
+        Result result = decodeLoaded(context, load(context, left, top, width, height, 1), 1);
+        onSuccess(LEVEL_FULL);
+        return result;
+    }
+
+    private Result[] decodeMultipleFrame(int left, int top, int width, int height)
+            throws NotFoundException {
+        lastLevel = LEVEL_NONE;
+        checkQuality(left, top, width, height);
+        onAttempt();
+        if (usesDownsampledPass(width, height)) {
+            try {
+                Result[] results = decodeMultipleLoaded(halfContext,
+                        load(halfContext, left, top, width, height, 2), 2);
+                for (Result result : results) {
+                    ResultPoints.scale(result, 2);
+                }
+                onSuccess(LEVEL_HALF);
+                return results;
+            } catch (NotFoundException e) {
+                // retry at full resolution
+            }
+        }
+        Result[] results = decodeMultipleLoaded(context,
+                load(context, left, top, width, height, 1), 1);
+        onSuccess(LEVEL_FULL);
+        return results;
+    }
+
+    /**
+     * Decodes a single code.
+     *
+     * @param source the luminance of the scan window.
+     * @return the decoded code.
+     */
+    public Result decode(LuminanceSource source)
+            throws NotFoundException, ChecksumException, FormatException {
+        lastLevel = LEVEL_NONE;
+        lastFrameSkipped = false;
+        onAttempt();
+        Result result = decodeLoaded(context, load(context, source), 1);
+        onSuccess(LEVEL_FULL);
+        return result;
+    }
+
+    /**
+     * Decodes every code.
+     *
+     * @param source the luminance of the scan window.
+     * @return the decoded codes, never empty.
+     */
+    public Result[] decodeMultiple(LuminanceSource source) throws NotFoundException {
+        lastLevel = LEVEL_NONE;
+        lastFrameSkipped = false;
+        onAttempt();
+        Result[] results = decodeMultipleLoaded(context, load(context, source), 1);
+        onSuccess(LEVEL_FULL);
+        return results;
+    }
+
+    private void checkQuality(int left, int top, int width, int height)
+            throws NotFoundException {
+        lastFrameSkipped = false;
+        if (minSharpness <= 0 && minContrast <= 0) {
+            return;
+        }
+        if (frameData != null) {
+            quality.measure(frameData, frameWidth, frameHeight, frameRotation,
+                    left, top, width, height);
+        } else {
+            quality.measure(framePlane, frameWidth, frameHeight, frameRowStride,
+                    framePixelStride, frameRotation, left, top, width, height);
+        }
+        lastFrameSkipped = quality.getSharpness() < minSharpness
+                || quality.getContrast() < minContrast;
+        if (metrics != null) {
+            metrics.onFrameChecked(lastFrameSkipped);
+        }
+        if (lastFrameSkipped) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+    }
+
+    private void onAttempt() {
+        if (metrics != null) {
+            metrics.onDecodeAttempt();
+        }
+    }
+
+    private void onSuccess(int level) {
+        lastLevel = level;
+        if (metrics != null) {
+            metrics.onDecodeSuccess(level);
+        }
+    }
+
+    /**
+     * @return the current time in nanoseconds if stages are timed, 0 otherwise.
+     */
+    private long startStage() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    private void endStage(int stage, long start) {
+        if (metrics != null) {
+            metrics.recordStage(stage, System.nanoTime() - start);
+        }
+    }
+
+    private LuminanceSource load(DecodeContext context, int left, int top, int width, int height,
+                                 int scale) {
+        long start = startStage();
+        LuminanceSource source;
+        if (frameData != null) {
+            source = context.load(frameData, frameWidth, frameHeight, frameRotation,
+                    left, top, width, height, scale);
+        } else {
+            source = context.load(framePlane, frameWidth, frameHeight, frameRowStride,
+                    framePixelStride, frameRotation, left, top, width, height, scale);
+        }
+        endStage(ScanMetrics.STAGE_ROTATE, start);
+        return source;
+    }
+
+    private LuminanceSource load(DecodeContext context, LuminanceSource source) {
+        long start = startStage();
+        LuminanceSource loaded = context.load(source);
+        endStage(ScanMetrics.STAGE_ROTATE, start);
+        return loaded;
+    }
+
+    private BinaryBitmap binarize(DecodeContext context, boolean globalHistogram)
+            throws NotFoundException {
+        long start = startStage();
+        try {
+            return globalHistogram ? context.binarizeGlobalHistogram() : context.binarizeHybrid();
+        } finally {
+            endStage(ScanMetrics.STAGE_BINARIZE, start);
+        }
+    }
+
+    private boolean usesDownsampledPass(int width, int height) {
+        return downsampledPassEnabled && Math.min(width, height) >= MIN_DOWNSAMPLED_SIZE;
+    }
+
+    /**
+     * Maps the points of a result decoded from a scaled down window back to the window.
+     */
+    private Result decodeLoaded(DecodeContext context, LuminanceSource source, int scale)
+            throws NotFoundException, ChecksumException, FormatException {
+        resultPointCallback.scale = scale;
+        if (prefersGlobalHistogram(source)) {
+            try {
+                return decodeBitmap(binarize(context, true));
+            } catch (ReaderException e) {
+                // retry with local thresholds
+            }
+        }
+        return decodeBitmap(binarize(context, false));
+    }
+
+    private Result decodeBitmap(BinaryBitmap bitmap)
+            throws NotFoundException, ChecksumException, FormatException {
+        long start = startStage();
+        try {
+            return readerChain.decode(bitmap, readerHints);
+        } finally {
+            readerChain.reset();
+            endStage(ScanMetrics.STAGE_DECODE, start);
+        }
+    }
+
+    private Result[] decodeMultipleLoaded(DecodeContext context, LuminanceSource source,
+                                          int scale) throws NotFoundException {
+        resultPointCallback.scale = scale;
+        if (multipleReader == null) {
+            multipleReader = readerChain.toMultipleReader();
+        }
+        if (prefersGlobalHistogram(source)) {
+            try {
+                return decodeMultipleBitmap(binarize(context, true));
+            } catch (NotFoundException e) {
+                // retry with local thresholds
+            }
+        }
+        return decodeMultipleBitmap(binarize(context, false));
+    }
+
+    private Result[] decodeMultipleBitmap(BinaryBitmap bitmap) throws NotFoundException {
+        long start = startStage();
+        try {
+            return multipleReader.decodeMultiple(bitmap, readerHints);
+        } finally {
+            readerChain.reset();
+            endStage(ScanMetrics.STAGE_DECODE, start);
+        }
+    }
+
+    private boolean prefersGlobalHistogram(LuminanceSource source) {
+        return adaptiveBinarizerEnabled && histogram.isEvenHighContrast(source);
+    }
+
+    /**
+     * Hands the points found by the readers to the callback set by the caller, in the
+     * coordinates of the full resolution window.
+     */
+    private static final class ScalingResultPointCallback implements ResultPointCallback {
+
+        ResultPointCallback target;
+        int scale = 1;
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            if (scale != 1) {
+                point = new ResultPoint(point.getX() * scale, point.getY() * scale);
+            }
+            target.foundPossibleResultPoint(point);
+        }
+    }
+}
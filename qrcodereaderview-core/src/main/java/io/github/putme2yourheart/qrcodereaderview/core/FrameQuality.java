@@ -0,0 +1,132 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A cheap estimate of how sharp and how contrasted the scan window of a frame is, good enough
+ * to tell frames smeared by a moving camera from frames worth decoding.
+ * <p>
+ * Sharpness is the variance of the 4-neighbour Laplacian and contrast the standard deviation
+ * of the luminance, both taken on a grid of one pixel out of {@link #GRID_STEP} in each
+ * direction of the window, read straight from the Y plane of the frame. The Laplacian uses the
+ * neighbours on the grid rather than the adjacent pixels, so it responds to blur at the scale
+ * of a code module instead of the sensor noise. It does not change with 90 degree rotations
+ * either, so the window is never copied nor rotated.
+ * <p>
+ * Not thread safe, the last measure is kept in the instance.
+ */
+public final class FrameQuality {
+
+    /**
+     * Distance between two sampled pixels.
+     */
+    public static final int GRID_STEP = 4;
+
+    /**
+     * A sharpness threshold which only skips badly smeared frames. Sensor noise alone adds
+     * about 20 times its variance to the sharpness, so noisy sensors need a higher one.
+     */
+    public static final float DEFAULT_MIN_SHARPNESS = 150;
+
+    /**
+     * A contrast threshold which skips frames showing nothing but a uniform surface.
+     */
+    public static final float DEFAULT_MIN_CONTRAST = 10;
+
+    private float sharpness;
+    private float contrast;
+
+    /**
+     * Measures the crop window of a YUV frame, see
+     * {@link RotatedYUVLuminanceSource#RotatedYUVLuminanceSource(byte[], int, int, int, int, int, int, int)}
+     * for the parameters.
+     */
+    public void measure(byte[] data, int dataWidth, int dataHeight, int rotation,
+                        int left, int top, int width, int height) {
+        RotatedYUVLuminanceSource.checkWindow(dataWidth, dataHeight, rotation,
+                left, top, width, height);
+        int dx = RotatedYUVLuminanceSource.stepX(rotation, dataWidth);
+        int dy = RotatedYUVLuminanceSource.stepY(rotation, dataWidth);
+        int base = RotatedYUVLuminanceSource.origin(rotation, dataWidth, dataHeight)
+                + left * dx + top * dy;
+        measure(data, null, base, dx, dy, width, height);
+    }
+
+    /**
+     * Same as {@link #measure(byte[], int, int, int, int, int, int, int)}, for a frame read from
+     * a plane in which rows start every {@code rowStride} bytes and pixels are
+     * {@code pixelStride} bytes apart, indexed from the start of the buffer.
+     */
+    public void measure(ByteBuffer plane, int dataWidth, int dataHeight, int rowStride,
+                        int pixelStride, int rotation, int left, int top, int width, int height) {
+        RotatedYUVLuminanceSource.checkWindow(dataWidth, dataHeight, rotation,
+                left, top, width, height);
+        RotatedYUVLuminanceSource.checkPlane(plane.capacity(), dataWidth, dataHeight, rowStride,
+                pixelStride);
+        int dx = RotatedYUVLuminanceSource.stepX(rotation, rowStride, pixelStride);
+        int dy = RotatedYUVLuminanceSource.stepY(rotation, rowStride, pixelStride);
+        int base = RotatedYUVLuminanceSource.origin(rotation, dataWidth, dataHeight, rowStride,
+                pixelStride) + left * dx + top * dy;
+        measure(null, plane, base, dx, dy, width, height);
+    }
+
+    /**
+     * Samples either {@code data} or {@code plane}, whichever is not null.
+     */
+    private void measure(byte[] data, ByteBuffer plane, int base, int dx, int dy,
+                         int width, int height) {
+        long count = 0;
+        long sum = 0;
+        long sumSquares = 0;
+        long laplacianSum = 0;
+        long laplacianSumSquares = 0;
+        int stepX = GRID_STEP * dx;
+        int stepY = GRID_STEP * dy;
+        // Stay one step away from the edges, every sample needs its four neighbours
+        for (int y = GRID_STEP; y < height - GRID_STEP; y += GRID_STEP) {
+            for (int x = GRID_STEP, offset = base + y * dy + stepX; x < width - GRID_STEP;
+                 x += GRID_STEP, offset += stepX) {
+                int center = luminance(data, plane, offset);
+                int laplacian = 4 * center
+                        - luminance(data, plane, offset - stepX)
+                        - luminance(data, plane, offset + stepX)
+                        - luminance(data, plane, offset - stepY)
+                        - luminance(data, plane, offset + stepY);
+                count++;
+                sum += center;
+                sumSquares += center * center;
+                laplacianSum += laplacian;
+                laplacianSumSquares += laplacian * laplacian;
+            }
+        }
+
+        if (count == 0) {
+            sharpness = 0;
+            contrast = 0;
+            return;
+        }
+        float mean = (float) sum / count;
+        contrast = (float) Math.sqrt(Math.max(0, (float) sumSquares / count - mean * mean));
+        float laplacianMean = (float) laplacianSum / count;
+        sharpness = Math.max(0, (float) laplacianSumSquares / count
+                - laplacianMean * laplacianMean);
+    }
+
+    private static int luminance(byte[] data, ByteBuffer plane, int index) {
+        return (data != null ? data[index] : plane.get(index)) & 0xff;
+    }
+
+    /**
+     * @return the variance of the Laplacian of the last measured window. Higher is sharper.
+     */
+    public float getSharpness() {
+        return sharpness;
+    }
+
+    /**
+     * @return the standard deviation of the luminance of the last measured window.
+     */
+    public float getContrast() {
+        return contrast;
+    }
+}
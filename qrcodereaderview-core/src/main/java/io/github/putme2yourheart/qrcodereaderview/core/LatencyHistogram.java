@@ -0,0 +1,129 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations with fixed, power of two buckets: bucket {@code i} counts
+ * the durations shorter than {@code 2^i} microseconds and at least as long as the bucket
+ * before it, the last bucket takes everything longer. Recording is a couple of atomic
+ * increments, safe from any number of threads, and never allocates.
+ * <p>
+ * Values are read one by one, so a read racing with a record may see the new count before the
+ * new total.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of buckets, the last one starts at about 4 seconds.
+     */
+    public static final int BUCKET_COUNT = 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration, in nanoseconds. Negative durations are counted as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos / 1000));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = maxNanos.get();
+        } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+    }
+
+    private static int bucketOf(long micros) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return the number of recorded durations.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param bucket from 0 to {@link #BUCKET_COUNT} - 1.
+     * @return the number of recorded durations in the bucket.
+     */
+    public long getBucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @param bucket from 0 to {@link #BUCKET_COUNT} - 1.
+     * @return the exclusive upper bound of the bucket in microseconds, {@link Long#MAX_VALUE}
+     * for the last one.
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * @return the mean of the recorded durations in nanoseconds, 0 when empty.
+     */
+    public long getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / n;
+    }
+
+    /**
+     * @return the longest recorded duration in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Estimates a percentile from the buckets.
+     *
+     * @param percentile from 0 to 100.
+     * @return the upper bound, in microseconds, of the bucket holding the percentile, 0 when
+     * empty. Capped by the longest recorded duration.
+     */
+    public long getPercentileMicros(float percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1) {
+            seen += snapshot[bucket];
+            if (seen >= rank) {
+                break;
+            }
+            bucket++;
+        }
+        return Math.min(getBucketUpperBoundMicros(bucket), maxNanos.get() / 1000);
+    }
+
+    /**
+     * Clears every bucket.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A quick look at the luminance of a scan window, deciding whether a single global threshold is
+ * enough to binarize it or whether it needs the local thresholds of HybridBinarizer.
+ * <p>
+ * Only a grid of samples taken from a few rows is looked at, which costs a small fraction of
+ * binarizing the window. Not thread safe, the row buffer is reused between calls.
+ */
+final class LuminanceHistogram {
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+    private static final int SAMPLE_ROWS = 16;
+    private static final int SAMPLE_COLUMNS = 32;
+    private static final int GRID = 3;
+
+    /** Brightest samples which must reach this level for the window to count as well lit. */
+    static final int MIN_LIGHT_LEVEL = 128;
+    /** Levels between the dark and the light end of the histogram. */
+    static final int MIN_CONTRAST = 80;
+    /** How much the light level may differ between the cells of a 3x3 grid over the window. */
+    static final int MAX_LIGHT_SPREAD = 40;
+
+    private final int[] buckets = new int[LUMINANCE_BUCKETS];
+    private final int[] cellLight = new int[GRID * GRID];
+    private byte[] row;
+
+    /**
+     * @return true if the window is well lit and evenly lit, with clearly separated dark and
+     * light levels, the case where GlobalHistogramBinarizer is as good as HybridBinarizer.
+     */
+    boolean isEvenHighContrast(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < SAMPLE_COLUMNS || height < SAMPLE_ROWS) {
+            return false;
+        }
+
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        for (int i = 0; i < cellLight.length; i++) {
+            cellLight[i] = 0;
+        }
+
+        for (int r = 0; r < SAMPLE_ROWS; r++) {
+            int y = (2 * r + 1) * height / (2 * SAMPLE_ROWS);
+            row = source.getRow(y, row);
+            int cellRow = y * GRID / height * GRID;
+            for (int c = 0; c < SAMPLE_COLUMNS; c++) {
+                int x = (2 * c + 1) * width / (2 * SAMPLE_COLUMNS);
+                int luminance = row[x] & 0xff;
+                buckets[luminance >> LUMINANCE_SHIFT]++;
+                int cell = cellRow + x * GRID / width;
+                if (luminance > cellLight[cell]) {
+                    cellLight[cell] = luminance;
+                }
+            }
+        }
+
+        int lightest = cellLight[0];
+        int dimmest = cellLight[0];
+        for (int i = 1; i < cellLight.length; i++) {
+            lightest = Math.max(lightest, cellLight[i]);
+            dimmest = Math.min(dimmest, cellLight[i]);
+        }
+        if (dimmest < MIN_LIGHT_LEVEL || lightest - dimmest > MAX_LIGHT_SPREAD) {
+            return false;
+        }
+
+        // 5th and 95th percentile, so a few specular highlights do not count as contrast
+        int samples = SAMPLE_ROWS * SAMPLE_COLUMNS;
+        int tail = samples / 20;
+        int dark = percentileBucket(tail);
+        int light = percentileBucket(samples - tail);
+        return (light - dark) << LUMINANCE_SHIFT >= MIN_CONTRAST;
+    }
+
+    private int percentileBucket(int rank) {
+        int count = 0;
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            count += buckets[i];
+            if (count > rank) {
+                return i;
+            }
+        }
+        return LUMINANCE_BUCKETS - 1;
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.oned.CodaBarReader;
+import com.google.zxing.oned.Code128Reader;
+import com.google.zxing.oned.Code39Reader;
+import com.google.zxing.oned.Code93Reader;
+import com.google.zxing.oned.ITFReader;
+import com.google.zxing.oned.MultiFormatUPCEANReader;
+import com.google.zxing.oned.rss.RSS14Reader;
+import com.google.zxing.oned.rss.expanded.RSSExpandedReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered list of format specific readers, built from the
+ * {@link DecodeHintType#POSSIBLE_FORMATS} hint. Readers are tried in turn until one of them
+ * decodes the image, and the reader which decoded last is tried first next time, so a session
+ * scanning one kind of code mostly pays for a single reader per frame.
+ * <p>
+ * Without a POSSIBLE_FORMATS hint only QR codes are read. Not thread safe, use one chain per
+ * decode thread.
+ */
+public final class ReaderChain implements Reader {
+
+    private final List<Reader> readers;
+
+    public ReaderChain(List<Reader> readers) {
+        if (readers.isEmpty()) {
+            throw new IllegalArgumentException("At least one reader is needed.");
+        }
+        this.readers = new ArrayList<>(readers);
+    }
+
+    /**
+     * Builds the readers for the formats asked for by the hints, in the order they are listed.
+     *
+     * @param hints decode hints, may be null.
+     * @return the reader chain.
+     */
+    public static ReaderChain fromHints(Map<DecodeHintType, ?> hints) {
+        Collection<?> formats = null;
+        if (hints != null && hints.get(DecodeHintType.POSSIBLE_FORMATS) instanceof Collection) {
+            formats = (Collection<?>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+        }
+        if (formats == null || formats.isEmpty()) {
+            formats = Collections.singletonList(BarcodeFormat.QR_CODE);
+        }
+
+        List<Reader> readers = new ArrayList<>(formats.size());
+        boolean upcEanAdded = false;
+        for (Object format : formats) {
+            if (!(format instanceof BarcodeFormat)) {
+                continue;
+            }
+            switch ((BarcodeFormat) format) {
+                case QR_CODE:
+                    readers.add(new QRCodeReader());
+                    break;
+                case DATA_MATRIX:
+                    readers.add(new DataMatrixReader());
+                    break;
+                case AZTEC:
+                    readers.add(new AztecReader());
+                    break;
+                case PDF_417:
+                    readers.add(new PDF417Reader());
+                    break;
+                case MAXICODE:
+                    readers.add(new MaxiCodeReader());
+                    break;
+                case CODE_128:
+                    readers.add(new Code128Reader());
+                    break;
+                case CODE_39:
+                    readers.add(new Code39Reader());
+                    break;
+                case CODE_93:
+                    readers.add(new Code93Reader());
+                    break;
+                case CODABAR:
+                    readers.add(new CodaBarReader());
+                    break;
+                case ITF:
+                    readers.add(new ITFReader());
+                    break;
+                case RSS_14:
+                    readers.add(new RSS14Reader());
+                    break;
+                case RSS_EXPANDED:
+                    readers.add(new RSSExpandedReader());
+                    break;
+                case EAN_13:
+                case EAN_8:
+                case UPC_A:
+                case UPC_E:
+                    // A single reader handles the whole UPC/EAN family, asked formats included
+                    if (!upcEanAdded) {
+                        readers.add(new MultiFormatUPCEANReader(hints));
+                        upcEanAdded = true;
+                    }
+                    break;
+                default:
+                    // UPC_EAN_EXTENSION is read along with UPC/EAN, nothing else is left
+                    break;
+            }
+        }
+        if (readers.isEmpty()) {
+            readers.add(new QRCodeReader());
+        }
+        return new ReaderChain(readers);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image)
+            throws NotFoundException, ChecksumException, FormatException {
+        return decode(image, null);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints)
+            throws NotFoundException, ChecksumException, FormatException {
+        ReaderException failure = null;
+        for (int i = 0; i < readers.size(); i++) {
+            Reader reader = readers.get(i);
+            try {
+                Result result = reader.decode(image, hints);
+                if (i > 0) {
+                    // Move the reader which hit to the front
+                    readers.remove(i);
+                    readers.add(0, reader);
+                }
+                return result;
+            } catch (ChecksumException | FormatException e) {
+                // Something was found, keep the most telling exception
+                failure = e;
+            } catch (NotFoundException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            } finally {
+                reader.reset();
+            }
+        }
+
+        if (failure instanceof ChecksumException) {
+            throw (ChecksumException) failure;
+        }
+        if (failure instanceof FormatException) {
+            throw (FormatException) failure;
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * @return a reader which finds every code of the chain's formats in an image, for QR codes
+     * only this is the dedicated {@link QRCodeMultiReader}.
+     */
+    public MultipleBarcodeReader toMultipleReader() {
+        if (readers.size() == 1 && readers.get(0) instanceof QRCodeReader) {
+            return new QRCodeMultiReader();
+        }
+        return new GenericMultipleBarcodeReader(this);
+    }
+
+    @Override
+    public void reset() {
+        for (Reader reader : readers) {
+            reader.reset();
+        }
+    }
+}
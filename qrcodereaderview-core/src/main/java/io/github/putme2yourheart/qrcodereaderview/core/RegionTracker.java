@@ -0,0 +1,188 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Narrows the decode window of the next frames to the part of the scan window where a code was
+ * last seen.
+ * <p>
+ * Points found while decoding a frame, the corners of a decoded code or the finder patterns of
+ * one which could not be decoded yet, are boxed and padded by half the size of the box on
+ * every side. The following frames only decode inside that box. After {@code maxMisses} frames
+ * in a row without a decoded code the full scan window is used again.
+ * <p>
+ * All coordinates are in the rotated frame, the one the scan window is given in. Thread safe,
+ * a single tracker is shared by all the decode workers of a session.
+ * <p>
+ * Results decoded in a narrowed window have their points in the coordinates of that window,
+ * {@link #toScanWindow(Result[], int, int, int, int)} moves them back to those of the scan
+ * window, where they would be had the whole scan window been decoded.
+ */
+public final class RegionTracker {
+
+    public static final int DEFAULT_MAX_MISSES = 5;
+
+    /**
+     * Windows never get smaller than this, ZXing needs some room around the finder patterns.
+     */
+    static final int MIN_SIZE = 64;
+
+    private final int maxMisses;
+    private boolean tracking;
+    private int misses;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    public RegionTracker() {
+        this(DEFAULT_MAX_MISSES);
+    }
+
+    /**
+     * @param maxMisses frames without a decoded code after which the full scan window is used.
+     */
+    public RegionTracker(int maxMisses) {
+        if (maxMisses < 1) {
+            throw new IllegalArgumentException("maxMisses must be at least 1: " + maxMisses);
+        }
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * Forgets the tracked region, the next frame decodes the full scan window.
+     */
+    public synchronized void reset() {
+        tracking = false;
+        misses = 0;
+    }
+
+    /**
+     * @return true if frames are currently decoded inside a tracked region.
+     */
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * Computes the window to decode in the next frame.
+     *
+     * @param scanLeft   Left edge of the full scan window.
+     * @param scanTop    Top edge of the full scan window.
+     * @param scanWidth  Width of the full scan window.
+     * @param scanHeight Height of the full scan window.
+     * @param window     Receives the left, top, width and height of the decode window, which
+     *                   always lies inside the scan window.
+     */
+    public synchronized void getWindow(int scanLeft, int scanTop, int scanWidth, int scanHeight,
+                                       int[] window) {
+        if (!tracking) {
+            window[0] = scanLeft;
+            window[1] = scanTop;
+            window[2] = scanWidth;
+            window[3] = scanHeight;
+            return;
+        }
+        fit(left, right, scanLeft, scanLeft + scanWidth, window, 0);
+        fit(top, bottom, scanTop, scanTop + scanHeight, window, 1);
+    }
+
+    /**
+     * Clips the range {@code [start, end)} to {@code [min, max)}, widening it around its center
+     * when it is shorter than {@link #MIN_SIZE}, and stores its start at {@code window[index]}
+     * and its length at {@code window[index + 2]}.
+     */
+    private static void fit(int start, int end, int min, int max, int[] window, int index) {
+        start = Math.max(start, min);
+        end = Math.min(end, max);
+        if (end - start < MIN_SIZE) {
+            int center = (start + end) / 2;
+            start = center - MIN_SIZE / 2;
+            end = start + MIN_SIZE;
+            if (end > max) {
+                end = max;
+                start = max - MIN_SIZE;
+            }
+            if (start < min) {
+                start = min;
+                end = Math.min(max, min + MIN_SIZE);
+            }
+        }
+        window[index] = start;
+        window[index + 2] = end - start;
+    }
+
+    /**
+     * Reports how decoding a frame went.
+     *
+     * @param decoded    Whether a code was decoded.
+     * @param points     Points found in the frame, of the decoded codes or of a partial
+     *                   detection, in decode window coordinates. May be null.
+     * @param count      Number of points to use from {@code points}.
+     * @param windowLeft Left edge of the window the frame was decoded in.
+     * @param windowTop  Top edge of the window the frame was decoded in.
+     */
+    public synchronized void onFrameDecoded(boolean decoded, ResultPoint[] points, int count,
+                                            int windowLeft, int windowTop) {
+        if (decoded) {
+            misses = 0;
+        } else if (tracking && ++misses >= maxMisses) {
+            reset();
+            return;
+        }
+        // A single point does not tell where the code is
+        if (points == null || count < 2) {
+            return;
+        }
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            ResultPoint point = points[i];
+            if (point == null) {
+                continue;
+            }
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+        if (minX > maxX) {
+            return;
+        }
+
+        float padding = Math.max(maxX - minX, maxY - minY) / 2;
+        left = windowLeft + (int) Math.floor(minX - padding);
+        top = windowTop + (int) Math.floor(minY - padding);
+        right = windowLeft + (int) Math.ceil(maxX + padding);
+        bottom = windowTop + (int) Math.ceil(maxY + padding);
+        if (!tracking) {
+            tracking = true;
+            misses = decoded ? 0 : 1;
+        }
+    }
+
+    /**
+     * Moves the points of results decoded in a window into the coordinates of the scan window,
+     * in place. The points are replaced rather than changed, arrays of points taken from the
+     * results beforehand, such as those given to {@link #onFrameDecoded}, keep their values.
+     *
+     * @param results    results decoded in the window.
+     * @param windowLeft Left edge of the window the results were decoded in.
+     * @param windowTop  Top edge of the window the results were decoded in.
+     * @param scanLeft   Left edge of the full scan window.
+     * @param scanTop    Top edge of the full scan window.
+     */
+    public static void toScanWindow(Result[] results, int windowLeft, int windowTop,
+                                    int scanLeft, int scanTop) {
+        if (windowLeft == scanLeft && windowTop == scanTop) {
+            return;
+        }
+        for (Result result : results) {
+            ResultPoints.translate(result, windowLeft - scanLeft, windowTop - scanTop);
+        }
+    }
+}
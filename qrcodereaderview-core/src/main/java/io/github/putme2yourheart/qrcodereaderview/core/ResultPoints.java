@@ -0,0 +1,59 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Maps the points of a result decoded in a scaled down or cropped image back to the image it
+ * was taken from.
+ * <p>
+ * Points are replaced in the array of the result rather than changed, so arrays of points
+ * taken from the result beforehand keep their values.
+ */
+public final class ResultPoints {
+
+    private ResultPoints() {
+    }
+
+    /**
+     * Multiplies the coordinates of the points of a result, in place.
+     *
+     * @param result the result, decoded in an image scaled down by {@code scale}.
+     * @param scale  the factor the image was scaled down by.
+     */
+    public static void scale(Result result, int scale) {
+        transform(result, scale, 0, 0);
+    }
+
+    /**
+     * Moves the points of a result by the given offset, in place.
+     *
+     * @param result the result, decoded in a crop of an image.
+     * @param dx     left edge of the crop.
+     * @param dy     top edge of the crop.
+     */
+    public static void translate(Result result, int dx, int dy) {
+        transform(result, 1, dx, dy);
+    }
+
+    /**
+     * Scales the points of a result, then moves them by the given offset, in place.
+     *
+     * @param result the result.
+     * @param scale  the factor the coordinates are multiplied by.
+     * @param dx     added to the scaled x coordinates.
+     * @param dy     added to the scaled y coordinates.
+     */
+    public static void transform(Result result, int scale, int dx, int dy) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || (scale == 1 && dx == 0 && dy == 0)) {
+            return;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                points[i] = new ResultPoint(points[i].getX() * scale + dx,
+                        points[i].getY() * scale + dy);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands decode results over from the decode threads to a consumer running on an
+ * {@link Executor} of its choice, such as the main thread, through a bounded queue. A consumer
+ * slower than the decoders then costs queued and dropped results, as chosen by the
+ * {@link OverflowPolicy}, instead of an ever growing backlog.
+ * <p>
+ * The consumer is called with up to {@code maxBatchSize} results at a time, in the order they
+ * were offered, and calls never overlap. Each call is a task of its own on the executor, so a
+ * long backlog does not hold a looper thread for longer than one call.
+ *
+ * @param <R> the type of a result
+ */
+public final class ResultQueue<R> {
+
+    public enum OverflowPolicy {
+        /**
+         * Make room by dropping the oldest queued result, the consumer sees the newest ones.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the result being offered, the consumer sees the oldest ones.
+         */
+        DROP_NEWEST,
+        /**
+         * Make the offering thread wait for room, which holds that decoder back until the
+         * consumer catches up.
+         */
+        BLOCK
+    }
+
+    public interface Consumer<R> {
+
+        /**
+         * Called on the executor of the queue with the next queued results.
+         *
+         * @param results from 1 to {@code maxBatchSize} results, oldest first.
+         */
+        void onResults(List<R> results);
+    }
+
+    private final Executor executor;
+    private final Consumer<R> consumer;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final int maxBatchSize;
+
+    // Guards everything below, waited on by offers blocked for room
+    private final Object lock = new Object();
+    private final ArrayDeque<R> queue;
+    private boolean scheduled;
+    private long delivered;
+    private long dropped;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            deliverBatch();
+        }
+    };
+
+    public ResultQueue(Executor executor, Consumer<R> consumer, int capacity,
+                       OverflowPolicy policy) {
+        this(executor, consumer, capacity, policy, 1);
+    }
+
+    /**
+     * @param executor     runs the consumer.
+     * @param consumer     takes the results.
+     * @param capacity     the number of results which may wait for the consumer.
+     * @param policy       what happens to a result offered while the queue is full.
+     * @param maxBatchSize the number of results the consumer takes at most in one call.
+     */
+    public ResultQueue(Executor executor, Consumer<R> consumer, int capacity,
+                       OverflowPolicy policy, int maxBatchSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0.");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0.");
+        }
+        this.executor = executor;
+        this.consumer = consumer;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Queues a result for the consumer. Safe to call from any thread.
+     *
+     * @return false if the result was dropped: the queue was full with
+     * {@link OverflowPolicy#DROP_NEWEST}, the waiting thread was interrupted with
+     * {@link OverflowPolicy#BLOCK}, or the executor rejected the consumer.
+     */
+    public boolean offer(R result) {
+        synchronized (lock) {
+            while (queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST:
+                        queue.poll();
+                        dropped++;
+                        break;
+                    case DROP_NEWEST:
+                        dropped++;
+                        return false;
+                    default:
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            dropped++;
+                            return false;
+                        }
+                        break;
+                }
+            }
+            queue.add(result);
+            if (scheduled) {
+                return true;
+            }
+            scheduled = true;
+        }
+        return schedule();
+    }
+
+    /**
+     * Drops every queued result and wakes the threads waiting for room.
+     */
+    public void clear() {
+        synchronized (lock) {
+            dropped += queue.size();
+            queue.clear();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of queued results.
+     */
+    public int size() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return the number of results handed to the consumer.
+     */
+    public long getDeliveredCount() {
+        synchronized (lock) {
+            return delivered;
+        }
+    }
+
+    /**
+     * @return the number of results dropped on overflow, by {@link #clear()} or because the
+     * executor rejected the consumer.
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    private boolean schedule() {
+        try {
+            executor.execute(drain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Nobody will ever take them, make room for the next offers
+            synchronized (lock) {
+                scheduled = false;
+                dropped += queue.size();
+                queue.clear();
+                lock.notifyAll();
+            }
+            return false;
+        }
+    }
+
+    private void deliverBatch() {
+        List<R> batch;
+        synchronized (lock) {
+            int count = Math.min(queue.size(), maxBatchSize);
+            if (count == 0) {
+                scheduled = false;
+                return;
+            }
+            batch = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                batch.add(queue.poll());
+            }
+            lock.notifyAll();
+        }
+
+        try {
+            consumer.onResults(batch);
+        } finally {
+            boolean more;
+            synchronized (lock) {
+                delivered += batch.size();
+                more = !queue.isEmpty();
+                if (!more) {
+                    scheduled = false;
+                }
+            }
+            if (more) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Same as {@link RotatedYUVLuminanceSource}, for a luminance plane held in a {@link ByteBuffer}
+ * whose rows start every {@code rowStride} bytes and whose pixels are {@code pixelStride} bytes
+ * apart, such as the Y plane of an {@code android.media.Image}. The plane is read in place, so
+ * a direct buffer is never copied to the heap as a whole: rows and matrices only ever hold the
+ * pixels of the crop window.
+ * <p>
+ * The buffer must not be changed or freed while the source, or any source cropped or rotated
+ * from it, is in use.
+ * <p>
+ * A single instance must not be read from several threads at once: rows are read through the
+ * position of its buffer. {@link #crop} and {@link #rotateCounterClockwise()} may be called
+ * from several threads at once, as long as the instance is not read meanwhile, and each source
+ * they return has a buffer of its own, to be read by its own thread.
+ */
+public final class RotatedPlaneLuminanceSource extends LuminanceSource {
+
+    private static final int THUMBNAIL_SCALE_FACTOR = 2;
+
+    // A view of its own, rows of adjacent pixels are bulk read through its position
+    private final ByteBuffer plane;
+    private final int base;
+    private final int dx;
+    private final int dy;
+
+    /**
+     * @param plane       A luminance plane. Its position and limit are left alone, pixels are
+     *                    addressed from index 0.
+     * @param dataWidth   The width of the frame as delivered by the camera.
+     * @param dataHeight  The height of the frame as delivered by the camera.
+     * @param rowStride   The distance in bytes between the starts of two rows.
+     * @param pixelStride The distance in bytes between two pixels of a row.
+     * @param rotation    Clockwise rotation applied to the frame before cropping: 0, 90, 180 or
+     *                    270.
+     * @param left        Left edge of the crop window, in rotated coordinates.
+     * @param top         Top edge of the crop window, in rotated coordinates.
+     * @param width       Width of the crop window.
+     * @param height      Height of the crop window.
+     */
+    public RotatedPlaneLuminanceSource(ByteBuffer plane, int dataWidth, int dataHeight,
+                                       int rowStride, int pixelStride, int rotation,
+                                       int left, int top, int width, int height) {
+        super(width, height);
+
+        RotatedYUVLuminanceSource.checkPlane(plane.capacity(), dataWidth, dataHeight,
+                rowStride, pixelStride);
+        RotatedYUVLuminanceSource.checkWindow(dataWidth, dataHeight, rotation,
+                left, top, width, height);
+        this.plane = plane.duplicate();
+        this.dx = RotatedYUVLuminanceSource.stepX(rotation, rowStride, pixelStride);
+        this.dy = RotatedYUVLuminanceSource.stepY(rotation, rowStride, pixelStride);
+        this.base = RotatedYUVLuminanceSource.origin(rotation, dataWidth, dataHeight,
+                rowStride, pixelStride) + left * dx + top * dy;
+        // duplicate() keeps the limit, reads may go up to the capacity. Called through Buffer,
+        // ByteBuffer only overrides clear() and position(int) from Java 9 on.
+        ((Buffer) this.plane).clear();
+    }
+
+    private RotatedPlaneLuminanceSource(ByteBuffer plane, int base, int dx, int dy,
+                                        int width, int height) {
+        super(width, height);
+        this.plane = plane.duplicate();
+        this.base = base;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        readRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        return getMatrix(null);
+    }
+
+    /**
+     * Same as {@link #getMatrix()}, but copies into a caller supplied buffer so it can be reused
+     * across frames.
+     *
+     * @param matrix buffer of at least {@code getWidth() * getHeight()} bytes, or null.
+     * @return {@code matrix}, or a new array if it was null or too small.
+     */
+    public byte[] getMatrix(byte[] matrix) {
+        int width = getWidth();
+        int height = getHeight();
+        if (matrix == null || matrix.length < width * height) {
+            matrix = new byte[width * height];
+        }
+        for (int y = 0; y < height; y++) {
+            readRow(y, matrix, y * width);
+        }
+        return matrix;
+    }
+
+    private void readRow(int y, byte[] dst, int dstOffset) {
+        int width = getWidth();
+        int offset = base + y * dy;
+        if (dx == 1) {
+            ((Buffer) plane).position(offset);
+            plane.get(dst, dstOffset, width);
+            return;
+        }
+        for (int x = 0; x < width; x++, offset += dx) {
+            dst[dstOffset + x] = plane.get(offset);
+        }
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        return new RotatedPlaneLuminanceSource(plane, base + left * dx + top * dy, dx, dy,
+                width, height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        // new(x, y) = old(width - 1 - y, x)
+        return new RotatedPlaneLuminanceSource(plane, base + (getWidth() - 1) * dx, dy, -dx,
+                getHeight(), getWidth());
+    }
+
+    public int[] renderThumbnail() {
+        int[] pixels = new int[getThumbnailWidth() * getThumbnailHeight()];
+        renderThumbnail(pixels);
+        return pixels;
+    }
+
+    /**
+     * Same as {@link #renderThumbnail()}, but renders into a caller supplied buffer so it can be
+     * reused across frames.
+     *
+     * @param pixels buffer of at least {@code getThumbnailWidth() * getThumbnailHeight()} pixels.
+     */
+    public void renderThumbnail(int[] pixels) {
+        int width = getThumbnailWidth();
+        int height = getThumbnailHeight();
+        for (int y = 0; y < height; y++) {
+            int offset = base + y * THUMBNAIL_SCALE_FACTOR * dy;
+            for (int x = 0; x < width; x++, offset += THUMBNAIL_SCALE_FACTOR * dx) {
+                int grey = plane.get(offset) & 0xff;
+                pixels[y * width + x] = 0xFF000000 | (grey * 0x00010101);
+            }
+        }
+    }
+
+    /**
+     * @return width of image from {@link #renderThumbnail()}
+     */
+    public int getThumbnailWidth() {
+        return getWidth() / THUMBNAIL_SCALE_FACTOR;
+    }
+
+    /**
+     * @return height of image from {@link #renderThumbnail()}
+     */
+    public int getThumbnailHeight() {
+        return getHeight() / THUMBNAIL_SCALE_FACTOR;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A LuminanceSource over the Y plane of a YUV preview frame (NV21 and friends) which applies a
+ * clockwise rotation of 0, 90, 180 or 270 degrees while reading. The crop window is given in
+ * rotated coordinates, so only the pixels inside it are ever touched and the full frame is
+ * never copied.
+ * <p>
+ * Every pixel of the window is addressed as {@code base + x * dx + y * dy} in the original
+ * data, which makes cropping and counter-clockwise rotation as cheap as building a new view.
+ */
+public final class RotatedYUVLuminanceSource extends LuminanceSource {
+
+    private static final int THUMBNAIL_SCALE_FACTOR = 2;
+
+    private final byte[] yuvData;
+    private final int base;
+    private final int dx;
+    private final int dy;
+
+    /**
+     * @param yuvData    A preview frame, Y plane first.
+     * @param dataWidth  The width of the frame as delivered by the camera.
+     * @param dataHeight The height of the frame as delivered by the camera.
+     * @param rotation   Clockwise rotation applied to the frame before cropping: 0, 90, 180 or 270.
+     * @param left       Left edge of the crop window, in rotated coordinates.
+     * @param top        Top edge of the crop window, in rotated coordinates.
+     * @param width      Width of the crop window.
+     * @param height     Height of the crop window.
+     */
+    public RotatedYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int rotation,
+                                     int left, int top, int width, int height) {
+        super(width, height);
+
+        checkWindow(dataWidth, dataHeight, rotation, left, top, width, height);
+        this.yuvData = yuvData;
+        this.dx = stepX(rotation, dataWidth);
+        this.dy = stepY(rotation, dataWidth);
+        this.base = origin(rotation, dataWidth, dataHeight) + left * dx + top * dy;
+    }
+
+    /**
+     * @return the index of the top left pixel of the rotated frame in the original data.
+     */
+    static int origin(int rotation, int dataWidth, int dataHeight) {
+        return origin(rotation, dataWidth, dataHeight, dataWidth, 1);
+    }
+
+    /**
+     * Same as {@link #origin(int, int, int)}, for a plane whose rows start every
+     * {@code rowStride} bytes and whose pixels are {@code pixelStride} bytes apart.
+     */
+    static int origin(int rotation, int dataWidth, int dataHeight, int rowStride,
+                      int pixelStride) {
+        switch (rotation) {
+            case 0:
+                return 0;
+            case 90:
+                return (dataHeight - 1) * rowStride;
+            case 180:
+                return (dataHeight - 1) * rowStride + (dataWidth - 1) * pixelStride;
+            case 270:
+                return (dataWidth - 1) * pixelStride;
+            default:
+                throw new IllegalArgumentException("Bad rotation: " + rotation);
+        }
+    }
+
+    /**
+     * @return the distance in the original data between two horizontally adjacent pixels of
+     * the rotated frame.
+     */
+    static int stepX(int rotation, int dataWidth) {
+        return stepX(rotation, dataWidth, 1);
+    }
+
+    /**
+     * Same as {@link #stepX(int, int)}, for a plane with the given strides.
+     */
+    static int stepX(int rotation, int rowStride, int pixelStride) {
+        switch (rotation) {
+            case 0:
+                return pixelStride;
+            case 90:
+                return -rowStride;
+            case 180:
+                return -pixelStride;
+            case 270:
+                return rowStride;
+            default:
+                throw new IllegalArgumentException("Bad rotation: " + rotation);
+        }
+    }
+
+    /**
+     * @return the distance in the original data between two vertically adjacent pixels of the
+     * rotated frame.
+     */
+    static int stepY(int rotation, int dataWidth) {
+        return stepY(rotation, dataWidth, 1);
+    }
+
+    /**
+     * Same as {@link #stepY(int, int)}, for a plane with the given strides.
+     */
+    static int stepY(int rotation, int rowStride, int pixelStride) {
+        switch (rotation) {
+            case 0:
+                return rowStride;
+            case 90:
+                return pixelStride;
+            case 180:
+                return -rowStride;
+            case 270:
+                return -pixelStride;
+            default:
+                throw new IllegalArgumentException("Bad rotation: " + rotation);
+        }
+    }
+
+    static void checkWindow(int dataWidth, int dataHeight, int rotation,
+                            int left, int top, int width, int height) {
+        boolean swapped = rotation == 90 || rotation == 270;
+        int rotatedWidth = swapped ? dataHeight : dataWidth;
+        int rotatedHeight = swapped ? dataWidth : dataHeight;
+        if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+    }
+
+    /**
+     * Checks that a plane of the given strides holds a whole frame. The last row may stop right
+     * after its last pixel, as it does in the planes of {@code android.media.Image}.
+     */
+    static void checkPlane(int capacity, int dataWidth, int dataHeight, int rowStride,
+                           int pixelStride) {
+        if (pixelStride <= 0 || rowStride < (dataWidth - 1) * pixelStride + 1) {
+            throw new IllegalArgumentException("Bad strides: row " + rowStride
+                    + ", pixel " + pixelStride);
+        }
+        if ((long) (dataHeight - 1) * rowStride + (long) (dataWidth - 1) * pixelStride
+                >= capacity) {
+            throw new IllegalArgumentException("Plane is too small for a "
+                    + dataWidth + "x" + dataHeight + " frame.");
+        }
+    }
+
+    private RotatedYUVLuminanceSource(byte[] yuvData, int base, int dx, int dy,
+                                      int width, int height) {
+        super(width, height);
+        this.yuvData = yuvData;
+        this.base = base;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        readRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+
+        // If the window is the whole unrotated frame, just hand the data back.
+        if (base == 0 && dx == 1 && dy == width && yuvData.length >= width * height) {
+            return yuvData;
+        }
+
+        return getMatrix(null);
+    }
+
+    /**
+     * Same as {@link #getMatrix()}, but copies into a caller supplied buffer so it can be reused
+     * across frames. The window is always copied, even when it covers the whole frame.
+     *
+     * @param matrix buffer of at least {@code getWidth() * getHeight()} bytes, or null.
+     * @return {@code matrix}, or a new array if it was null or too small.
+     */
+    public byte[] getMatrix(byte[] matrix) {
+        int width = getWidth();
+        int height = getHeight();
+        if (matrix == null || matrix.length < width * height) {
+            matrix = new byte[width * height];
+        }
+        for (int y = 0; y < height; y++) {
+            readRow(y, matrix, y * width);
+        }
+        return matrix;
+    }
+
+    private void readRow(int y, byte[] dst, int dstOffset) {
+        int width = getWidth();
+        int offset = base + y * dy;
+        if (dx == 1) {
+            System.arraycopy(yuvData, offset, dst, dstOffset, width);
+            return;
+        }
+        for (int x = 0; x < width; x++, offset += dx) {
+            dst[dstOffset + x] = yuvData[offset];
+        }
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        return new RotatedYUVLuminanceSource(yuvData, base + left * dx + top * dy, dx, dy,
+                width, height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        // new(x, y) = old(width - 1 - y, x)
+        return new RotatedYUVLuminanceSource(yuvData, base + (getWidth() - 1) * dx, dy, -dx,
+                getHeight(), getWidth());
+    }
+
+    public int[] renderThumbnail() {
+        int[] pixels = new int[getThumbnailWidth() * getThumbnailHeight()];
+        renderThumbnail(pixels);
+        return pixels;
+    }
+
+    /**
+     * Same as {@link #renderThumbnail()}, but renders into a caller supplied buffer so it can be
+     * reused across frames.
+     *
+     * @param pixels buffer of at least {@code getThumbnailWidth() * getThumbnailHeight()} pixels.
+     */
+    public void renderThumbnail(int[] pixels) {
+        int width = getThumbnailWidth();
+        int height = getThumbnailHeight();
+        for (int y = 0; y < height; y++) {
+            int offset = base + y * THUMBNAIL_SCALE_FACTOR * dy;
+            for (int x = 0; x < width; x++, offset += THUMBNAIL_SCALE_FACTOR * dx) {
+                int grey = yuvData[offset] & 0xff;
+                pixels[y * width + x] = 0xFF000000 | (grey * 0x00010101);
+            }
+        }
+    }
+
+    /**
+     * @return width of image from {@link #renderThumbnail()}
+     */
+    public int getThumbnailWidth() {
+        return getWidth() / THUMBNAIL_SCALE_FACTOR;
+    }
+
+    /**
+     * @return height of image from {@link #renderThumbnail()}
+     */
+    public int getThumbnailHeight() {
+        return getHeight() / THUMBNAIL_SCALE_FACTOR;
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of a scan pipeline, from the frames the camera delivers to
+ * the codes the readers find. Every counter is an atomic, nothing takes a lock, so frames can
+ * be counted from the camera thread and the decode threads while the app reads the values
+ * from any other thread.
+ * <p>
+ * A {@link FrameDecoder} given an instance with {@link FrameDecoder#setMetrics(ScanMetrics)}
+ * counts its attempts, successes, skipped frames and stage latencies in it. Frames delivered
+ * and dropped are counted by whoever feeds the decoder.
+ */
+public final class ScanMetrics {
+
+    /**
+     * Cropping, rotating and downsampling the scan window out of the frame.
+     */
+    public static final int STAGE_ROTATE = 0;
+    /**
+     * Thresholding the scan window to black and white.
+     */
+    public static final int STAGE_BINARIZE = 1;
+    /**
+     * Running the readers over the binarized window.
+     */
+    public static final int STAGE_DECODE = 2;
+
+    private static final int STAGE_COUNT = 3;
+    private static final long NONE = -1;
+
+    private final AtomicLong framesDelivered = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesChecked = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong decodeAttempts = new AtomicLong();
+    private final AtomicLong decodeSuccesses = new AtomicLong();
+    // Successes at full and at half resolution
+    private final AtomicLongArray levelHits = new AtomicLongArray(2);
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_COUNT];
+    private final AtomicLong startNanos = new AtomicLong(NONE);
+    private final AtomicLong timeToFirstResultNanos = new AtomicLong(NONE);
+
+    public ScanMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Counts a frame delivered by the camera.
+     */
+    public void onFrameDelivered() {
+        framesDelivered.incrementAndGet();
+    }
+
+    /**
+     * Counts a delivered frame which was never decoded because the decoder was busy, or whose
+     * codes were not reported, having been reported already or decoding having been disabled.
+     */
+    public void onFrameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    void onFrameChecked(boolean skipped) {
+        framesChecked.incrementAndGet();
+        if (skipped) {
+            framesSkipped.incrementAndGet();
+        }
+    }
+
+    void onDecodeAttempt() {
+        decodeAttempts.incrementAndGet();
+    }
+
+    void onDecodeSuccess(int level) {
+        decodeSuccesses.incrementAndGet();
+        levelHits.incrementAndGet(level);
+    }
+
+    void recordStage(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    /**
+     * Starts the clock of {@link #getTimeToFirstResultNanos()}, typically when the camera is
+     * started.
+     */
+    public void onScanStarted() {
+        timeToFirstResultNanos.set(NONE);
+        startNanos.set(System.nanoTime());
+    }
+
+    /**
+     * Stops the clock of {@link #getTimeToFirstResultNanos()} if it is still running, to be
+     * called when a listener is handed a result. Only the first result after
+     * {@link #onScanStarted()} counts.
+     */
+    public void onResultDelivered() {
+        long start = startNanos.get();
+        if (start != NONE && startNanos.compareAndSet(start, NONE)) {
+            timeToFirstResultNanos.set(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the number of frames delivered by the camera.
+     */
+    public long getFramesDelivered() {
+        return framesDelivered.get();
+    }
+
+    /**
+     * @return the number of delivered frames dropped because the decoder was busy, or whose
+     * codes were not reported.
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * @return the number of frames skipped by the quality gate.
+     */
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    /**
+     * @return the share of the frames measured by the quality gate which were skipped, 0 when
+     * no frame was measured.
+     */
+    public float getFrameSkipRatio() {
+        long checked = framesChecked.get();
+        return checked == 0 ? 0 : (float) framesSkipped.get() / checked;
+    }
+
+    /**
+     * @return the number of frames the readers were run on, skipped frames left out.
+     */
+    public long getDecodeAttempts() {
+        return decodeAttempts.get();
+    }
+
+    /**
+     * @return the number of frames in which a code was found.
+     */
+    public long getDecodeSuccesses() {
+        return decodeSuccesses.get();
+    }
+
+    /**
+     * @param level {@link FrameDecoder#LEVEL_FULL} or {@link FrameDecoder#LEVEL_HALF}.
+     * @return the number of frames in which a code was found at that resolution.
+     */
+    public long getDecodeLevelHits(int level) {
+        return levelHits.get(level);
+    }
+
+    /**
+     * @param stage {@link #STAGE_ROTATE}, {@link #STAGE_BINARIZE} or {@link #STAGE_DECODE}.
+     * @return the latencies of the stage, one per run of the stage.
+     */
+    public LatencyHistogram getStageLatency(int stage) {
+        return stages[stage];
+    }
+
+    /**
+     * @return the time from the last {@link #onScanStarted()} to the first result after it in
+     * nanoseconds, or -1 while there is none.
+     */
+    public long getTimeToFirstResultNanos() {
+        return timeToFirstResultNanos.get();
+    }
+
+    /**
+     * Clears every counter and histogram. The time to first result is cleared too, and only
+     * measured again after the next {@link #onScanStarted()}.
+     */
+    public void reset() {
+        framesDelivered.set(0);
+        framesDropped.set(0);
+        framesChecked.set(0);
+        framesSkipped.set(0);
+        decodeAttempts.set(0);
+        decodeSuccesses.set(0);
+        for (int i = 0; i < levelHits.length(); i++) {
+            levelHits.set(i, 0);
+        }
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        startNanos.set(NONE);
+        timeToFirstResultNanos.set(NONE);
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Finds every code in a large image by splitting it into overlapping square tiles and decoding
+ * them side by side on an {@link ExecutorService}. Each tile is binarized on its own, so small
+ * codes keep thresholds of their own instead of those of the whole image, and a code no larger
+ * than the overlap is always whole in at least one tile.
+ * <p>
+ * A code found in several tiles is reported once, see {@link #merge(List)}. Result points are
+ * in the coordinates of the whole image.
+ * <p>
+ * Tiles are decoded by a {@link FrameDecoder} per thread of the executor. Thread safe, as long
+ * as the luminance source can be cropped from several threads at once and the crops read side
+ * by side. The whole source itself is never read. {@link RotatedYUVLuminanceSource} and the
+ * sources of ZXing are read only and safe from any thread. A
+ * {@link RotatedPlaneLuminanceSource} is not: reading one instance from several threads is
+ * unsafe, but concurrent {@code crop()} calls are safe, and each crop has a buffer of its own.
+ */
+public final class TiledDecoder {
+
+    private final ExecutorService executor;
+    private final int tileSize;
+    private final int overlap;
+    private volatile Map<DecodeHintType, ?> hints;
+
+    private final ThreadLocal<FrameDecoder> decoders = new ThreadLocal<FrameDecoder>() {
+        @Override
+        protected FrameDecoder initialValue() {
+            return new FrameDecoder();
+        }
+    };
+
+    /**
+     * @param executor decodes the tiles. Must not be the thread calling
+     *                 {@link #decodeMultiple(LuminanceSource)}, which waits for them.
+     * @param tileSize the side of a tile, in pixels.
+     * @param overlap  the number of pixels neighbouring tiles share, the largest code which is
+     *                 sure to be found, smaller than {@code tileSize}.
+     */
+    public TiledDecoder(ExecutorService executor, int tileSize, int overlap) {
+        if (overlap < 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException("Overlap must be between 0 and the tile size.");
+        }
+        this.executor = executor;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+    }
+
+    /**
+     * Set the hints used for decoding the tiles.
+     *
+     * @param hints decode hints, may be null.
+     */
+    public void setHints(Map<DecodeHintType, ?> hints) {
+        this.hints = hints;
+    }
+
+    /**
+     * Decodes every code in the source, waiting for all the tiles.
+     *
+     * @param source the luminance of the whole image.
+     * @return the decoded codes, never empty.
+     * @throws NotFoundException if no tile holds a code, or the calling thread was interrupted.
+     */
+    public Result[] decodeMultiple(LuminanceSource source) throws NotFoundException {
+        int[] columns = tileStarts(source.getWidth(), tileSize, overlap);
+        int[] rows = tileStarts(source.getHeight(), tileSize, overlap);
+        List<Callable<Result[]>> tiles = new ArrayList<>(columns.length * rows.length);
+        for (int top : rows) {
+            for (int left : columns) {
+                tiles.add(new Tile(source, left, top,
+                        Math.min(tileSize, source.getWidth() - left),
+                        Math.min(tileSize, source.getHeight() - top)));
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result[]> tile : executor.invokeAll(tiles)) {
+                Result[] tileResults = tile.get();
+                if (tileResults != null) {
+                    Collections.addAll(results, tileResults);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw NotFoundException.getNotFoundInstance();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tile decoding failed", e.getCause());
+        }
+        if (results.isEmpty()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return merge(results);
+    }
+
+    /**
+     * @return the left or top edges of the tiles covering {@code length} pixels, the last tile
+     * ends on the last pixel.
+     */
+    static int[] tileStarts(int length, int tileSize, int overlap) {
+        if (length <= tileSize) {
+            return new int[]{0};
+        }
+        int step = tileSize - overlap;
+        int count = (length - tileSize + step - 1) / step + 1;
+        int[] starts = new int[count];
+        for (int i = 0; i < count - 1; i++) {
+            starts[i] = i * step;
+        }
+        starts[count - 1] = length - tileSize;
+        return starts;
+    }
+
+    /**
+     * Keeps a single result for codes found more than once: results with the same text and
+     * format are the same code when their centers are closer than half the size of the larger
+     * one, or when either has no points. The same code printed twice is reported twice.
+     *
+     * @param results results of overlapping searches, in the same coordinates.
+     * @return the distinct codes, in the order they were first found.
+     */
+    public static Result[] merge(List<Result> results) {
+        List<Result> merged = new ArrayList<>(results.size());
+        for (Result result : results) {
+            boolean duplicate = false;
+            for (Result kept : merged) {
+                if (isSameCode(kept, result)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                merged.add(result);
+            }
+        }
+        return merged.toArray(new Result[merged.size()]);
+    }
+
+    private static boolean isSameCode(Result a, Result b) {
+        if (!a.getText().equals(b.getText()) || a.getBarcodeFormat() != b.getBarcodeFormat()) {
+            return false;
+        }
+        float[] boundsA = bounds(a.getResultPoints());
+        float[] boundsB = bounds(b.getResultPoints());
+        if (boundsA == null || boundsB == null) {
+            return true;
+        }
+        float dx = (boundsA[0] + boundsA[2]) / 2 - (boundsB[0] + boundsB[2]) / 2;
+        float dy = (boundsA[1] + boundsA[3]) / 2 - (boundsB[1] + boundsB[3]) / 2;
+        float size = Math.max(Math.max(boundsA[2] - boundsA[0], boundsA[3] - boundsA[1]),
+                Math.max(boundsB[2] - boundsB[0], boundsB[3] - boundsB[1]));
+        return dx * dx + dy * dy < size * size / 4;
+    }
+
+    /**
+     * @return left, top, right and bottom of the points, null if there are none.
+     */
+    private static float[] bounds(ResultPoint[] points) {
+        float[] bounds = null;
+        if (points == null) {
+            return null;
+        }
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            if (bounds == null) {
+                bounds = new float[]{point.getX(), point.getY(), point.getX(), point.getY()};
+            } else {
+                bounds[0] = Math.min(bounds[0], point.getX());
+                bounds[1] = Math.min(bounds[1], point.getY());
+                bounds[2] = Math.max(bounds[2], point.getX());
+                bounds[3] = Math.max(bounds[3], point.getY());
+            }
+        }
+        return bounds;
+    }
+
+    private final class Tile implements Callable<Result[]> {
+
+        private final LuminanceSource source;
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+
+        Tile(LuminanceSource source, int left, int top, int width, int height) {
+            this.source = source;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public Result[] call() {
+            FrameDecoder decoder = decoders.get();
+            decoder.setHints(hints);
+            Result[] results;
+            try {
+                results = decoder.decodeMultiple(source.crop(left, top, width, height));
+            } catch (NotFoundException e) {
+                return null;
+            }
+            for (Result result : results) {
+                ResultPoints.translate(result, left, top);
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+public class DecodeContextTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int ROTATION = 90;
+    private static final int WINDOW = 336;
+    private static final int LEFT = (HEIGHT - WINDOW) / 2;
+    private static final int TOP = (WIDTH - WINDOW) / 2;
+
+    @Test
+    public void binarizesLikeZXing() throws Exception {
+        byte[] frame = SyntheticFrames.qrFrame("context", WIDTH, HEIGHT, 300);
+        SyntheticFrames.shade(frame, WIDTH, HEIGHT, 1f, 0.5f);
+        RotatedYUVLuminanceSource source = new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT,
+                ROTATION, LEFT, TOP, WINDOW, WINDOW);
+        DecodeContext context = new DecodeContext();
+
+        context.load(frame, WIDTH, HEIGHT, ROTATION, LEFT, TOP, WINDOW, WINDOW);
+        assertEquals(new HybridBinarizer(source).getBlackMatrix(),
+                context.binarizeHybrid().getBlackMatrix());
+        assertEquals(new GlobalHistogramBinarizer(source).getBlackMatrix(),
+                context.binarizeGlobalHistogram().getBlackMatrix());
+    }
+
+    @Test
+    public void halfScale_averagesBlocksOfFourPixels() {
+        byte[] frame = SyntheticFrames.qrFrame("context", WIDTH, HEIGHT, 300);
+        SyntheticFrames.shade(frame, WIDTH, HEIGHT, 1f, 0.5f);
+        byte[] window = new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, ROTATION,
+                LEFT, TOP, WINDOW, WINDOW).getMatrix();
+
+        LuminanceSource half = new DecodeContext().load(frame, WIDTH, HEIGHT, ROTATION,
+                LEFT, TOP, WINDOW, WINDOW, 2);
+        assertEquals(WINDOW / 2, half.getWidth());
+        assertEquals(WINDOW / 2, half.getHeight());
+        byte[] matrix = half.getMatrix();
+        for (int y = 0; y < WINDOW / 2; y++) {
+            for (int x = 0; x < WINDOW / 2; x++) {
+                int i = 2 * y * WINDOW + 2 * x;
+                int sum = (window[i] & 0xff) + (window[i + 1] & 0xff)
+                        + (window[i + WINDOW] & 0xff) + (window[i + WINDOW + 1] & 0xff);
+                assertEquals((sum + 2) / 4, matrix[y * (WINDOW / 2) + x] & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void stridedPlane_loadsLikeByteArray() {
+        byte[] frame = SyntheticFrames.qrFrame("context", WIDTH, HEIGHT, 300);
+        SyntheticFrames.shade(frame, WIDTH, HEIGHT, 1f, 0.5f);
+        ByteBuffer plane = SyntheticFrames.toPlane(frame, WIDTH, HEIGHT, 2 * WIDTH + 64, 2);
+        DecodeContext fromArray = new DecodeContext();
+        DecodeContext fromPlane = new DecodeContext();
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            for (int scale = 1; scale <= 2; scale++) {
+                byte[] expected = fromArray.load(frame, WIDTH, HEIGHT, rotation,
+                        LEFT, LEFT, WINDOW, WINDOW, scale).getMatrix();
+                byte[] matrix = fromPlane.load(plane, WIDTH, HEIGHT, 2 * WIDTH + 64, 2, rotation,
+                        LEFT, LEFT, WINDOW, WINDOW, scale).getMatrix();
+                assertArrayEquals("rotation " + rotation + ", scale " + scale, expected, matrix);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planeTooSmallForFrame_isRejected() {
+        ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT - 1);
+        new DecodeContext().load(plane, WIDTH, HEIGHT, WIDTH, 1, 0, 0, 0, WIDTH, HEIGHT, 1);
+    }
+
+    @Test
+    public void reusesBuffersWhileWindowIsUnchanged() throws Exception {
+        DecodeContext context = new DecodeContext();
+        byte[] frame = SyntheticFrames.qrFrame("context", WIDTH, HEIGHT, 300);
+
+        context.load(frame, WIDTH, HEIGHT, ROTATION, LEFT, TOP, WINDOW, WINDOW);
+        BitMatrix matrix = context.binarizeHybrid().getBlackMatrix();
+        context.load(SyntheticFrames.blankFrame(WIDTH, HEIGHT), WIDTH, HEIGHT, ROTATION,
+                LEFT, TOP, WINDOW, WINDOW);
+        BitMatrix blank = context.binarizeHybrid().getBlackMatrix();
+        assertSame(matrix, blank);
+        assertEquals(new BitMatrix(WINDOW, WINDOW), blank);
+
+        context.load(frame, WIDTH, HEIGHT, ROTATION, 0, 0, WINDOW, WINDOW / 2);
+        assertEquals(WINDOW / 2, context.binarizeHybrid().getBlackMatrix().getHeight());
+    }
+
+    @Test
+    public void undecodableFrame_allocatesNothingAfterWarmUp() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] frame = SyntheticFrames.blankFrame(WIDTH, HEIGHT);
+        DecodeContext context = new DecodeContext();
+        LuminanceHistogram histogram = new LuminanceHistogram();
+        for (int i = 0; i < 100; i++) {
+            decodeStages(context, histogram, frame);
+        }
+
+        long thread = Thread.currentThread().getId();
+        // what reading the counter costs by itself
+        long overhead = -allocations.getThreadAllocatedBytes(thread)
+                + allocations.getThreadAllocatedBytes(thread);
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100; i++) {
+            decodeStages(context, histogram, frame);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals("bytes allocated by 100 frames", 0, allocated);
+    }
+
+    /**
+     * Everything FrameDecoder does to a frame before handing it to the readers.
+     */
+    private static void decodeStages(DecodeContext context, LuminanceHistogram histogram,
+                                     byte[] frame) throws NotFoundException {
+        histogram.isEvenHighContrast(
+                context.load(frame, WIDTH, HEIGHT, ROTATION, LEFT, TOP, WINDOW, WINDOW));
+        try {
+            context.binarizeGlobalHistogram();
+        } catch (NotFoundException expected) {
+            // a blank frame has no contrast
+        }
+        context.binarizeHybrid();
+    }
+}
@@ -0,0 +1,268 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeExecutorTest {
+
+    @Test(timeout = 5000)
+    public void results_comeOutInFrameOrder() throws InterruptedException {
+        final CountDownLatch firstTaken = new CountDownLatch(1);
+        final CountDownLatch secondDecoded = new CountDownLatch(1);
+        Recorder recorder = new Recorder(2) {
+            @Override
+            public Integer onDecodeFrame(Integer frame, int worker) {
+                try {
+                    if (frame == 0) {
+                        // Still decoding while the next frame is done on the other worker
+                        firstTaken.countDown();
+                        secondDecoded.await();
+                    } else {
+                        secondDecoded.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return frame;
+            }
+        };
+        DecodeExecutor<Integer, Integer> executor = new DecodeExecutor<>(recorder, 2);
+
+        executor.start();
+        executor.post(0);
+        assertTrue(firstTaken.await(2, TimeUnit.SECONDS));
+        executor.post(1);
+        assertTrue(recorder.done.await(2, TimeUnit.SECONDS));
+        executor.stop();
+
+        assertEquals(Arrays.asList(0, 1), recorder.results);
+        assertEquals(Arrays.asList(0L, 1L), recorder.sequences);
+    }
+
+    @Test(timeout = 5000)
+    public void slowFrame_holdsBackMoreResultsThanWorkers() throws InterruptedException {
+        final CountDownLatch firstTaken = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Semaphore decoded = new Semaphore(0);
+        Recorder recorder = new Recorder(6) {
+            @Override
+            public Integer onDecodeFrame(Integer frame, int worker) {
+                if (frame == 0) {
+                    firstTaken.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    decoded.release();
+                }
+                return frame;
+            }
+        };
+        DecodeExecutor<Integer, Integer> executor = new DecodeExecutor<>(recorder, 2);
+
+        executor.start();
+        executor.post(0);
+        assertTrue(firstTaken.await(2, TimeUnit.SECONDS));
+        for (int frame = 1; frame <= 5; frame++) {
+            executor.post(frame);
+            assertTrue(decoded.tryAcquire(2, TimeUnit.SECONDS));
+        }
+        assertTrue(recorder.results.isEmpty());
+        unblock.countDown();
+        assertTrue(recorder.done.await(2, TimeUnit.SECONDS));
+        executor.stop();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), recorder.results);
+    }
+
+    @Test(timeout = 5000)
+    public void slowResultHandler_doesNotHoldBackOtherWorkers() throws InterruptedException {
+        final CountDownLatch delivering = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final CountDownLatch secondDecoded = new CountDownLatch(1);
+        Recorder recorder = new Recorder(2) {
+            @Override
+            public Integer onDecodeFrame(Integer frame, int worker) {
+                if (frame == 1) {
+                    secondDecoded.countDown();
+                }
+                return frame;
+            }
+
+            @Override
+            public void onFrameResult(Integer result, long sequence) {
+                if (result == 0) {
+                    delivering.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.onFrameResult(result, sequence);
+            }
+        };
+        DecodeExecutor<Integer, Integer> executor = new DecodeExecutor<>(recorder, 2);
+
+        executor.start();
+        executor.post(0);
+        assertTrue(delivering.await(2, TimeUnit.SECONDS));
+        executor.post(1);
+        // Decoded by the other worker while the first result is still being handed over
+        assertTrue(secondDecoded.await(2, TimeUnit.SECONDS));
+        unblock.countDown();
+        assertTrue(recorder.done.await(2, TimeUnit.SECONDS));
+        executor.stop();
+
+        assertEquals(Arrays.asList(0, 1), recorder.results);
+    }
+
+    @Test(timeout = 5000)
+    public void post_replacesFrameNotTakenYet() throws InterruptedException {
+        final CountDownLatch firstTaken = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        Recorder recorder = new Recorder(2) {
+            @Override
+            public Integer onDecodeFrame(Integer frame, int worker) {
+                if (frame == 0) {
+                    firstTaken.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return frame;
+            }
+        };
+        DecodeExecutor<Integer, Integer> executor = new DecodeExecutor<>(recorder);
+
+        executor.start();
+        executor.post(0);
+        assertTrue(firstTaken.await(2, TimeUnit.SECONDS));
+        // Both wait for the busy worker, only the newest is decoded
+        executor.post(1);
+        executor.post(2);
+        unblock.countDown();
+        assertTrue(recorder.done.await(2, TimeUnit.SECONDS));
+        executor.stop();
+
+        assertEquals(Arrays.asList(0, 2), recorder.results);
+        assertEquals(Collections.singletonList(1), recorder.dropped);
+    }
+
+    @Test
+    public void post_whileStopped_dropsFrame() {
+        Recorder recorder = new Recorder(1);
+        DecodeExecutor<Integer, Integer> executor = new DecodeExecutor<>(recorder);
+
+        executor.post(0);
+
+        assertEquals(Collections.singletonList(0), recorder.dropped);
+        assertTrue(recorder.results.isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void restartWhileDecoding_keepsOneThreadPerWorker() throws InterruptedException {
+        final CountDownLatch decoding = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final CountDownLatch decodedAfterRestart = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final Set<Thread> decodeThreads = Collections.synchronizedSet(new HashSet<Thread>());
+
+        DecodeExecutor<Integer, Integer> executor = new DecodeExecutor<>(
+                new DecodeExecutor.FrameHandler<Integer, Integer>() {
+                    @Override
+                    public Integer onDecodeFrame(Integer frame, int worker) {
+                        if (active.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        decodeThreads.add(Thread.currentThread());
+                        try {
+                            if (frame == 0) {
+                                decoding.countDown();
+                                unblock.await();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            active.decrementAndGet();
+                        }
+                        if (frame == 1) {
+                            decodedAfterRestart.countDown();
+                        }
+                        return frame;
+                    }
+
+                    @Override
+                    public void onDropFrame(Integer frame) {
+                    }
+
+                    @Override
+                    public void onFrameResult(Integer result, long sequence) {
+                    }
+                });
+
+        executor.start();
+        executor.post(0);
+        assertTrue(decoding.await(2, TimeUnit.SECONDS));
+
+        // Detached and attached again while the worker is still busy
+        executor.stop();
+        executor.start();
+        executor.post(1);
+        Thread.sleep(100);
+        unblock.countDown();
+
+        assertTrue(decodedAfterRestart.await(2, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(1, decodeThreads.size());
+        executor.stop();
+    }
+
+    // Decodes a frame into itself and records what comes out, done once expected results are in
+    private static class Recorder implements DecodeExecutor.FrameHandler<Integer, Integer> {
+
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> sequences = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done;
+
+        Recorder(int expectedResults) {
+            done = new CountDownLatch(expectedResults);
+        }
+
+        @Override
+        public Integer onDecodeFrame(Integer frame, int worker) {
+            return frame;
+        }
+
+        @Override
+        public void onDropFrame(Integer frame) {
+            dropped.add(frame);
+        }
+
+        @Override
+        public void onFrameResult(Integer result, long sequence) {
+            results.add(result);
+            sequences.add(sequence);
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameDecoderTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Test
+    public void decodesFramingWindowAtEveryRotation() throws Exception {
+        byte[] frame = SyntheticFrames.qrFrame("FrameDecoder", WIDTH, HEIGHT, 300);
+        FrameDecoder decoder = new FrameDecoder();
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean swapped = rotation % 180 != 0;
+            int rotatedWidth = swapped ? HEIGHT : WIDTH;
+            int rotatedHeight = swapped ? WIDTH : HEIGHT;
+            int size = 336;
+
+            Result result = decoder.decode(frame, WIDTH, HEIGHT, rotation,
+                    (rotatedWidth - size) / 2, (rotatedHeight - size) / 2, size, size);
+            assertEquals("rotation " + rotation, "FrameDecoder", result.getText());
+        }
+    }
+
+    @Test
+    public void decodesStridedPlaneAtEveryRotation() throws Exception {
+        byte[] frame = SyntheticFrames.qrFrame("plane", WIDTH, HEIGHT, 300);
+        // Row padding and interleaved pixels, as in the Y plane of some camera HALs
+        ByteBuffer plane = SyntheticFrames.toPlane(frame, WIDTH, HEIGHT, 2 * WIDTH + 32, 2);
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setQualityGate(FrameQuality.DEFAULT_MIN_SHARPNESS,
+                FrameQuality.DEFAULT_MIN_CONTRAST);
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean swapped = rotation % 180 != 0;
+            int rotatedWidth = swapped ? HEIGHT : WIDTH;
+            int rotatedHeight = swapped ? WIDTH : HEIGHT;
+            int size = 336;
+
+            Result result = decoder.decode(plane, WIDTH, HEIGHT, 2 * WIDTH + 32, 2, rotation,
+                    (rotatedWidth - size) / 2, (rotatedHeight - size) / 2, size, size);
+            assertEquals("rotation " + rotation, "plane", result.getText());
+        }
+        assertEquals(1, decoder.decodeMultiple(plane, WIDTH, HEIGHT, 2 * WIDTH + 32, 2, 0,
+                0, 0, WIDTH, HEIGHT).length);
+    }
+
+    @Test
+    public void shadowedFrame_decodesWithLocalThresholds() throws Exception {
+        byte[] frame = SyntheticFrames.qrFrame("shadow", WIDTH, HEIGHT, 400);
+        SyntheticFrames.shade(frame, WIDTH, HEIGHT, 1f, 0.35f);
+
+        for (boolean adaptive : new boolean[]{true, false}) {
+            FrameDecoder decoder = new FrameDecoder();
+            decoder.setAdaptiveBinarizerEnabled(adaptive);
+            Result result = decoder.decode(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT);
+            assertEquals("shadow", result.getText());
+        }
+    }
+
+    @Test
+    public void downsampledPass_decodesLargeCodesAtHalfResolution() throws Exception {
+        int width = 1280;
+        int height = 720;
+        int size = 504;
+        String text = "https://github.com/putme2yourheart/QRCodeReaderView";
+        FrameDecoder full = new FrameDecoder();
+        FrameDecoder pyramid = new FrameDecoder();
+        pyramid.setDownsampledPassEnabled(true);
+
+        byte[] large = SyntheticFrames.qrFrame(text, width, height, 400);
+        Result expected = full.decode(large, width, height, 90,
+                (height - size) / 2, (width - size) / 2, size, size);
+        assertEquals(FrameDecoder.LEVEL_FULL, full.getLastLevel());
+        Result result = pyramid.decode(large, width, height, 90,
+                (height - size) / 2, (width - size) / 2, size, size);
+        assertEquals(text, result.getText());
+        assertEquals(FrameDecoder.LEVEL_HALF, pyramid.getLastLevel());
+        // points are reported at full resolution either way
+        for (int i = 0; i < 3; i++) {
+            ResultPoint expectedPoint = expected.getResultPoints()[i];
+            ResultPoint point = result.getResultPoints()[i];
+            assertEquals(expectedPoint.getX(), point.getX(), 3);
+            assertEquals(expectedPoint.getY(), point.getY(), 3);
+        }
+
+        byte[] small = SyntheticFrames.qrFrame(text, width, height, 100);
+        result = pyramid.decode(small, width, height, 90,
+                (height - size) / 2, (width - size) / 2, size, size);
+        assertEquals(text, result.getText());
+        assertEquals(FrameDecoder.LEVEL_FULL, pyramid.getLastLevel());
+    }
+
+    @Test
+    public void qualityGate_skipsSmearedFrames() throws Exception {
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setQualityGate(FrameQuality.DEFAULT_MIN_SHARPNESS,
+                FrameQuality.DEFAULT_MIN_CONTRAST);
+
+        byte[] frame = SyntheticFrames.qrFrame("gate", WIDTH, HEIGHT, 300);
+        assertEquals("gate", decoder.decode(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT).getText());
+        assertFalse(decoder.wasLastFrameSkipped());
+
+        SyntheticFrames.defocus(frame, WIDTH, HEIGHT, 20);
+        try {
+            decoder.decode(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT);
+            fail("smeared frame decoded");
+        } catch (NotFoundException expected) {
+            assertTrue(decoder.wasLastFrameSkipped());
+        }
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void blankFrame_notFound() throws Exception {
+        new FrameDecoder().decode(SyntheticFrames.blankFrame(WIDTH, HEIGHT), WIDTH, HEIGHT, 90,
+                0, 0, HEIGHT, WIDTH);
+    }
+
+    @Test
+    public void decodeMultiple_findsEveryCode() throws Exception {
+        byte[] frame = SyntheticFrames.blankFrame(WIDTH, HEIGHT);
+        SyntheticFrames.drawQRCode(frame, WIDTH, "left", 40, 140, 200);
+        SyntheticFrames.drawQRCode(frame, WIDTH, "right", 380, 140, 200);
+
+        Result[] results = new FrameDecoder().decodeMultiple(frame, WIDTH, HEIGHT, 0,
+                0, 0, WIDTH, HEIGHT);
+
+        Set<String> texts = new HashSet<>();
+        for (Result result : results) {
+            texts.add(result.getText());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("left", "right")), texts);
+    }
+
+    @Test
+    public void decodesFormatsFromHints() throws Exception {
+        byte[] frame = SyntheticFrames.qrFrame("hinted", WIDTH, HEIGHT, 300);
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS,
+                Arrays.asList(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE));
+
+        Result result = new FrameDecoder(hints).decode(frame, WIDTH, HEIGHT, 0,
+                0, 0, WIDTH, HEIGHT);
+        assertEquals(BarcodeFormat.QR_CODE, result.getBarcodeFormat());
+        assertEquals("hinted", result.getText());
+    }
+}
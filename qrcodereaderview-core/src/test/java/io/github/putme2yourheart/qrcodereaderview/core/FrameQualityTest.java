@@ -0,0 +1,52 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameQualityTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final FrameQuality quality = new FrameQuality();
+
+    @Test
+    public void blankFrame_hasNoSharpnessNorContrast() {
+        quality.measure(SyntheticFrames.blankFrame(WIDTH, HEIGHT), WIDTH, HEIGHT, 90,
+                0, 0, HEIGHT, WIDTH);
+        assertEquals(0, quality.getSharpness(), 0);
+        assertEquals(0, quality.getContrast(), 0);
+    }
+
+    @Test
+    public void defocus_lowersSharpness() {
+        byte[] frame = SyntheticFrames.qrFrame("quality", WIDTH, HEIGHT, 300);
+        quality.measure(frame, WIDTH, HEIGHT, 90, 72, 152, 336, 336);
+        float sharp = quality.getSharpness();
+        float contrast = quality.getContrast();
+
+        SyntheticFrames.defocus(frame, WIDTH, HEIGHT, 8);
+        quality.measure(frame, WIDTH, HEIGHT, 90, 72, 152, 336, 336);
+        assertTrue(sharp + " vs " + quality.getSharpness(), quality.getSharpness() * 2 < sharp);
+        assertTrue(quality.getContrast() <= contrast);
+    }
+
+    @Test
+    public void sameWindowAtEveryRotation_measuresAlike() {
+        byte[] frame = SyntheticFrames.qrFrame("quality", WIDTH, HEIGHT, 300);
+        quality.measure(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT);
+        float sharpness = quality.getSharpness();
+        float contrast = quality.getContrast();
+
+        for (int rotation = 90; rotation < 360; rotation += 90) {
+            boolean swapped = rotation % 180 != 0;
+            quality.measure(frame, WIDTH, HEIGHT, rotation, 0, 0,
+                    swapped ? HEIGHT : WIDTH, swapped ? WIDTH : HEIGHT);
+            assertEquals("rotation " + rotation, sharpness, quality.getSharpness(),
+                    sharpness / 10);
+            assertEquals("rotation " + rotation, contrast, quality.getContrast(), contrast / 10);
+        }
+    }
+}
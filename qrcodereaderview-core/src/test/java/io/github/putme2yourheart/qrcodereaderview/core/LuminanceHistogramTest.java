@@ -0,0 +1,43 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LuminanceHistogramTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final LuminanceHistogram histogram = new LuminanceHistogram();
+
+    @Test
+    public void evenlyLitCode_isEvenHighContrast() {
+        byte[] frame = SyntheticFrames.qrFrame("histogram", WIDTH, HEIGHT, 400);
+        assertTrue(histogram.isEvenHighContrast(source(frame)));
+    }
+
+    @Test
+    public void blankFrame_hasNoContrast() {
+        assertFalse(histogram.isEvenHighContrast(source(SyntheticFrames.blankFrame(WIDTH, HEIGHT))));
+    }
+
+    @Test
+    public void dimFrame_isNotWellLit() {
+        byte[] frame = SyntheticFrames.qrFrame("histogram", WIDTH, HEIGHT, 400);
+        SyntheticFrames.shade(frame, WIDTH, HEIGHT, 0.5f, 0.5f);
+        assertFalse(histogram.isEvenHighContrast(source(frame)));
+    }
+
+    @Test
+    public void shadowedFrame_isNotEvenlyLit() {
+        byte[] frame = SyntheticFrames.qrFrame("histogram", WIDTH, HEIGHT, 400);
+        SyntheticFrames.shade(frame, WIDTH, HEIGHT, 1f, 0.6f);
+        assertFalse(histogram.isEvenHighContrast(source(frame)));
+    }
+
+    private static RotatedYUVLuminanceSource source(byte[] frame) {
+        return new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegionTrackerTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final int[] window = new int[4];
+
+    @Test
+    public void untracked_usesScanWindow() {
+        new RegionTracker().getWindow(10, 20, 300, 200, window);
+        assertArrayEquals(new int[]{10, 20, 300, 200}, window);
+    }
+
+    @Test
+    public void decodedPoints_narrowWindowToPaddedBox() {
+        RegionTracker tracker = new RegionTracker();
+        // points reported in the coordinates of a window at (10, 20)
+        tracker.onFrameDecoded(true, points(100, 100, 200, 100, 100, 200), 3, 10, 20);
+
+        tracker.getWindow(10, 20, 500, 400, window);
+        assertArrayEquals(new int[]{60, 70, 200, 200}, window);
+    }
+
+    @Test
+    public void windowStaysInsideScanWindow() {
+        RegionTracker tracker = new RegionTracker();
+        tracker.onFrameDecoded(true, points(0, 0, 100, 100), 2, 0, 0);
+
+        tracker.getWindow(0, 0, 400, 120, window);
+        assertArrayEquals(new int[]{0, 0, 150, 120}, window);
+    }
+
+    @Test
+    public void tinyBox_isWidenedToMinimumSize() {
+        RegionTracker tracker = new RegionTracker();
+        tracker.onFrameDecoded(true, points(200, 200, 210, 200), 2, 0, 0);
+
+        tracker.getWindow(0, 0, WIDTH, HEIGHT, window);
+        assertEquals(RegionTracker.MIN_SIZE, window[2]);
+        assertEquals(RegionTracker.MIN_SIZE, window[3]);
+    }
+
+    @Test
+    public void widensBackAfterMaxMisses() {
+        RegionTracker tracker = new RegionTracker(3);
+        tracker.onFrameDecoded(true, points(100, 100, 200, 200), 2, 0, 0);
+
+        tracker.onFrameDecoded(false, null, 0, 50, 50);
+        tracker.onFrameDecoded(false, null, 0, 50, 50);
+        assertTrue(tracker.isTracking());
+        tracker.onFrameDecoded(false, null, 0, 50, 50);
+        assertFalse(tracker.isTracking());
+
+        tracker.getWindow(0, 0, WIDTH, HEIGHT, window);
+        assertArrayEquals(new int[]{0, 0, WIDTH, HEIGHT}, window);
+    }
+
+    @Test
+    public void successResetsMisses() {
+        RegionTracker tracker = new RegionTracker(2);
+        tracker.onFrameDecoded(true, points(100, 100, 200, 200), 2, 0, 0);
+        tracker.onFrameDecoded(false, null, 0, 50, 50);
+        tracker.onFrameDecoded(true, points(100, 100, 200, 200), 2, 0, 0);
+        tracker.onFrameDecoded(false, null, 0, 50, 50);
+        assertTrue(tracker.isTracking());
+    }
+
+    @Test
+    public void partialDetection_startsTrackingButCountsAsMiss() {
+        RegionTracker tracker = new RegionTracker(2);
+        tracker.onFrameDecoded(false, points(100, 100, 200, 200), 2, 0, 0);
+        assertTrue(tracker.isTracking());
+        tracker.onFrameDecoded(false, points(100, 100, 200, 200), 2, 0, 0);
+        assertFalse(tracker.isTracking());
+    }
+
+    @Test
+    public void singlePoint_isIgnored() {
+        RegionTracker tracker = new RegionTracker();
+        tracker.onFrameDecoded(false, points(100, 100), 1, 0, 0);
+        assertFalse(tracker.isTracking());
+    }
+
+    @Test
+    public void followsCodeThroughFrameDecoder() throws Exception {
+        byte[] frame = SyntheticFrames.blankFrame(WIDTH, HEIGHT);
+        SyntheticFrames.drawQRCode(frame, WIDTH, "tracked", 380, 200, 150);
+
+        final List<ResultPoint> found = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setResultPointCallback(new ResultPointCallback() {
+            @Override
+            public void foundPossibleResultPoint(ResultPoint point) {
+                found.add(point);
+            }
+        });
+        RegionTracker tracker = new RegionTracker();
+
+        tracker.getWindow(0, 0, WIDTH, HEIGHT, window);
+        ResultPoint[] points = decoder.decode(frame, WIDTH, HEIGHT, 0,
+                window[0], window[1], window[2], window[3]).getResultPoints();
+        assertTrue(found.size() >= 3);
+        tracker.onFrameDecoded(true, points, points.length, window[0], window[1]);
+
+        tracker.getWindow(0, 0, WIDTH, HEIGHT, window);
+        assertTrue("window " + window[2] + "x" + window[3],
+                window[2] * window[3] * 4 < WIDTH * HEIGHT);
+        assertEquals("tracked", decoder.decode(frame, WIDTH, HEIGHT, 0,
+                window[0], window[1], window[2], window[3]).getText());
+    }
+
+    @Test
+    public void trackedResults_haveSamePointsAsUntracked() throws Exception {
+        byte[] frame = SyntheticFrames.blankFrame(WIDTH, HEIGHT);
+        SyntheticFrames.drawQRCode(frame, WIDTH, "tracked", 380, 200, 150);
+        // A scan window which does not start at the corner of the frame
+        int scanLeft = 40;
+        int scanTop = 24;
+        int scanWidth = WIDTH - 2 * scanLeft;
+        int scanHeight = HEIGHT - 2 * scanTop;
+        FrameDecoder decoder = new FrameDecoder();
+        RegionTracker tracker = new RegionTracker();
+
+        // Tracking off, the whole scan window is decoded
+        Result untracked = decoder.decode(frame, WIDTH, HEIGHT, 0,
+                scanLeft, scanTop, scanWidth, scanHeight);
+        ResultPoint[] untrackedPoints = untracked.getResultPoints();
+        tracker.onFrameDecoded(true, untrackedPoints, untrackedPoints.length,
+                scanLeft, scanTop);
+
+        // Tracking on, only the box around the code is decoded
+        tracker.getWindow(scanLeft, scanTop, scanWidth, scanHeight, window);
+        assertTrue(window[0] > scanLeft && window[1] > scanTop);
+        Result[] tracked = {decoder.decode(frame, WIDTH, HEIGHT, 0,
+                window[0], window[1], window[2], window[3])};
+        ResultPoint[] fedToTracker = tracked[0].getResultPoints().clone();
+        RegionTracker.toScanWindow(tracked, window[0], window[1], scanLeft, scanTop);
+
+        ResultPoint[] trackedPoints = tracked[0].getResultPoints();
+        assertEquals(untrackedPoints.length, trackedPoints.length);
+        for (int i = 0; i < trackedPoints.length; i++) {
+            assertEquals(untrackedPoints[i].getX(), trackedPoints[i].getX(), 0f);
+            assertEquals(untrackedPoints[i].getY(), trackedPoints[i].getY(), 0f);
+            // Points taken beforehand stay in window coordinates
+            assertEquals(trackedPoints[i].getX() - (window[0] - scanLeft),
+                    fedToTracker[i].getX(), 0f);
+        }
+    }
+
+    private static ResultPoint[] points(float... coordinates) {
+        ResultPoint[] points = new ResultPoint[coordinates.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new ResultPoint(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResultPointsTest {
+
+    @Test
+    public void transform_scalesThenTranslates() {
+        Result result = result(new ResultPoint(10, 20), null);
+
+        ResultPoints.transform(result, 2, 5, 7);
+
+        assertEquals(25, result.getResultPoints()[0].getX(), 0);
+        assertEquals(47, result.getResultPoints()[0].getY(), 0);
+        assertNull(result.getResultPoints()[1]);
+    }
+
+    @Test
+    public void transform_replacesPointsInsteadOfChangingThem() {
+        ResultPoint point = new ResultPoint(10, 20);
+        Result result = result(point);
+
+        ResultPoints.translate(result, 3, 4);
+
+        assertEquals(10, point.getX(), 0);
+        assertEquals(20, point.getY(), 0);
+        assertEquals(13, result.getResultPoints()[0].getX(), 0);
+        assertEquals(24, result.getResultPoints()[0].getY(), 0);
+    }
+
+    @Test
+    public void scale_withoutPoints_doesNothing() {
+        ResultPoints.scale(new Result("text", null, null, BarcodeFormat.QR_CODE), 2);
+    }
+
+    private static Result result(ResultPoint... points) {
+        return new Result("text", null, points, BarcodeFormat.QR_CODE);
+    }
+}
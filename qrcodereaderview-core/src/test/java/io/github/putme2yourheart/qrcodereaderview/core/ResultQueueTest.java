@@ -0,0 +1,185 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultQueueTest {
+
+    @Test
+    public void dropOldest_keepsNewestResults() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        ResultQueue<Integer> queue = new ResultQueue<>(executor, recorder, 3,
+                ResultQueue.OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.offer(i));
+        }
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList(2), Arrays.asList(3), Arrays.asList(4)),
+                recorder.batches);
+        assertEquals(3, queue.getDeliveredCount());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropNewest_keepsOldestResults() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        ResultQueue<Integer> queue = new ResultQueue<>(executor, recorder, 3,
+                ResultQueue.OverflowPolicy.DROP_NEWEST);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(3));
+        assertFalse(queue.offer(4));
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1), Arrays.asList(2)),
+                recorder.batches);
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void batches_takeUpToMaxBatchSize() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        ResultQueue<Integer> queue = new ResultQueue<>(executor, recorder, 8,
+                ResultQueue.OverflowPolicy.DROP_OLDEST, 2);
+
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        // One task per batch, so a looper is never held for the whole backlog
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3), Arrays.asList(4)),
+                recorder.batches);
+        assertEquals(5, queue.getDeliveredCount());
+        assertEquals(0, queue.size());
+    }
+
+    @Test(timeout = 5000)
+    public void block_holdsProducerBackUntilConsumed() throws InterruptedException {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        final ResultQueue<Integer> queue = new ResultQueue<>(executor, recorder, 2,
+                ResultQueue.OverflowPolicy.BLOCK);
+        final CountDownLatch offered = new CountDownLatch(1);
+
+        queue.offer(0);
+        queue.offer(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.offer(2);
+                offered.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+
+        // Taking one result makes room for the waiting one
+        executor.runOne();
+        assertTrue(offered.await(2, TimeUnit.SECONDS));
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1), Arrays.asList(2)),
+                recorder.batches);
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test(timeout = 5000)
+    public void clear_wakesBlockedProducer() throws InterruptedException {
+        final ResultQueue<Integer> queue = new ResultQueue<>(new ManualExecutor(),
+                new Recorder(), 1, ResultQueue.OverflowPolicy.BLOCK);
+        final CountDownLatch offered = new CountDownLatch(1);
+
+        queue.offer(0);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.offer(1);
+                offered.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+
+        queue.clear();
+        assertTrue(offered.await(2, TimeUnit.SECONDS));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void rejectingExecutor_dropsResults() {
+        Executor rejecting = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        ResultQueue<Integer> queue = new ResultQueue<>(rejecting, new Recorder(), 4,
+                ResultQueue.OverflowPolicy.BLOCK);
+
+        assertFalse(queue.offer(0));
+        assertFalse(queue.offer(1));
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(0, queue.size());
+    }
+
+    private static final class Recorder implements ResultQueue.Consumer<Integer> {
+
+        final List<List<Integer>> batches = new ArrayList<>();
+
+        @Override
+        public void onResults(List<Integer> results) {
+            batches.add(results);
+        }
+    }
+
+    // Runs its tasks when told to, like a looper the test drives by hand
+    private static final class ManualExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runOne() {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.remove(0);
+            }
+            task.run();
+        }
+
+        void runAll() {
+            while (true) {
+                synchronized (this) {
+                    if (tasks.isEmpty()) {
+                        return;
+                    }
+                }
+                runOne();
+            }
+        }
+    }
+}
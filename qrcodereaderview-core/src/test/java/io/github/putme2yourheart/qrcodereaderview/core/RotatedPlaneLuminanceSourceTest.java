@@ -0,0 +1,129 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that reading a strided plane through {@link RotatedPlaneLuminanceSource} gives exactly
+ * the same pixels as reading the packed frame through {@link RotatedYUVLuminanceSource}.
+ */
+public class RotatedPlaneLuminanceSourceTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    // Packed, padded rows, and every other byte as in a semi-planar buffer
+    private static final int[][] STRIDES = {
+            {WIDTH, 1}, {WIDTH + 24, 1}, {2 * WIDTH + 16, 2}};
+
+    @Test
+    public void allRotationsAndStrides_matchByteArraySource() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+
+        for (int[] strides : STRIDES) {
+            ByteBuffer plane = SyntheticFrames.toPlane(frame, WIDTH, HEIGHT,
+                    strides[0], strides[1]);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                boolean swapped = rotation % 180 != 0;
+                int rotatedWidth = swapped ? HEIGHT : WIDTH;
+                int rotatedHeight = swapped ? WIDTH : HEIGHT;
+
+                RotatedYUVLuminanceSource expected = new RotatedYUVLuminanceSource(frame,
+                        WIDTH, HEIGHT, rotation, 3, 2, rotatedWidth - 10, rotatedHeight - 6);
+                RotatedPlaneLuminanceSource actual = new RotatedPlaneLuminanceSource(plane,
+                        WIDTH, HEIGHT, strides[0], strides[1], rotation,
+                        3, 2, rotatedWidth - 10, rotatedHeight - 6);
+
+                assertSameLuminance(expected, actual);
+                assertArrayEquals("thumbnail", expected.renderThumbnail(),
+                        actual.renderThumbnail());
+            }
+        }
+    }
+
+    @Test
+    public void cropAndRotate_matchByteArraySource() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        ByteBuffer plane = SyntheticFrames.toPlane(frame, WIDTH, HEIGHT, 2 * WIDTH + 16, 2);
+
+        LuminanceSource expected = new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 90,
+                0, 0, HEIGHT, WIDTH);
+        LuminanceSource actual = new RotatedPlaneLuminanceSource(plane, WIDTH, HEIGHT,
+                2 * WIDTH + 16, 2, 90, 0, 0, HEIGHT, WIDTH);
+
+        assertSameLuminance(expected.crop(4, 9, 20, 25), actual.crop(4, 9, 20, 25));
+        assertSameLuminance(expected.rotateCounterClockwise(), actual.rotateCounterClockwise());
+        assertSameLuminance(expected.crop(4, 9, 20, 25).rotateCounterClockwise(),
+                actual.crop(4, 9, 20, 25).rotateCounterClockwise());
+    }
+
+    @Test
+    public void reading_leavesPlaneAlone() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        ByteBuffer plane = SyntheticFrames.toPlane(frame, WIDTH, HEIGHT, WIDTH + 24, 1);
+        plane.position(7);
+        plane.limit(11);
+
+        new RotatedPlaneLuminanceSource(plane, WIDTH, HEIGHT, WIDTH + 24, 1, 0,
+                0, 0, WIDTH, HEIGHT).getMatrix();
+
+        assertEquals(7, plane.position());
+        assertEquals(11, plane.limit());
+    }
+
+    @Test
+    public void qrCodeReader_decodesPlaneAtEveryRotation() throws Exception {
+        int width = 320;
+        int height = 240;
+        byte[] frame = SyntheticFrames.qrFrame("plane", width, height, 160);
+        ByteBuffer plane = SyntheticFrames.toPlane(frame, width, height, 2 * width + 64, 2);
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean swapped = rotation % 180 != 0;
+            LuminanceSource source = new RotatedPlaneLuminanceSource(plane, width, height,
+                    2 * width + 64, 2, rotation, 0, 0,
+                    swapped ? height : width, swapped ? width : height);
+
+            assertEquals("rotation " + rotation, "plane", new QRCodeReader()
+                    .decode(new BinaryBitmap(new HybridBinarizer(source))).getText());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planeTooSmallForFrame_isRejected() {
+        new RotatedPlaneLuminanceSource(ByteBuffer.allocateDirect(WIDTH * HEIGHT), WIDTH, HEIGHT,
+                WIDTH + 24, 1, 0, 0, 0, WIDTH, HEIGHT);
+    }
+
+    private static void assertSameLuminance(LuminanceSource expected, LuminanceSource actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+
+        byte[] expectedMatrix = expected.getMatrix();
+        byte[] actualMatrix = actual.getMatrix();
+        int size = expected.getWidth() * expected.getHeight();
+        for (int i = 0; i < size; i++) {
+            assertEquals("pixel " + i, expectedMatrix[i], actualMatrix[i]);
+        }
+
+        for (int y = 0; y < expected.getHeight(); y++) {
+            assertArrayEquals("row " + y, expected.getRow(y, null), actual.getRow(y, null));
+        }
+    }
+
+    private static byte[] randomFrame(int width, int height) {
+        byte[] frame = new byte[width * height];
+        new Random(42).nextBytes(frame);
+        return frame;
+    }
+}
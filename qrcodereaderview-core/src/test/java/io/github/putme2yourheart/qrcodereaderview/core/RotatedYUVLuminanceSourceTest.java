@@ -0,0 +1,139 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that reading through {@link RotatedYUVLuminanceSource} gives exactly the same pixels as
+ * rotating the whole frame first and cropping it with {@link PlanarYUVLuminanceSource}.
+ */
+public class RotatedYUVLuminanceSourceTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void rotate90_matchesRotateThenCrop() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+
+        // The rotation DecodeFrameTask used to do on the whole frame
+        byte[] rotatedData = new byte[frame.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++)
+                rotatedData[x * HEIGHT + HEIGHT - y - 1] = frame[x + y * WIDTH];
+        }
+
+        assertSameLuminance(
+                new PlanarYUVLuminanceSource(rotatedData, HEIGHT, WIDTH, 5, 7, 30, 40, false),
+                new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 90, 5, 7, 30, 40));
+    }
+
+    @Test
+    public void allRotations_matchRotateThenCrop() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean swapped = rotation % 180 != 0;
+            int rotatedWidth = swapped ? HEIGHT : WIDTH;
+            int rotatedHeight = swapped ? WIDTH : HEIGHT;
+            byte[] rotatedData = rotate(frame, WIDTH, HEIGHT, rotation);
+
+            assertSameLuminance(
+                    new PlanarYUVLuminanceSource(rotatedData, rotatedWidth, rotatedHeight,
+                            3, 2, rotatedWidth - 10, rotatedHeight - 6, false),
+                    new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, rotation,
+                            3, 2, rotatedWidth - 10, rotatedHeight - 6));
+        }
+    }
+
+    @Test
+    public void fullFrame_matchesPlanarSource() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+
+        assertSameLuminance(
+                new PlanarYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false),
+                new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void crop_matchesPlanarCrop() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        byte[] rotatedData = rotate(frame, WIDTH, HEIGHT, 90);
+
+        assertSameLuminance(
+                new PlanarYUVLuminanceSource(rotatedData, HEIGHT, WIDTH, 0, 0, HEIGHT, WIDTH, false)
+                        .crop(4, 9, 20, 25),
+                new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 90, 0, 0, HEIGHT, WIDTH)
+                        .crop(4, 9, 20, 25));
+    }
+
+    @Test
+    public void rotateCounterClockwise_matchesRotation270() {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+
+        assertSameLuminance(
+                new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 270, 0, 0, HEIGHT, WIDTH),
+                new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT)
+                        .rotateCounterClockwise());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropOutsideRotatedFrame_isRejected() {
+        new RotatedYUVLuminanceSource(new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, 90, 0, 0, WIDTH, HEIGHT);
+    }
+
+    private static void assertSameLuminance(LuminanceSource expected, LuminanceSource actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+
+        byte[] expectedMatrix = expected.getMatrix();
+        byte[] actualMatrix = actual.getMatrix();
+        int size = expected.getWidth() * expected.getHeight();
+        for (int i = 0; i < size; i++) {
+            assertEquals("pixel " + i, expectedMatrix[i], actualMatrix[i]);
+        }
+
+        for (int y = 0; y < expected.getHeight(); y++) {
+            assertArrayEquals("row " + y, expected.getRow(y, null), actual.getRow(y, null));
+        }
+    }
+
+    // Rotates the Y plane clockwise, the slow way
+    private static byte[] rotate(byte[] frame, int width, int height, int rotation) {
+        byte[] rotated = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                byte value = frame[y * width + x];
+                switch (rotation) {
+                    case 0:
+                        rotated[y * width + x] = value;
+                        break;
+                    case 90:
+                        rotated[x * height + height - 1 - y] = value;
+                        break;
+                    case 180:
+                        rotated[(height - 1 - y) * width + width - 1 - x] = value;
+                        break;
+                    default:
+                        rotated[(width - 1 - x) * height + y] = value;
+                        break;
+                }
+            }
+        }
+        return rotated;
+    }
+
+    private static byte[] randomFrame(int width, int height) {
+        // NV21: Y plane followed by interleaved VU at quarter resolution
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(frame);
+        return frame;
+    }
+}
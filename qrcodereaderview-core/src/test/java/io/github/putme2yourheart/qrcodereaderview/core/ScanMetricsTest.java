@@ -0,0 +1,124 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.NotFoundException;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanMetricsTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Test
+    public void histogram_bucketsByPowersOfTwoMicroseconds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);                                  // < 1 us
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3));     // < 4 us
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));    // < 16384 us
+        histogram.record(TimeUnit.SECONDS.toNanos(100));        // overflow
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getBucket(0));
+        assertEquals(1, histogram.getBucket(2));
+        assertEquals(1, histogram.getBucket(14));
+        assertEquals(1, histogram.getBucket(LatencyHistogram.BUCKET_COUNT - 1));
+        assertEquals(TimeUnit.SECONDS.toNanos(100), histogram.getMaxNanos());
+    }
+
+    @Test
+    public void histogram_estimatesPercentilesFromBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(5000));
+        }
+
+        assertEquals(128, histogram.getPercentileMicros(50));
+        assertEquals(128, histogram.getPercentileMicros(90));
+        // The last bucket is capped by the longest duration
+        assertEquals(5000, histogram.getPercentileMicros(99));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(590), histogram.getMeanNanos());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+    }
+
+    @Test
+    public void frameDecoder_countsAttemptsSuccessesAndStages() throws Exception {
+        ScanMetrics metrics = new ScanMetrics();
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setMetrics(metrics);
+
+        byte[] frame = SyntheticFrames.qrFrame("metrics", WIDTH, HEIGHT, 300);
+        decoder.decode(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT);
+        try {
+            decoder.decode(SyntheticFrames.blankFrame(WIDTH, HEIGHT), WIDTH, HEIGHT, 0,
+                    0, 0, WIDTH, HEIGHT);
+        } catch (NotFoundException expected) {
+            // counted as an attempt without success
+        }
+
+        assertEquals(2, metrics.getDecodeAttempts());
+        assertEquals(1, metrics.getDecodeSuccesses());
+        assertEquals(1, metrics.getDecodeLevelHits(FrameDecoder.LEVEL_FULL));
+        assertEquals(2, metrics.getStageLatency(ScanMetrics.STAGE_ROTATE).getCount());
+        assertTrue(metrics.getStageLatency(ScanMetrics.STAGE_BINARIZE).getCount() >= 2);
+        assertTrue(metrics.getStageLatency(ScanMetrics.STAGE_DECODE).getCount() >= 1);
+        assertEquals(0, metrics.getFrameSkipRatio(), 0);
+    }
+
+    @Test
+    public void frameDecoder_countsSkippedFrames() throws Exception {
+        ScanMetrics metrics = new ScanMetrics();
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setMetrics(metrics);
+        decoder.setQualityGate(FrameQuality.DEFAULT_MIN_SHARPNESS,
+                FrameQuality.DEFAULT_MIN_CONTRAST);
+
+        decoder.decode(SyntheticFrames.qrFrame("metrics", WIDTH, HEIGHT, 300), WIDTH, HEIGHT, 0,
+                0, 0, WIDTH, HEIGHT);
+        for (int i = 0; i < 3; i++) {
+            try {
+                decoder.decode(SyntheticFrames.blankFrame(WIDTH, HEIGHT), WIDTH, HEIGHT, 0,
+                        0, 0, WIDTH, HEIGHT);
+            } catch (NotFoundException expected) {
+                assertTrue(decoder.wasLastFrameSkipped());
+            }
+        }
+
+        assertEquals(3, metrics.getFramesSkipped());
+        assertEquals(0.75f, metrics.getFrameSkipRatio(), 1e-6);
+        // Skipped frames never reach the readers
+        assertEquals(1, metrics.getDecodeAttempts());
+        assertEquals(1, metrics.getStageLatency(ScanMetrics.STAGE_ROTATE).getCount());
+    }
+
+    @Test
+    public void timeToFirstResult_onlyCountsFirstResultAfterStart() throws Exception {
+        ScanMetrics metrics = new ScanMetrics();
+        metrics.onResultDelivered();
+        assertEquals(-1, metrics.getTimeToFirstResultNanos());
+
+        metrics.onScanStarted();
+        Thread.sleep(5);
+        metrics.onResultDelivered();
+        long first = metrics.getTimeToFirstResultNanos();
+        assertTrue(first >= TimeUnit.MILLISECONDS.toNanos(5));
+
+        Thread.sleep(5);
+        metrics.onResultDelivered();
+        assertEquals(first, metrics.getTimeToFirstResultNanos());
+
+        metrics.onScanStarted();
+        assertEquals(-1, metrics.getTimeToFirstResultNanos());
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Builds NV21 preview frames showing QR codes, for tests which need something to decode.
+ */
+final class SyntheticFrames {
+
+    private static final byte LIGHT = (byte) 200;
+    private static final byte DARK = (byte) 30;
+    private static final byte CHROMA = (byte) 128;
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * @return an NV21 frame of the given size with a {@code codeSize} pixels wide QR code
+     * encoding {@code text} in its center.
+     */
+    static byte[] qrFrame(String text, int width, int height, int codeSize) {
+        byte[] frame = blankFrame(width, height);
+        drawQRCode(frame, width, text, (width - codeSize) / 2, (height - codeSize) / 2, codeSize);
+        return frame;
+    }
+
+    static byte[] blankFrame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int i = 0; i < width * height; i++) {
+            frame[i] = LIGHT;
+        }
+        for (int i = width * height; i < frame.length; i++) {
+            frame[i] = CHROMA;
+        }
+        return frame;
+    }
+
+    /**
+     * Lays the Y plane of a frame out like the Y plane of an {@code android.media.Image}: in a
+     * direct buffer, rows {@code rowStride} bytes apart and pixels {@code pixelStride} bytes
+     * apart, the last row ending with its last pixel. The padding is filled with black, so
+     * reading it by mistake shows.
+     */
+    static ByteBuffer toPlane(byte[] frame, int width, int height, int rowStride,
+                              int pixelStride) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(
+                (height - 1) * rowStride + (width - 1) * pixelStride + 1);
+        while (plane.hasRemaining()) {
+            plane.put((byte) 0);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane.put(y * rowStride + x * pixelStride, frame[y * width + x]);
+            }
+        }
+        plane.clear();
+        return plane;
+    }
+
+    /**
+     * Darkens the Y plane of a frame by a gain going linearly from {@code leftGain} at the left
+     * edge to {@code rightGain} at the right edge, like a shadow falling across the code.
+     */
+    static void shade(byte[] frame, int width, int height, float leftGain, float rightGain) {
+        for (int x = 0; x < width; x++) {
+            float gain = leftGain + (rightGain - leftGain) * x / (width - 1);
+            for (int y = 0; y < height; y++) {
+                frame[y * width + x] = (byte) Math.round((frame[y * width + x] & 0xff) * gain);
+            }
+        }
+    }
+
+    /**
+     * Defocuses the Y plane of a frame with a {@code (2 * radius + 1)} square box filter, like a
+     * camera that has not found focus yet.
+     */
+    static void defocus(byte[] frame, int width, int height, int radius) {
+        smear(frame, 0, 1, width, height, width, radius);
+        smear(frame, 0, width, height, width, 1, radius);
+    }
+
+    private static void smear(byte[] frame, int offset, int step, int length,
+                              int lines, int lineStep, int radius) {
+        int[] line = new int[length];
+        for (int l = 0; l < lines; l++, offset += lineStep) {
+            for (int i = 0; i < length; i++) {
+                line[i] = frame[offset + i * step] & 0xff;
+            }
+            for (int i = 0; i < length; i++) {
+                int sum = 0;
+                for (int j = -radius; j <= radius; j++) {
+                    sum += line[Math.max(0, Math.min(length - 1, i + j))];
+                }
+                frame[offset + i * step] = (byte) (sum / (2 * radius + 1));
+            }
+        }
+    }
+
+    /**
+     * Draws a QR code, quiet zone included, into the Y plane of a frame.
+     */
+    static void drawQRCode(byte[] frame, int frameWidth, String text, int left, int top, int size) {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 2);
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size, hints);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException(e);
+        }
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                frame[(top + y) * frameWidth + left + x] = matrix.get(x, y) ? DARK : LIGHT;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.putme2yourheart.qrcodereaderview.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TiledDecoderTest {
+
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 1200;
+    private static final int CODE_SIZE = 150;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void tileStarts_coverLengthWithOverlap() {
+        assertArrayEquals(new int[]{0}, TiledDecoder.tileStarts(400, 512, 128));
+        assertArrayEquals(new int[]{0}, TiledDecoder.tileStarts(512, 512, 128));
+        assertArrayEquals(new int[]{0, 384, 488}, TiledDecoder.tileStarts(1000, 512, 128));
+        assertArrayEquals(new int[]{0, 384, 768, 1088}, TiledDecoder.tileStarts(1600, 512, 128));
+    }
+
+    @Test
+    public void findsSmallCodesAllOverTheImage() throws NotFoundException {
+        byte[] frame = SyntheticFrames.blankFrame(WIDTH, HEIGHT);
+        // One of them straddles the edge between the first two columns of tiles
+        int[][] positions = {{60, 80}, {440, 200}, {1300, 150}, {700, 900}, {1380, 1000}};
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < positions.length; i++) {
+            SyntheticFrames.drawQRCode(frame, WIDTH, "code " + i,
+                    positions[i][0], positions[i][1], CODE_SIZE);
+            expected.add("code " + i);
+        }
+
+        Result[] results = new TiledDecoder(executor, 512, 192).decodeMultiple(
+                new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT));
+
+        Set<String> found = new HashSet<>();
+        for (Result result : results) {
+            found.add(result.getText());
+            // Points are in image coordinates, inside the code they belong to
+            int index = Integer.parseInt(result.getText().substring(5));
+            for (ResultPoint point : result.getResultPoints()) {
+                assertTrue(point.getX() >= positions[index][0]
+                        && point.getX() <= positions[index][0] + CODE_SIZE);
+                assertTrue(point.getY() >= positions[index][1]
+                        && point.getY() <= positions[index][1] + CODE_SIZE);
+            }
+        }
+        assertEquals(expected, found);
+        // Codes inside the overlap of several tiles are reported once
+        assertEquals(positions.length, results.length);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void blankImage_throwsNotFound() throws NotFoundException {
+        new TiledDecoder(executor, 512, 192).decodeMultiple(new RotatedYUVLuminanceSource(
+                SyntheticFrames.blankFrame(WIDTH, HEIGHT), WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void merge_keepsSameTextAtDifferentPlaces() {
+        List<Result> results = new ArrayList<>(Arrays.asList(
+                code("a", 100, 100, 60),
+                code("a", 104, 98, 60),
+                code("b", 100, 100, 60),
+                code("a", 400, 100, 60),
+                new Result("a", null, null, BarcodeFormat.QR_CODE)));
+
+        Result[] merged = TiledDecoder.merge(results);
+
+        assertEquals(3, merged.length);
+        assertEquals(results.get(0), merged[0]);
+        assertEquals(results.get(2), merged[1]);
+        assertEquals(results.get(3), merged[2]);
+    }
+
+    private static Result code(String text, float left, float top, float size) {
+        return new Result(text, null, new ResultPoint[]{
+                new ResultPoint(left, top + size), new ResultPoint(left, top),
+                new ResultPoint(left + size, top)}, BarcodeFormat.QR_CODE);
+    }
+}
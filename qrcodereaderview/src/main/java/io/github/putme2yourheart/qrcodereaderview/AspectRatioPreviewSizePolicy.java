@@ -0,0 +1,72 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The default {@link PreviewSizePolicy}: a size exactly matching the view if there is one,
+ * otherwise the one whose aspect ratio is closest to the view's, between
+ * {@link #MIN_PREVIEW_PIXELS} and {@link #MAX_PREVIEW_PIXELS}. Larger sizes win ties.
+ */
+public final class AspectRatioPreviewSizePolicy implements PreviewSizePolicy {
+
+    private static final String TAG = "PreviewSizePolicy";
+
+    // This is bigger than the size of a small screen, which is still supported. The routine
+    // below will still select the default (presumably 320x240) size for these. This prevents
+    // accidental selection of very low resolution on some devices.
+    public static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
+    public static final int MAX_PREVIEW_PIXELS = 1280 * 720;
+
+    @Override
+    public PreviewSize select(List<PreviewSize> supportedSizes, PreviewSize viewSize) {
+        // Sort by size, descending
+        List<PreviewSize> sizes = new ArrayList<>(supportedSizes);
+        Collections.sort(sizes, new Comparator<PreviewSize>() {
+            @Override
+            public int compare(PreviewSize a, PreviewSize b) {
+                return b.getPixels() < a.getPixels() ? -1 : b.getPixels() > a.getPixels() ? 1 : 0;
+            }
+        });
+
+        PreviewSize bestSize = null;
+        float screenAspectRatio = (float) viewSize.width / (float) viewSize.height;
+
+        float diff = Float.POSITIVE_INFINITY;
+        for (PreviewSize size : sizes) {
+            int pixels = size.getPixels();
+            if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
+                continue;
+            }
+
+            // This code is modified since We're using portrait mode
+            boolean isCandidateLandscape = size.width > size.height;
+            int maybeFlippedWidth = isCandidateLandscape ? size.height : size.width;
+            int maybeFlippedHeight = isCandidateLandscape ? size.width : size.height;
+
+            if (maybeFlippedWidth == viewSize.width && maybeFlippedHeight == viewSize.height) {
+                SimpleLog.i(TAG, "Found preview size exactly matching screen size: " + size);
+                return size;
+            }
+            float aspectRatio = (float) maybeFlippedWidth / (float) maybeFlippedHeight;
+            float newDiff = Math.abs(aspectRatio - screenAspectRatio);
+            if (newDiff < diff) {
+                bestSize = size;
+                diff = newDiff;
+            }
+        }
+        return bestSize;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return "AspectRatio";
+    }
+
+    @Override
+    public String toString() {
+        return getCacheKey();
+    }
+}
@@ -0,0 +1,859 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.putme2yourheart.qrcodereaderview.camera.open.OpenCameraInterface;
+
+/**
+ * A {@link ScanCamera} on top of {@code android.hardware.camera2}, for Android 5.0 and later.
+ * <p>
+ * Preview frames go to an {@link ImageReader} in {@link ImageFormat#YUV_420_888}, and are
+ * decoded straight from the Y plane of each {@link Image} through its row and pixel strides:
+ * nothing is copied out of the frame but the framing rect, by the decoder itself. Only
+ * {@link #MAX_IMAGES} images exist, each is closed as soon as it has been decoded or dropped,
+ * and the camera skips frames while all of them are in use.
+ * <p>
+ * The preview surface is given a fixed size of the aspect ratio of the frames, so that the
+ * preview shows what is decoded and the framing rect drawn over it matches the one cropped out
+ * of the frames. The capture session is only created by {@link #startPreview()} once the view
+ * reports the surface took that size through {@link #setSurfaceSize(int, int)}, nothing waits
+ * for the main thread.
+ * <p>
+ * Frames are turned to the orientation of the view by the rotation worked out from the
+ * orientation of the sensor, the side the camera faces and the rotation of the display.
+ * <p>
+ * The camera2 calls complete on a thread of their own, which also delivers the frames, while
+ * the methods of this class wait for them on the camera thread of the view. Focus is
+ * continuous when the camera supports it, otherwise an auto focus is triggered every
+ * autofocus interval.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class Camera2Manager implements ScanCamera {
+
+    private static final String TAG = Camera2Manager.class.getSimpleName();
+
+    private static final String THREAD_NAME = "QRCodeCamera2";
+
+    /**
+     * Images the reader holds at most: one being decoded, one waiting for the decoder and one
+     * being filled by the camera. Decode workers beyond the second have nothing to decode.
+     */
+    static final int MAX_IMAGES = 3;
+
+    private static final long OPEN_TIMEOUT_MS = 2500;
+
+    // Used when the preview size policy has no opinion
+    private static final int DEFAULT_PREVIEW_PIXELS = 640 * 480;
+
+    // The largest preview surface camera2 guarantees, and how far its aspect ratio may be off
+    private static final int MAX_SURFACE_PIXELS = 1920 * 1080;
+    private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+    private final android.hardware.camera2.CameraManager cameraService;
+    private final WindowManager windowManager;
+    // SurfaceHolder wants its size set on the thread of the view
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private SurfaceHolder fixedSizeHolder;
+    // The size the preview surface must have for the session to be created, null for any
+    private PreviewSize surfaceSize;
+    private int surfaceWidth;
+    private int surfaceHeight;
+    private PreviewSizePolicy previewSizePolicy = new AspectRatioPreviewSizePolicy();
+    private int requestedCameraId = OpenCameraInterface.NO_REQUESTED_CAMERA;
+    private long autofocusIntervalInMs = AutoFocusManager.DEFAULT_AUTO_FOCUS_INTERVAL_MS;
+    private volatile FrameCallback frameCallback;
+    private volatile ErrorCallback errorCallback;
+
+    private HandlerThread callbackThread;
+    private Handler callbackHandler;
+    private volatile CameraDevice device;
+    private CameraCaptureSession session;
+    private FrameStream frameStream;
+    private SurfaceHolder holder;
+    private Surface previewSurface;
+    private int afMode = CameraMetadata.CONTROL_AF_MODE_OFF;
+    private boolean torchSupported;
+    private boolean torchEnabled;
+    private boolean previewing;
+    private int sensorOrientation;
+    private boolean frontFacing;
+
+    // Read by the main and decode threads while the camera thread opens the camera
+    private volatile Point screenResolution;
+    private volatile Point cameraResolution;
+    private volatile Rect framingRect;
+    private volatile Rect framingRectInPreview;
+    private volatile int frameRotation;
+
+    private final Runnable autoFocusTrigger = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (Camera2Manager.this) {
+                if (previewing) {
+                    triggerAutoFocus();
+                    callbackHandler.postDelayed(this, autofocusIntervalInMs);
+                }
+            }
+        }
+    };
+
+    Camera2Manager(Context context) {
+        cameraService = (android.hardware.camera2.CameraManager)
+                context.getSystemService(Context.CAMERA_SERVICE);
+        windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    }
+
+    @Override
+    public void setFrameCallback(FrameCallback callback) {
+        this.frameCallback = callback;
+    }
+
+    @Override
+    public void setErrorCallback(ErrorCallback callback) {
+        this.errorCallback = callback;
+    }
+
+    @Override
+    public synchronized void openDriver(SurfaceHolder holder, int width, int height)
+            throws IOException {
+        if (isOpen()) {
+            return;
+        }
+        callbackThread = new HandlerThread(THREAD_NAME);
+        callbackThread.start();
+        callbackHandler = new Handler(callbackThread.getLooper());
+
+        try {
+            String cameraId = selectCamera();
+            if (cameraId == null) {
+                throw new IOException("No camera to open");
+            }
+            CameraCharacteristics characteristics =
+                    cameraService.getCameraCharacteristics(cameraId);
+            PreviewSize size = selectPreviewSize(characteristics, width, height);
+            afMode = selectAfMode(characteristics);
+            Boolean flashAvailable = characteristics.get(
+                    CameraCharacteristics.FLASH_INFO_AVAILABLE);
+            torchSupported = flashAvailable != null && flashAvailable;
+            Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            sensorOrientation = orientation != null ? orientation : 0;
+            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            frontFacing = facing != null && facing == CameraMetadata.LENS_FACING_FRONT;
+
+            screenResolution = new Point(width, height);
+            cameraResolution = new Point(size.width, size.height);
+            framingRect = null;
+            updateFrameRotation();
+
+            device = open(cameraId);
+            frameStream = new FrameStream(this, size.width, size.height, callbackHandler);
+            this.holder = holder;
+            surfaceWidth = width;
+            surfaceHeight = height;
+            // Before the session is created, the camera picks the preview stream size then
+            fixPreviewSurfaceSize(holder, characteristics, size);
+        } catch (CameraAccessException e) {
+            throw new IOException("Can not access camera: " + e.getMessage());
+        }
+    }
+
+    private String selectCamera() throws CameraAccessException {
+        String[] cameraIds = cameraService.getCameraIdList();
+        if (cameraIds.length == 0) {
+            SimpleLog.w(TAG, "No cameras!");
+            return null;
+        }
+        if (requestedCameraId >= 0) {
+            String requested = selectCamera(cameraIds, requestedCameraId);
+            if (requested == null) {
+                SimpleLog.w(TAG, "Requested camera does not exist: " + requestedCameraId);
+            }
+            return requested;
+        }
+        for (String cameraId : cameraIds) {
+            Integer facing = cameraService.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
+                return cameraId;
+            }
+        }
+        SimpleLog.i(TAG, "No camera facing back; returning camera " + cameraIds[0]);
+        return cameraIds[0];
+    }
+
+    /**
+     * Finds the camera2 id of the camera at an index of {@code android.hardware.Camera}, the
+     * index {@link #setPreviewCameraId(int)} takes. The ids of both APIs need not be the same,
+     * so the camera is matched by the side it faces and its rank among the cameras facing that
+     * side, assuming both APIs list those in the same order.
+     *
+     * @return the camera2 id, null if there is no camera at that index.
+     */
+    @SuppressWarnings("deprecation")
+    private String selectCamera(String[] cameraIds, int index) throws CameraAccessException {
+        if (index >= Camera.getNumberOfCameras()) {
+            return null;
+        }
+        Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+        Camera.getCameraInfo(index, cameraInfo);
+        int facing = cameraInfo.facing;
+        int rank = 0;
+        for (int i = 0; i < index; i++) {
+            Camera.getCameraInfo(i, cameraInfo);
+            if (cameraInfo.facing == facing) {
+                rank++;
+            }
+        }
+        int lensFacing = facing == Camera.CameraInfo.CAMERA_FACING_FRONT
+                ? CameraMetadata.LENS_FACING_FRONT : CameraMetadata.LENS_FACING_BACK;
+        for (String cameraId : cameraIds) {
+            Integer candidate = cameraService.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.LENS_FACING);
+            if (candidate != null && candidate == lensFacing && rank-- == 0) {
+                return cameraId;
+            }
+        }
+        return null;
+    }
+
+    private PreviewSize selectPreviewSize(CameraCharacteristics characteristics,
+                                          int width, int height) throws IOException {
+        StreamConfigurationMap map = characteristics.get(
+                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] sizes = map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null;
+        if (sizes == null || sizes.length == 0) {
+            throw new IOException("Camera has no YUV_420_888 output");
+        }
+        List<PreviewSize> supportedSizes = new ArrayList<>(sizes.length);
+        for (Size size : sizes) {
+            supportedSizes.add(new PreviewSize(size.getWidth(), size.getHeight()));
+        }
+        SimpleLog.i(TAG, "Supported preview sizes: " + supportedSizes);
+
+        PreviewSize bestSize = previewSizePolicy.select(supportedSizes,
+                new PreviewSize(width, height));
+        if (bestSize == null) {
+            // camera2 has no default preview size, take the smallest one of at least VGA
+            PreviewSize largest = null;
+            for (PreviewSize size : supportedSizes) {
+                if (size.getPixels() >= DEFAULT_PREVIEW_PIXELS
+                        && (bestSize == null || size.getPixels() < bestSize.getPixels())) {
+                    bestSize = size;
+                }
+                if (largest == null || size.getPixels() > largest.getPixels()) {
+                    largest = size;
+                }
+            }
+            if (bestSize == null) {
+                bestSize = largest;
+            }
+            SimpleLog.i(TAG, "No suitable preview sizes, using " + bestSize);
+        } else {
+            SimpleLog.i(TAG, "Found best approximate preview size with " + previewSizePolicy
+                    + ": " + bestSize);
+        }
+        return bestSize;
+    }
+
+    /**
+     * Sizes the preview surface like the frames, without waiting for it to be resized. Left to
+     * the size of the view, the surface gets a preview stream of another aspect ratio, which
+     * shows a field of view the framing rect no longer matches.
+     */
+    private void fixPreviewSurfaceSize(final SurfaceHolder holder,
+                                       CameraCharacteristics characteristics,
+                                       PreviewSize frameSize) {
+        StreamConfigurationMap map = characteristics.get(
+                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        final PreviewSize size = selectSurfaceSize(
+                map != null ? map.getOutputSizes(SurfaceHolder.class) : null, frameSize);
+        surfaceSize = size;
+        if (size == null) {
+            SimpleLog.w(TAG, "No preview surface size with the aspect ratio of " + frameSize);
+            return;
+        }
+        SimpleLog.i(TAG, "Preview surface size: " + size);
+
+        fixedSizeHolder = holder;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // The view is told through surfaceChanged(), unless it had that size already
+                holder.setFixedSize(size.width, size.height);
+            }
+        });
+    }
+
+    /**
+     * @return the preview surface size of the aspect ratio of the frames closest to them in
+     * pixels, null if there is none.
+     */
+    private static PreviewSize selectSurfaceSize(Size[] sizes, PreviewSize frameSize) {
+        if (sizes == null) {
+            return null;
+        }
+        PreviewSize best = null;
+        for (Size candidate : sizes) {
+            PreviewSize size = new PreviewSize(candidate.getWidth(), candidate.getHeight());
+            if (size.getPixels() > MAX_SURFACE_PIXELS || Math.abs(size.getAspectRatio()
+                    - frameSize.getAspectRatio()) > ASPECT_RATIO_TOLERANCE) {
+                continue;
+            }
+            if (best == null || Math.abs(size.getPixels() - frameSize.getPixels())
+                    < Math.abs(best.getPixels() - frameSize.getPixels())) {
+                best = size;
+            }
+        }
+        return best;
+    }
+
+    private static int selectAfMode(CameraCharacteristics characteristics) {
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if (afModes == null) {
+            return CameraMetadata.CONTROL_AF_MODE_OFF;
+        }
+        int afMode = CameraMetadata.CONTROL_AF_MODE_OFF;
+        for (int mode : afModes) {
+            if (mode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+                return mode;
+            }
+            if (mode == CameraMetadata.CONTROL_AF_MODE_AUTO) {
+                afMode = mode;
+            }
+        }
+        return afMode;
+    }
+
+    private CameraDevice open(String cameraId) throws CameraAccessException, IOException {
+        OpenCallback callback = new OpenCallback();
+        SimpleLog.i(TAG, "Opening camera " + cameraId);
+        cameraService.openCamera(cameraId, callback, callbackHandler);
+        return callback.await();
+    }
+
+    private CameraCaptureSession createSession(CameraDevice device, List<Surface> outputs)
+            throws CameraAccessException, IOException {
+        SessionCallback callback = new SessionCallback();
+        device.createCaptureSession(outputs, callback, callbackHandler);
+        return callback.await();
+    }
+
+    private CaptureRequest.Builder newRequest() throws CameraAccessException {
+        CaptureRequest.Builder builder = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        builder.addTarget(previewSurface);
+        builder.addTarget(frameStream.reader.getSurface());
+        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+        builder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+        builder.set(CaptureRequest.FLASH_MODE, torchEnabled
+                ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+        return builder;
+    }
+
+    @Override
+    public synchronized void closeDriver() {
+        stopPreview();
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+        if (frameStream != null) {
+            // Images still being decoded keep the reader open until they are released
+            frameStream.close();
+            frameStream = null;
+        }
+        holder = null;
+        previewSurface = null;
+        surfaceSize = null;
+        if (fixedSizeHolder != null) {
+            // Back to the size of the view, for android.hardware.Camera
+            final SurfaceHolder holder = fixedSizeHolder;
+            fixedSizeHolder = null;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    holder.setSizeFromLayout();
+                }
+            });
+        }
+        if (callbackThread != null) {
+            callbackThread.quitSafely();
+            callbackThread = null;
+            callbackHandler = null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return device != null;
+    }
+
+    @Override
+    public synchronized void startPreview() {
+        if (device == null || previewing) {
+            return;
+        }
+        if (session == null && !openSession()) {
+            return;
+        }
+        try {
+            session.setRepeatingRequest(newRequest().build(), null, callbackHandler);
+            previewing = true;
+        } catch (CameraAccessException | IllegalStateException e) {
+            SimpleLog.w(TAG, "Can not start preview", e);
+            return;
+        }
+        if (afMode == CameraMetadata.CONTROL_AF_MODE_AUTO) {
+            callbackHandler.post(autoFocusTrigger);
+        }
+    }
+
+    /**
+     * Creates the capture session once the preview surface has the size it was given.
+     *
+     * @return false if there is no session yet.
+     */
+    private boolean openSession() {
+        if (surfaceSize != null && (surfaceWidth != surfaceSize.width
+                || surfaceHeight != surfaceSize.height)) {
+            // Started again by the view once the surface is resized
+            SimpleLog.d(TAG, "Waiting for the preview surface to be resized");
+            return false;
+        }
+        try {
+            previewSurface = holder.getSurface();
+            session = createSession(device, Arrays.asList(previewSurface,
+                    frameStream.reader.getSurface()));
+            return true;
+        } catch (CameraAccessException | IOException | IllegalStateException e) {
+            SimpleLog.w(TAG, "Can not create the capture session", e);
+            // Past openDriver(), only the error callback tells the view the camera is unusable
+            notifyError();
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void setSurfaceSize(int width, int height) {
+        surfaceWidth = width;
+        surfaceHeight = height;
+    }
+
+    @Override
+    public synchronized void stopPreview() {
+        if (callbackHandler != null) {
+            callbackHandler.removeCallbacks(autoFocusTrigger);
+        }
+        if (session == null || !previewing) {
+            return;
+        }
+        previewing = false;
+        try {
+            session.stopRepeating();
+        } catch (CameraAccessException | IllegalStateException e) {
+            SimpleLog.w(TAG, "Can not stop preview", e);
+        }
+    }
+
+    /**
+     * Frames drawn into a {@code SurfaceView} are rotated to the display by the camera
+     * service. The degrees are worked out from the camera info of
+     * {@code android.hardware.Camera}, the frames to decode are turned from the
+     * characteristics of the open camera and the current rotation of the display instead.
+     */
+    @Override
+    public synchronized void setDisplayOrientation(int degrees) {
+        updateFrameRotation();
+    }
+
+    private void updateFrameRotation() {
+        int displayRotation;
+        switch (windowManager.getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_90:
+                displayRotation = 90;
+                break;
+            case Surface.ROTATION_180:
+                displayRotation = 180;
+                break;
+            case Surface.ROTATION_270:
+                displayRotation = 270;
+                break;
+            default:
+                displayRotation = 0;
+                break;
+        }
+        frameRotation = frameRotation(sensorOrientation, frontFacing, displayRotation);
+        framingRectInPreview = null;
+    }
+
+    /**
+     * @return the clockwise rotation which turns the images of a camera, unmirrored even when
+     * it faces the user, upright on a display rotated by {@code displayRotation} degrees.
+     */
+    static int frameRotation(int sensorOrientation, boolean frontFacing, int displayRotation) {
+        if (frontFacing) {
+            return (sensorOrientation + displayRotation) % 360;
+        }
+        return (sensorOrientation - displayRotation + 360) % 360;
+    }
+
+    @Override
+    public Point getPreviewSize() {
+        return cameraResolution;
+    }
+
+    @Override
+    public Rect getFramingRect() {
+        Rect rect = framingRect;
+        Point screenResolution = this.screenResolution;
+        if (rect == null && screenResolution != null) {
+            rect = CameraManager.framingRect(screenResolution);
+            framingRect = rect;
+        }
+        return rect;
+    }
+
+    @Override
+    public Rect getFramingRectInPreview() {
+        Rect rect = framingRectInPreview;
+        Point cameraResolution = this.cameraResolution;
+        Rect framingRect = getFramingRect();
+        if (rect == null && framingRect != null && cameraResolution != null) {
+            rect = CameraManager.framingRectInPreview(framingRect, cameraResolution,
+                    screenResolution, frameRotation);
+            framingRectInPreview = rect;
+        }
+        return rect;
+    }
+
+    @Override
+    public int getFrameRotation() {
+        return frameRotation;
+    }
+
+    @Override
+    public synchronized void setAutofocusInterval(long autofocusIntervalInMs) {
+        this.autofocusIntervalInMs = autofocusIntervalInMs;
+    }
+
+    @Override
+    public synchronized void forceAutoFocus() {
+        if (previewing) {
+            triggerAutoFocus();
+        }
+    }
+
+    private synchronized void triggerAutoFocus() {
+        if (session == null || afMode == CameraMetadata.CONTROL_AF_MODE_OFF) {
+            return;
+        }
+        try {
+            CaptureRequest.Builder builder = newRequest();
+            // Cancelling makes continuous focus search again, starting runs a single scan
+            builder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    afMode == CameraMetadata.CONTROL_AF_MODE_AUTO
+                            ? CameraMetadata.CONTROL_AF_TRIGGER_START
+                            : CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+            session.capture(builder.build(), null, callbackHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            SimpleLog.w(TAG, "Unexpected exception while focusing", e);
+        }
+    }
+
+    @Override
+    public synchronized void setTorchEnabled(boolean enabled) {
+        if (enabled == torchEnabled || (enabled && !torchSupported)) {
+            return;
+        }
+        torchEnabled = enabled;
+        if (previewing) {
+            try {
+                session.setRepeatingRequest(newRequest().build(), null, callbackHandler);
+            } catch (CameraAccessException | IllegalStateException e) {
+                SimpleLog.w(TAG, "Can not switch the torch", e);
+            }
+        }
+    }
+
+    /**
+     * Images are always recycled by the reader, nothing to do.
+     */
+    @Override
+    public void setPreviewBufferEnabled(boolean enabled) {
+    }
+
+    @Override
+    public synchronized void setPreviewSizePolicy(PreviewSizePolicy policy) {
+        this.previewSizePolicy = policy != null ? policy : new AspectRatioPreviewSizePolicy();
+    }
+
+    @Override
+    public synchronized PreviewSizePolicy getPreviewSizePolicy() {
+        return previewSizePolicy;
+    }
+
+    @Override
+    public synchronized void setPreviewCameraId(int cameraId) {
+        requestedCameraId = cameraId;
+    }
+
+    @Override
+    public synchronized int getPreviewCameraId() {
+        return requestedCameraId;
+    }
+
+    @Override
+    public void releaseFrame(PreviewFrame frame) {
+        ((FrameStream) frame.getOwner()).release(frame);
+    }
+
+    private void onImageAvailable(FrameStream stream) {
+        PreviewFrame frame = stream.acquire();
+        if (frame == null) {
+            return;
+        }
+        FrameCallback callback = frameCallback;
+        if (callback != null) {
+            callback.onPreviewFrame(frame);
+        } else {
+            stream.release(frame);
+        }
+    }
+
+    private void onDeviceLost(CameraDevice lost) {
+        // The camera was taken by another app or failed, the view closes the session, the
+        // frames and the surface along with it. A device lost while opening fails the open.
+        if (device == lost) {
+            notifyError();
+        }
+    }
+
+    private void notifyError() {
+        ErrorCallback callback = errorCallback;
+        if (callback != null) {
+            callback.onCameraError();
+        }
+    }
+
+    /**
+     * The images of one opening of the camera, and the frames they are handed over in.
+     */
+    private static final class FrameStream implements ImageReader.OnImageAvailableListener {
+
+        final ImageReader reader;
+        private final Camera2Manager camera;
+        private final PreviewFrame[] frames = new PreviewFrame[MAX_IMAGES];
+        // The image behind each frame, null while the frame is free
+        private final Image[] images = new Image[MAX_IMAGES];
+        private boolean closed;
+
+        FrameStream(Camera2Manager camera, int width, int height, Handler handler) {
+            this.camera = camera;
+            for (int i = 0; i < MAX_IMAGES; i++) {
+                frames[i] = new PreviewFrame(camera);
+            }
+            reader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+            reader.setOnImageAvailableListener(this, handler);
+        }
+
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            camera.onImageAvailable(this);
+        }
+
+        /**
+         * @return the newest image in a free frame, or null if there is none or every image is
+         * still in use.
+         */
+        synchronized PreviewFrame acquire() {
+            if (closed) {
+                return null;
+            }
+            int free = 0;
+            while (free < MAX_IMAGES && images[free] != null) {
+                free++;
+            }
+            if (free == MAX_IMAGES) {
+                return null;
+            }
+            Image image;
+            try {
+                image = reader.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                // Every image is being decoded, the camera drops frames meanwhile
+                return null;
+            }
+            if (image == null) {
+                return null;
+            }
+            Image.Plane luminance = image.getPlanes()[0];
+            images[free] = image;
+            frames[free].setPlane(luminance.getBuffer(), luminance.getRowStride(),
+                    luminance.getPixelStride(), image.getWidth(), image.getHeight(), this);
+            return frames[free];
+        }
+
+        synchronized void release(PreviewFrame frame) {
+            boolean inUse = false;
+            for (int i = 0; i < MAX_IMAGES; i++) {
+                if (frames[i] == frame && images[i] != null) {
+                    images[i].close();
+                    images[i] = null;
+                }
+                inUse |= images[i] != null;
+            }
+            if (closed && !inUse) {
+                reader.close();
+            }
+        }
+
+        /**
+         * Stops taking images, and closes the reader once the last image in use is released:
+         * closing it earlier would free the planes under the decoder.
+         */
+        synchronized void close() {
+            closed = true;
+            reader.setOnImageAvailableListener(null, null);
+            for (Image image : images) {
+                if (image != null) {
+                    return;
+                }
+            }
+            reader.close();
+        }
+    }
+
+    /**
+     * Waits on the camera thread for a callback made on the camera2 thread.
+     */
+    private abstract static class Completion<T> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private T result;
+        private boolean abandoned;
+
+        /**
+         * @return false if the waiting side gave up already.
+         */
+        final synchronized boolean complete(T result) {
+            this.result = result;
+            done.countDown();
+            return !abandoned;
+        }
+
+        final T await() throws IOException {
+            boolean completed;
+            try {
+                completed = done.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed = false;
+            }
+            synchronized (this) {
+                if (!completed || result == null) {
+                    abandoned = true;
+                    throw new IOException(failure());
+                }
+                return result;
+            }
+        }
+
+        abstract String failure();
+    }
+
+    private final class OpenCallback extends CameraDevice.StateCallback {
+
+        private final Completion<CameraDevice> completion = new Completion<CameraDevice>() {
+            @Override
+            String failure() {
+                return "Camera did not open";
+            }
+        };
+
+        CameraDevice await() throws IOException {
+            return completion.await();
+        }
+
+        @Override
+        public void onOpened(CameraDevice camera) {
+            if (!completion.complete(camera)) {
+                camera.close();
+            }
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice camera) {
+            SimpleLog.w(TAG, "Camera disconnected");
+            camera.close();
+            onDeviceLost(camera);
+            completion.complete(null);
+        }
+
+        @Override
+        public void onError(CameraDevice camera, int error) {
+            SimpleLog.w(TAG, "Camera error " + error);
+            camera.close();
+            onDeviceLost(camera);
+            completion.complete(null);
+        }
+    }
+
+    private static final class SessionCallback extends CameraCaptureSession.StateCallback {
+
+        private final Completion<CameraCaptureSession> completion =
+                new Completion<CameraCaptureSession>() {
+                    @Override
+                    String failure() {
+                        return "Camera rejected the preview configuration";
+                    }
+                };
+
+        CameraCaptureSession await() throws IOException {
+            return completion.await();
+        }
+
+        @Override
+        public void onConfigured(CameraCaptureSession session) {
+            if (!completion.complete(session)) {
+                session.close();
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(CameraCaptureSession session) {
+            completion.complete(null);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Remembers the camera configuration negotiated on a device, so that later opens can apply it
+ * straight away instead of sorting preview sizes and probing modes again.
+ * <p>
+ * Entries are keyed by camera id, device model and view size, and kept in a small properties
+ * file. The file carries a version: a file written by another version is ignored as a whole
+ * and rewritten on the next {@link #put(String, Entry)}. Read and write failures are only
+ * logged, the cache is an optimization.
+ */
+final class CameraConfigCache {
+
+    private static final String TAG = CameraConfigCache.class.getSimpleName();
+
+    /**
+     * Bump when the meaning of a stored value changes.
+     */
+    static final int VERSION = 1;
+
+    private static final String VERSION_KEY = "version";
+    private static final String PREVIEW_SIZE = ".previewSize";
+    private static final String FOCUS_MODE = ".focusMode";
+    private static final String SAFE_MODE = ".safeMode";
+    private static final String TORCH_SUPPORTED = ".torchSupported";
+
+    /**
+     * What was negotiated with a camera.
+     */
+    static final class Entry {
+
+        final int previewWidth;
+        final int previewHeight;
+        // null when no focus mode was set
+        final String focusMode;
+        // true when the camera only accepted the safe-mode parameters
+        final boolean safeMode;
+        final boolean torchSupported;
+
+        Entry(int previewWidth, int previewHeight, String focusMode, boolean safeMode,
+              boolean torchSupported) {
+            this.previewWidth = previewWidth;
+            this.previewHeight = previewHeight;
+            this.focusMode = focusMode;
+            this.safeMode = safeMode;
+            this.torchSupported = torchSupported;
+        }
+    }
+
+    private final File file;
+    private Properties properties;
+
+    CameraConfigCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the key of the configuration of a camera on this device model, for a view of
+     * the given size.
+     */
+    static String key(int cameraId, String model, int width, int height) {
+        return cameraId + "/" + model + "/" + width + "x" + height;
+    }
+
+    /**
+     * @return the entry stored for the key, or null if there is none or it cannot be read.
+     */
+    synchronized Entry get(String key) {
+        Properties properties = load();
+        String previewSize = properties.getProperty(key + PREVIEW_SIZE);
+        if (previewSize == null) {
+            return null;
+        }
+        try {
+            int separator = previewSize.indexOf('x');
+            return new Entry(Integer.parseInt(previewSize.substring(0, separator)),
+                    Integer.parseInt(previewSize.substring(separator + 1)),
+                    properties.getProperty(key + FOCUS_MODE),
+                    Boolean.parseBoolean(properties.getProperty(key + SAFE_MODE)),
+                    Boolean.parseBoolean(properties.getProperty(key + TORCH_SUPPORTED)));
+        } catch (RuntimeException e) {
+            SimpleLog.w(TAG, "Malformed camera configuration for " + key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores an entry, replacing the one stored for the key if any.
+     */
+    synchronized void put(String key, Entry entry) {
+        Properties properties = load();
+        properties.setProperty(key + PREVIEW_SIZE, entry.previewWidth + "x" + entry.previewHeight);
+        if (entry.focusMode != null) {
+            properties.setProperty(key + FOCUS_MODE, entry.focusMode);
+        } else {
+            properties.remove(key + FOCUS_MODE);
+        }
+        properties.setProperty(key + SAFE_MODE, Boolean.toString(entry.safeMode));
+        properties.setProperty(key + TORCH_SUPPORTED, Boolean.toString(entry.torchSupported));
+        save(properties);
+    }
+
+    /**
+     * Forgets the entry stored for the key, typically because the camera rejected it.
+     */
+    synchronized void remove(String key) {
+        Properties properties = load();
+        if (properties.remove(key + PREVIEW_SIZE) == null) {
+            return;
+        }
+        properties.remove(key + FOCUS_MODE);
+        properties.remove(key + SAFE_MODE);
+        properties.remove(key + TORCH_SUPPORTED);
+        save(properties);
+    }
+
+    private Properties load() {
+        if (properties != null) {
+            return properties;
+        }
+        properties = new Properties();
+        if (!file.exists()) {
+            return properties;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            SimpleLog.w(TAG, "Can not read camera configurations", e);
+            properties.clear();
+        } finally {
+            close(in);
+        }
+        if (!Integer.toString(VERSION).equals(properties.getProperty(VERSION_KEY))) {
+            SimpleLog.i(TAG, "Ignoring camera configurations of another version");
+            properties.clear();
+        }
+        return properties;
+    }
+
+    private void save(Properties properties) {
+        properties.setProperty(VERSION_KEY, Integer.toString(VERSION));
+        // Write aside and rename, so a crash never leaves half a file behind
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            properties.store(out, null);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            SimpleLog.w(TAG, "Can not write camera configurations", e);
+            temp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+}
@@ -19,17 +19,15 @@ package io.github.putme2yourheart.qrcodereaderview;
 import android.content.Context;
 import android.graphics.Point;
 import android.hardware.Camera;
-import android.util.Log;
+import android.os.Build;
 import android.view.Display;
 import android.view.Surface;
 import android.view.WindowManager;
 
-
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import io.github.putme2yourheart.qrcodereaderview.camera.open.CameraFacing;
@@ -43,14 +41,16 @@ final class CameraConfigurationManager {
 
     private static final String TAG = "CameraConfiguration";
 
-    // This is bigger than the size of a small screen, which is still supported. The routine
-    // below will still select the default (presumably 320x240) size for these. This prevents
-    // accidental selection of very low resolution on some devices.
-    private static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
-    private static final int MAX_PREVIEW_PIXELS = 1280 * 720;
     private static final float MAX_EXPOSURE_COMPENSATION = 1.5f;
     private static final float MIN_EXPOSURE_COMPENSATION = 0.0f;
+    private static final String CONFIG_CACHE_FILE = "qrcodereaderview-camera.properties";
     private final Context context;
+    private final CameraConfigCache configCache;
+    private String configKey;
+    // What was negotiated with the camera before, null until then or once the camera rejected it
+    private CameraConfigCache.Entry cachedConfig;
+    private boolean torchSupported = true;
+    private PreviewSizePolicy previewSizePolicy = new AspectRatioPreviewSizePolicy();
 
     private Point resolution;
     private Point cameraResolution;
@@ -61,10 +61,10 @@ final class CameraConfigurationManager {
 
     CameraConfigurationManager(Context context) {
         this.context = context;
+        this.configCache = new CameraConfigCache(new File(context.getCacheDir(), CONFIG_CACHE_FILE));
     }
 
     void initFromCameraParameters(OpenCamera camera, int width, int height) {
-        Camera.Parameters parameters = camera.getCamera().getParameters();
         WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
 
@@ -115,9 +115,21 @@ final class CameraConfigurationManager {
 
         resolution = new Point(width, height);
         SimpleLog.i(TAG, "Screen resolution in current orientation: " + resolution);
-        cameraResolution = findBestPreviewSizeValue(parameters, resolution);
-        SimpleLog.i(TAG, "Camera resolution: " + cameraResolution);
-        bestPreviewSize = findBestPreviewSizeValue(parameters, resolution);
+        String policyKey = previewSizePolicy.getCacheKey();
+        configKey = policyKey == null ? null
+                : CameraConfigCache.key(camera.getIndex(), Build.MODEL, width, height)
+                + "/" + policyKey;
+        cachedConfig = configKey != null ? configCache.get(configKey) : null;
+        if (cachedConfig != null) {
+            // Negotiated on an earlier launch, no need to go through the supported sizes
+            cameraResolution = new Point(cachedConfig.previewWidth, cachedConfig.previewHeight);
+            SimpleLog.i(TAG, "Cached camera resolution: " + cameraResolution);
+        } else {
+            cameraResolution = findBestPreviewSizeValue(camera.getCamera().getParameters(),
+                    resolution);
+            SimpleLog.i(TAG, "Camera resolution: " + cameraResolution);
+        }
+        bestPreviewSize = new Point(cameraResolution);
         SimpleLog.i(TAG, "Best available preview size: " + bestPreviewSize);
 
         boolean isScreenPortrait = resolution.x < resolution.y;
@@ -131,6 +143,43 @@ final class CameraConfigurationManager {
         SimpleLog.i(TAG, "Preview size on screen: " + previewSizeOnScreen);
     }
 
+    /**
+     * Applies the configuration negotiated with this camera on an earlier launch, without
+     * probing the camera again.
+     *
+     * @return false if there is none, or if the camera rejected it. The cached configuration
+     * is then forgotten and has to be negotiated again with
+     * {@link #setDesiredCameraParameters(OpenCamera, boolean)}.
+     */
+    boolean applyCachedParameters(OpenCamera camera) {
+        CameraConfigCache.Entry entry = cachedConfig;
+        if (entry == null) {
+            return false;
+        }
+
+        Camera theCamera = camera.getCamera();
+        try {
+            Camera.Parameters parameters = theCamera.getParameters();
+            if (entry.focusMode != null) {
+                parameters.setFocusMode(entry.focusMode);
+            }
+            parameters.setPreviewSize(entry.previewWidth, entry.previewHeight);
+            theCamera.setParameters(parameters);
+        } catch (RuntimeException re) {
+            SimpleLog.w(TAG, "Camera rejected cached parameters, negotiating them again", re);
+            cachedConfig = null;
+            configCache.remove(configKey);
+            cameraResolution = findBestPreviewSizeValue(theCamera.getParameters(), resolution);
+            bestPreviewSize = new Point(cameraResolution);
+            return false;
+        }
+        theCamera.setDisplayOrientation(cwRotationFromDisplayToCamera);
+        torchSupported = entry.torchSupported;
+        SimpleLog.i(TAG, "Applied cached camera parameters"
+                + (entry.safeMode ? " in safe mode" : ""));
+        return true;
+    }
+
     void setDesiredCameraParameters(OpenCamera camera, boolean safeMode) {
 
         Camera theCamera = camera.getCamera();
@@ -162,6 +211,8 @@ final class CameraConfigurationManager {
         parameters.setPreviewSize(bestPreviewSize.x, bestPreviewSize.y);
 
         theCamera.setParameters(parameters);
+        torchSupported = findSettableValue("flash mode", parameters.getSupportedFlashModes(),
+                Camera.Parameters.FLASH_MODE_TORCH, Camera.Parameters.FLASH_MODE_ON) != null;
 
         theCamera.setDisplayOrientation(cwRotationFromDisplayToCamera);
 
@@ -180,6 +231,21 @@ final class CameraConfigurationManager {
             bestPreviewSize.x = afterSize.width;
             bestPreviewSize.y = afterSize.height;
         }
+
+        // Accepted, later launches can apply it straight away
+        cachedConfig = new CameraConfigCache.Entry(bestPreviewSize.x, bestPreviewSize.y,
+                focusMode, safeMode, torchSupported);
+        if (configKey != null) {
+            configCache.put(configKey, cachedConfig);
+        }
+    }
+
+    void setPreviewSizePolicy(PreviewSizePolicy policy) {
+        this.previewSizePolicy = policy != null ? policy : new AspectRatioPreviewSizePolicy();
+    }
+
+    PreviewSizePolicy getPreviewSizePolicy() {
+        return previewSizePolicy;
     }
 
     Point getCameraResolution() {
@@ -190,83 +256,42 @@ final class CameraConfigurationManager {
         return resolution;
     }
 
+    /**
+     * @return false if the camera is known to have no torch.
+     */
+    boolean isTorchSupported() {
+        return torchSupported;
+    }
+
     // All references to Torch are removed from here, methods, variables...
 
     public Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
 
         List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
-        if (rawSupportedSizes == null) {
+        if (rawSupportedSizes == null || rawSupportedSizes.isEmpty()) {
             SimpleLog.w(TAG, "Device returned no supported preview sizes; using default");
             Camera.Size defaultSize = parameters.getPreviewSize();
             return new Point(defaultSize.width, defaultSize.height);
         }
 
-        // Sort by size, descending
-        List<Camera.Size> supportedPreviewSizes = new ArrayList<Camera.Size>(rawSupportedSizes);
-        Collections.sort(supportedPreviewSizes, new Comparator<Camera.Size>() {
-            @Override
-            public int compare(Camera.Size a, Camera.Size b) {
-                int aPixels = a.height * a.width;
-                int bPixels = b.height * b.width;
-                if (bPixels < aPixels) {
-                    return -1;
-                }
-                if (bPixels > aPixels) {
-                    return 1;
-                }
-                return 0;
-            }
-        });
-
-        if (Log.isLoggable(TAG, Log.INFO)) {
-            StringBuilder previewSizesString = new StringBuilder();
-            for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
-                previewSizesString.append(supportedPreviewSize.width)
-                        .append('x')
-                        .append(supportedPreviewSize.height)
-                        .append(' ');
-            }
-            SimpleLog.i(TAG, "Supported preview sizes: " + previewSizesString);
-        }
-
-        Point bestSize = null;
-        float screenAspectRatio = (float) screenResolution.x / (float) screenResolution.y;
-
-        float diff = Float.POSITIVE_INFINITY;
-        for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
-            int realWidth = supportedPreviewSize.width;
-            int realHeight = supportedPreviewSize.height;
-            int pixels = realWidth * realHeight;
-            if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
-                continue;
-            }
-
-            // This code is modified since We're using portrait mode
-            boolean isCandidateLandscape = realWidth > realHeight;
-            int maybeFlippedWidth = isCandidateLandscape ? realHeight : realWidth;
-            int maybeFlippedHeight = isCandidateLandscape ? realWidth : realHeight;
-
-            if (maybeFlippedWidth == screenResolution.x && maybeFlippedHeight == screenResolution.y) {
-                Point exactPoint = new Point(realWidth, realHeight);
-                SimpleLog.i(TAG, "Found preview size exactly matching screen size: " + exactPoint);
-                return exactPoint;
-            }
-            float aspectRatio = (float) maybeFlippedWidth / (float) maybeFlippedHeight;
-            float newDiff = Math.abs(aspectRatio - screenAspectRatio);
-            if (newDiff < diff) {
-                bestSize = new Point(realWidth, realHeight);
-                diff = newDiff;
-            }
+        List<PreviewSize> supportedPreviewSizes = new ArrayList<>(rawSupportedSizes.size());
+        for (Camera.Size size : rawSupportedSizes) {
+            supportedPreviewSizes.add(new PreviewSize(size.width, size.height));
         }
+        SimpleLog.i(TAG, "Supported preview sizes: " + supportedPreviewSizes);
 
+        PreviewSize bestSize = previewSizePolicy.select(supportedPreviewSizes,
+                new PreviewSize(screenResolution.x, screenResolution.y));
         if (bestSize == null) {
             Camera.Size defaultSize = parameters.getPreviewSize();
-            bestSize = new Point(defaultSize.width, defaultSize.height);
-            SimpleLog.i(TAG, "No suitable preview sizes, using default: " + bestSize);
+            SimpleLog.i(TAG, "No suitable preview sizes, using default: "
+                    + defaultSize.width + 'x' + defaultSize.height);
+            return new Point(defaultSize.width, defaultSize.height);
         }
 
-        SimpleLog.i(TAG, "Found best approximate preview size: " + bestSize);
-        return bestSize;
+        SimpleLog.i(TAG, "Found best approximate preview size with " + previewSizePolicy
+                + ": " + bestSize);
+        return new Point(bestSize.width, bestSize.height);
     }
 
     private static String findSettableValue(String name, Collection<String> supportedValues,
@@ -17,6 +17,7 @@
 package io.github.putme2yourheart.qrcodereaderview;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
@@ -26,30 +27,71 @@ import android.view.SurfaceHolder;
 import com.google.zxing.PlanarYUVLuminanceSource;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import io.github.putme2yourheart.qrcodereaderview.camera.open.OpenCamera;
 import io.github.putme2yourheart.qrcodereaderview.camera.open.OpenCameraInterface;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedPlaneLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
 
 /**
  * This object wraps the Camera service object and expects to be the only one talking to it. The
  * implementation encapsulates the steps needed to take preview-sized images, which are used for
  * both preview and decoding.
+ * <p>
+ * This is the {@link ScanCamera} of devices older than Android 5.0, and of any device unless
+ * {@link Camera2Manager} is asked for.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-public final class CameraManager {
+public final class CameraManager implements ScanCamera {
 
     private static final String TAG = CameraManager.class.getSimpleName();
 
+    // One buffer being decoded, one waiting for the decoder and one being filled by the camera
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+
+    // Side of the framing rect, in percent of the short side of the view
+    static final int FRAMING_RECT_PERCENT = 70;
+
+    // Preview frames come in sensor orientation, the framing rect is in portrait orientation
+    private static final int FRAME_ROTATION = 90;
+
     private static CameraManager sCameraManager = null;
 
     //private final Context context;
     private static CameraConfigurationManager configManager;
-    private OpenCamera openCamera;
+    // Read by the main thread while the camera thread opens and closes the camera
+    private volatile OpenCamera openCamera;
     private AutoFocusManager autoFocusManager;
     private boolean initialized;
     private boolean previewing;
     private Camera.PreviewCallback previewCallback;
+    private FrameCallback frameCallback;
+    private final Camera.PreviewCallback frameAdapter = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            deliverFrame(data);
+        }
+    };
+    private volatile ErrorCallback errorCallback;
+    private final Camera.ErrorCallback errorAdapter = new Camera.ErrorCallback() {
+        @Override
+        public void onError(int error, Camera camera) {
+            SimpleLog.w(TAG, "Camera error " + error);
+            ErrorCallback callback = errorCallback;
+            if (callback != null) {
+                callback.onCameraError();
+            }
+        }
+    };
+    private boolean previewBufferEnabled = true;
+    // Guards the buffer pool on its own, buffers are given back from the decode threads while
+    // the camera thread may hold this object's lock for the whole time the camera opens
+    private final Object bufferLock = new Object();
+    private byte[][] previewBuffers;
+    // The frame handed to the frame callback for each preview buffer
+    private PreviewFrame[] previewFrames;
     private int displayOrientation = 0;
 
     private Rect framingRectInPreview;
@@ -78,14 +120,139 @@ public final class CameraManager {
         return sCameraManager;
     }
 
-    public void setPreviewCallback(Camera.PreviewCallback previewCallback) {
+    public synchronized void setPreviewCallback(Camera.PreviewCallback previewCallback) {
         this.previewCallback = previewCallback;
 
         if (isOpen()) {
-            openCamera.getCamera().setPreviewCallback(previewCallback);
+            installPreviewCallback(openCamera.getCamera());
+        }
+    }
+
+    /**
+     * Set the callback preview frames are handed to as {@link PreviewFrame}s, in place of the
+     * one set with {@link #setPreviewCallback(Camera.PreviewCallback)}.
+     */
+    @Override
+    public synchronized void setFrameCallback(FrameCallback frameCallback) {
+        this.frameCallback = frameCallback;
+        setPreviewCallback(frameCallback != null ? frameAdapter : null);
+    }
+
+    @Override
+    public void setErrorCallback(ErrorCallback callback) {
+        this.errorCallback = callback;
+    }
+
+    private void deliverFrame(byte[] data) {
+        FrameCallback callback = frameCallback;
+        Point cameraResolution = configManager.getCameraResolution();
+        if (callback == null || cameraResolution == null) {
+            releasePreviewBuffer(data);
+            return;
+        }
+        PreviewFrame frame = null;
+        synchronized (bufferLock) {
+            byte[][] buffers = previewBuffers;
+            for (int i = 0; buffers != null && i < buffers.length; i++) {
+                if (buffers[i] == data) {
+                    frame = previewFrames[i];
+                    break;
+                }
+            }
+        }
+        if (frame == null) {
+            // Not recycling buffers, every frame is a new array anyway
+            frame = new PreviewFrame(this);
+        }
+        frame.setData(data, cameraResolution.x, cameraResolution.y);
+        callback.onPreviewFrame(frame);
+    }
+
+    @Override
+    public void releaseFrame(PreviewFrame frame) {
+        releasePreviewBuffer(frame.getData());
+    }
+
+    /**
+     * Enable/disable delivering preview frames into a small pool of recycled buffers,
+     * through {@link Camera#setPreviewCallbackWithBuffer(Camera.PreviewCallback)}.
+     * When enabled, every frame handed to the preview callback must be given back with
+     * {@link #releasePreviewBuffer(byte[])} once it is not needed anymore.
+     * default value is true
+     *
+     * @param enabled buffer pool enabled/disabled.
+     */
+    @Override
+    public synchronized void setPreviewBufferEnabled(boolean enabled) {
+        this.previewBufferEnabled = enabled;
+
+        if (isOpen()) {
+            installPreviewCallback(openCamera.getCamera());
+        }
+    }
+
+    /**
+     * Gives a preview frame back to the camera so it can be filled again. Frames which do not
+     * belong to the current buffer pool are ignored, so this is always safe to call.
+     *
+     * @param buffer A preview frame received by the preview callback.
+     */
+    public void releasePreviewBuffer(byte[] buffer) {
+        synchronized (bufferLock) {
+            byte[][] buffers = previewBuffers;
+            OpenCamera theCamera = openCamera;
+            if (buffer == null || buffers == null || theCamera == null) {
+                return;
+            }
+            for (byte[] previewBuffer : buffers) {
+                if (previewBuffer == buffer) {
+                    theCamera.getCamera().addCallbackBuffer(buffer);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void installPreviewCallback(Camera camera) {
+        synchronized (bufferLock) {
+            installPreviewBuffers(camera);
+        }
+    }
+
+    private void installPreviewBuffers(Camera camera) {
+        // This also drops any buffer queued so far, so that each buffer is queued only once
+        camera.setPreviewCallback(null);
+        previewBuffers = null;
+        previewFrames = null;
+
+        Point cameraResolution = configManager.getCameraResolution();
+        if (previewCallback == null || !previewBufferEnabled || cameraResolution == null) {
+            camera.setPreviewCallback(previewCallback);
+            return;
+        }
+
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(camera.getParameters().getPreviewFormat());
+        if (bitsPerPixel <= 0) {
+            SimpleLog.w(TAG, "Unknown preview format, not using preview buffers");
+            camera.setPreviewCallback(previewCallback);
+            return;
         }
+
+        // Buffers of a previous pool are dropped by releasePreviewBuffer
+        int bufferSize = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+        byte[][] buffers = new byte[PREVIEW_BUFFER_COUNT][];
+        PreviewFrame[] frames = new PreviewFrame[PREVIEW_BUFFER_COUNT];
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new byte[bufferSize];
+            frames[i] = new PreviewFrame(this);
+            camera.addCallbackBuffer(buffers[i]);
+        }
+        previewBuffers = buffers;
+        previewFrames = frames;
     }
 
+    @Override
     public void setDisplayOrientation(int degrees) {
         this.displayOrientation = degrees;
 
@@ -94,6 +261,7 @@ public final class CameraManager {
         }
     }
 
+    @Override
     public void setAutofocusInterval(long autofocusIntervalInMs) {
         this.autofocusIntervalInMs = autofocusIntervalInMs;
         if (autoFocusManager != null) {
@@ -101,12 +269,14 @@ public final class CameraManager {
         }
     }
 
+    @Override
     public void forceAutoFocus() {
         if (autoFocusManager != null) {
             autoFocusManager.start();
         }
     }
 
+    @Override
     public Point getPreviewSize() {
         return configManager.getCameraResolution();
     }
@@ -117,6 +287,7 @@ public final class CameraManager {
      * @param holder The surface object which the camera will draw preview frames into.
      * @param height @throws IOException Indicates the camera driver failed to open.
      */
+    @Override
     public synchronized void openDriver(SurfaceHolder holder, int width, int height)
             throws IOException {
         OpenCamera theCamera = openCamera;
@@ -126,16 +297,27 @@ public final class CameraManager {
                 throw new IOException("Camera.open() failed to return object from driver");
             }
             openCamera = theCamera;
+            theCamera.getCamera().setErrorCallback(errorAdapter);
         }
         theCamera.getCamera().setPreviewDisplay(holder);
-        theCamera.getCamera().setPreviewCallback(previewCallback);
         theCamera.getCamera().setDisplayOrientation(displayOrientation);
 
         if (!initialized) {
             initialized = true;
             configManager.initFromCameraParameters(theCamera, width, height);
+            // The preview size may have changed
+            framingRectInPreview = null;
+        }
+
+        Camera cameraObject = theCamera.getCamera();
+        if (!configManager.applyCachedParameters(theCamera)) {
+            negotiateParameters(theCamera);
         }
+        // Preview buffers are sized from the negotiated preview size, so install it last
+        installPreviewCallback(cameraObject);
+    }
 
+    private void negotiateParameters(OpenCamera theCamera) {
         Camera cameraObject = theCamera.getCamera();
         Camera.Parameters parameters = cameraObject.getParameters();
         String parametersFlattened =
@@ -159,7 +341,23 @@ public final class CameraManager {
                 }
             }
         }
-        cameraObject.setPreviewDisplay(holder);
+    }
+
+    /**
+     * Sets the policy picking the preview size. The preview size is negotiated again the next
+     * time the camera is opened.
+     *
+     * @param policy the policy, null for {@link AspectRatioPreviewSizePolicy}.
+     */
+    @Override
+    public synchronized void setPreviewSizePolicy(PreviewSizePolicy policy) {
+        configManager.setPreviewSizePolicy(policy);
+        initialized = false;
+    }
+
+    @Override
+    public PreviewSizePolicy getPreviewSizePolicy() {
+        return configManager.getPreviewSizePolicy();
     }
 
     /**
@@ -168,10 +366,12 @@ public final class CameraManager {
      *
      * @param cameraId camera ID of the camera to use. A negative value means "no preference".
      */
+    @Override
     public synchronized void setPreviewCameraId(int cameraId) {
         requestedCameraId = cameraId;
     }
 
+    @Override
     public int getPreviewCameraId() {
         return requestedCameraId;
     }
@@ -179,9 +379,11 @@ public final class CameraManager {
     /**
      * @param enabled if {@code true}, light should be turned on if currently off. And vice versa.
      */
+    @Override
     public synchronized void setTorchEnabled(boolean enabled) {
         OpenCamera theCamera = openCamera;
-        if (theCamera != null && enabled != configManager.getTorchState(theCamera.getCamera())) {
+        if (theCamera != null && configManager.isTorchSupported()
+                && enabled != configManager.getTorchState(theCamera.getCamera())) {
             boolean wasAutoFocusManager = autoFocusManager != null;
             if (wasAutoFocusManager) {
                 autoFocusManager.stop();
@@ -195,6 +397,7 @@ public final class CameraManager {
         }
     }
 
+    @Override
     public synchronized boolean isOpen() {
         return openCamera != null && openCamera.getCamera() != null;
     }
@@ -202,8 +405,14 @@ public final class CameraManager {
     /**
      * Closes the camera driver if still in use.
      */
+    @Override
     public synchronized void closeDriver() {
         if (isOpen()) {
+            // Buffers given back from now on are dropped instead of reaching a released camera
+            synchronized (bufferLock) {
+                previewBuffers = null;
+                previewFrames = null;
+            }
             openCamera.getCamera().release();
             openCamera = null;
             // Make sure to clear these each time we close the camera, so that any scanning rect
@@ -216,6 +425,7 @@ public final class CameraManager {
     /**
      * Asks the camera hardware to begin drawing preview frames to the screen.
      */
+    @Override
     public synchronized void startPreview() {
         OpenCamera theCamera = openCamera;
         if (theCamera != null && !previewing) {
@@ -226,9 +436,17 @@ public final class CameraManager {
         }
     }
 
+    /**
+     * The camera draws into a surface of any size, nothing to do.
+     */
+    @Override
+    public void setSurfaceSize(int width, int height) {
+    }
+
     /**
      * Tells the camera to stop drawing preview frames.
      */
+    @Override
     public synchronized void stopPreview() {
         if (autoFocusManager != null) {
             autoFocusManager.stop();
@@ -263,6 +481,45 @@ public final class CameraManager {
                 scanRect.width(), scanRect.height(), false);
     }
 
+    /**
+     * Builds a LuminanceSource which rotates the preview frame while reading it, so that only
+     * the pixels inside the scan rectangle are touched.
+     *
+     * @param data       A preview frame.
+     * @param dataWidth  The width of the preview frame.
+     * @param dataHeight The height of the preview frame.
+     * @param rotation   Clockwise rotation applied to the frame: 0, 90, 180 or 270.
+     * @param scanRect   The scan rectangle, in rotated preview coordinates.
+     * @return A RotatedYUVLuminanceSource instance.
+     */
+    public RotatedYUVLuminanceSource buildLuminanceSource(byte[] data, int dataWidth, int dataHeight,
+                                                          int rotation, Rect scanRect) {
+        return new RotatedYUVLuminanceSource(data, dataWidth, dataHeight, rotation, scanRect.left,
+                scanRect.top, scanRect.width(), scanRect.height());
+    }
+
+    /**
+     * Same as {@link #buildLuminanceSource(byte[], int, int, int, Rect)}, for a luminance plane
+     * read in place through its strides, such as the Y plane of an {@code android.media.Image}.
+     *
+     * @param plane       A luminance plane.
+     * @param dataWidth   The width of the preview frame.
+     * @param dataHeight  The height of the preview frame.
+     * @param rowStride   The distance in bytes between the starts of two rows.
+     * @param pixelStride The distance in bytes between two pixels of a row.
+     * @param rotation    Clockwise rotation applied to the frame: 0, 90, 180 or 270.
+     * @param scanRect    The scan rectangle, in rotated preview coordinates.
+     * @return A RotatedPlaneLuminanceSource instance.
+     */
+    public RotatedPlaneLuminanceSource buildLuminanceSource(ByteBuffer plane, int dataWidth,
+                                                            int dataHeight, int rowStride,
+                                                            int pixelStride, int rotation,
+                                                            Rect scanRect) {
+        return new RotatedPlaneLuminanceSource(plane, dataWidth, dataHeight, rowStride,
+                pixelStride, rotation, scanRect.left, scanRect.top, scanRect.width(),
+                scanRect.height());
+    }
+
     /**
      * Calculates the framing rect which the UI should draw to show the user where to place the
      * barcode. This target helps with alignment as well as forces the user to hold the device
@@ -270,49 +527,74 @@ public final class CameraManager {
      *
      * @return The rectangle to draw on screen in window coordinates.
      */
+    @Override
     public Rect getFramingRect() {
         Point screenResolution = configManager.getScreenResolution();
         if (screenResolution == null) {
             return null;
         }
         if (framingRect == null) {
-            if (openCamera.getCamera() == null) {
+            OpenCamera theCamera = openCamera;
+            if (theCamera == null || theCamera.getCamera() == null) {
                 return null;
             }
-
-            //修改之后
-            int width = screenResolution.x * 7 / 10;
-            int height = screenResolution.y * 7 / 10;
-
-            if (height >= width) { //竖屏
-                height = width;
-            } else { //黑屏
-                width = height;
-            }
-
-            int leftOffset = (screenResolution.x - width) / 2;
-            int topOffset = (screenResolution.y - height) / 2;
-            framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+            framingRect = framingRect(screenResolution);
         }
         return framingRect;
     }
 
+    /**
+     * @return a square of {@link #FRAMING_RECT_PERCENT} of the short side of the view, in its
+     * center.
+     */
+    static Rect framingRect(Point screenResolution) {
+        //修改之后
+        int width = screenResolution.x * FRAMING_RECT_PERCENT / 100;
+        int height = screenResolution.y * FRAMING_RECT_PERCENT / 100;
+
+        if (height >= width) { //竖屏
+            height = width;
+        } else { //黑屏
+            width = height;
+        }
+
+        int leftOffset = (screenResolution.x - width) / 2;
+        int topOffset = (screenResolution.y - height) / 2;
+        return new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+    }
+
+    @Override
     public Rect getFramingRectInPreview() {
         if (framingRectInPreview == null) {
-            Rect rect = new Rect(getFramingRect());
-            Point cameraResolution = configManager.getCameraResolution();
-            Point screenResolution = configManager.getScreenResolution();
-            //modify here
-            //      rect.left = rect.left * cameraResolution.x / screenResolution.x;
-            //      rect.right = rect.right * cameraResolution.x / screenResolution.x;
-            //      rect.top = rect.top * cameraResolution.y / screenResolution.y;
-            //      rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
-            rect.left = rect.left * cameraResolution.y / screenResolution.x;
-            rect.right = rect.right * cameraResolution.y / screenResolution.x;
-            rect.top = rect.top * cameraResolution.x / screenResolution.y;
-            rect.bottom = rect.bottom * cameraResolution.x / screenResolution.y;
-            framingRectInPreview = rect;
+            Rect rect = getFramingRect();
+            if (rect == null) {
+                return null;
+            }
+            framingRectInPreview = framingRectInPreview(rect, configManager.getCameraResolution(),
+                    configManager.getScreenResolution(), FRAME_ROTATION);
         }
         return framingRectInPreview;
     }
+
+    @Override
+    public int getFrameRotation() {
+        return FRAME_ROTATION;
+    }
+
+    /**
+     * Maps a framing rect from the view to a preview frame in sensor orientation, turned by
+     * {@code rotation} degrees to match the view.
+     */
+    static Rect framingRectInPreview(Rect framingRect, Point cameraResolution,
+                                     Point screenResolution, int rotation) {
+        boolean turned = rotation == 90 || rotation == 270;
+        int previewWidth = turned ? cameraResolution.y : cameraResolution.x;
+        int previewHeight = turned ? cameraResolution.x : cameraResolution.y;
+        Rect rect = new Rect(framingRect);
+        rect.left = rect.left * previewWidth / screenResolution.x;
+        rect.right = rect.right * previewWidth / screenResolution.x;
+        rect.top = rect.top * previewHeight / screenResolution.y;
+        rect.bottom = rect.bottom * previewHeight / screenResolution.y;
+        return rect;
+    }
 }
@@ -0,0 +1,91 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The thread every call to the camera is made from: opening and configuring it can take the
+ * better part of a second, which must not be spent on the main thread. A camera opened here
+ * also delivers its preview frames and auto focus callbacks on this thread.
+ * <p>
+ * Tasks run one at a time, in the order they were posted. The thread is started by the first
+ * task and ends with {@link #quit()}, a later task starts a new one.
+ */
+final class CameraThread {
+
+    private static final String THREAD_NAME = "QRCodeCamera";
+
+    private HandlerThread thread;
+    private Handler handler;
+
+    /**
+     * Runs a task on the camera thread, after every task posted before it.
+     */
+    synchronized void post(Runnable task) {
+        if (thread == null) {
+            thread = new HandlerThread(THREAD_NAME);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        handler.post(task);
+    }
+
+    /**
+     * Runs a task on the camera thread, after every task posted before it, and waits until it
+     * is done. Runs it right away when called from the camera thread.
+     */
+    void runAndWait(final Runnable task) {
+        synchronized (this) {
+            if (thread != null && Looper.myLooper() == thread.getLooper()) {
+                task.run();
+                return;
+            }
+        }
+
+        final CountDownLatch done = new CountDownLatch(1);
+        post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ends the camera thread once the tasks posted so far are done.
+     */
+    synchronized void quit() {
+        if (thread == null) {
+            return;
+        }
+        final HandlerThread ending = thread;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                ending.quit();
+            }
+        });
+        thread = null;
+        handler = null;
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import java.util.List;
+
+/**
+ * A {@link PreviewSizePolicy} which picks the smallest preview size still showing the expected
+ * code with enough pixels per module, once the framing rect is cropped out of it. Only the
+ * framing rect is decoded, so anything larger only costs decode time, while anything smaller
+ * makes the modules too small to binarize.
+ * <p>
+ * The expected code is {@code modules} modules across and fills {@code codeFraction} of the
+ * framing rect. Slow devices do well with a low {@code minPixelsPerModule}, which favours small
+ * frames, fast devices can afford a higher one, which brings far or dense codes within reach.
+ * When no size is large enough the largest is picked. Ties go to the aspect ratio closest to
+ * the view's.
+ */
+public final class ModuleDensityPreviewSizePolicy implements PreviewSizePolicy {
+
+    /**
+     * A version 4 QR code, enough for a short URL.
+     */
+    public static final int DEFAULT_MODULES = 33;
+    /**
+     * A code held so that it covers half of the framing rect.
+     */
+    public static final float DEFAULT_CODE_FRACTION = 0.5f;
+    /**
+     * Below about 3 pixels per module, blur and the binarizer's block size start eating modules.
+     */
+    public static final float DEFAULT_MIN_PIXELS_PER_MODULE = 3;
+
+    private final int modules;
+    private final float codeFraction;
+    private final float minPixelsPerModule;
+
+    public ModuleDensityPreviewSizePolicy() {
+        this(DEFAULT_MODULES, DEFAULT_CODE_FRACTION, DEFAULT_MIN_PIXELS_PER_MODULE);
+    }
+
+    /**
+     * @param modules            modules across the expected code, 21 for a version 1 QR code
+     *                           and 4 more for every version.
+     * @param codeFraction       the share of the framing rect side the code covers, up to 1.
+     * @param minPixelsPerModule preview pixels needed for each module.
+     */
+    public ModuleDensityPreviewSizePolicy(int modules, float codeFraction,
+                                          float minPixelsPerModule) {
+        if (modules <= 0 || codeFraction <= 0 || codeFraction > 1 || minPixelsPerModule <= 0) {
+            throw new IllegalArgumentException("Bad code geometry: " + modules + " modules, "
+                    + codeFraction + " of the framing rect, " + minPixelsPerModule + " px");
+        }
+        this.modules = modules;
+        this.codeFraction = codeFraction;
+        this.minPixelsPerModule = minPixelsPerModule;
+    }
+
+    @Override
+    public PreviewSize select(List<PreviewSize> supportedSizes, PreviewSize viewSize) {
+        PreviewSize smallestDense = null;
+        PreviewSize largest = null;
+        float viewAspectRatio = viewSize.getAspectRatio();
+        for (PreviewSize size : supportedSizes) {
+            if (pixelsPerModule(size, viewSize) >= minPixelsPerModule
+                    && isBetter(size, smallestDense, -1, viewAspectRatio)) {
+                smallestDense = size;
+            }
+            if (isBetter(size, largest, 1, viewAspectRatio)) {
+                largest = size;
+            }
+        }
+        return smallestDense != null ? smallestDense : largest;
+    }
+
+    /**
+     * @param sign 1 to prefer larger sizes, -1 to prefer smaller ones.
+     */
+    private static boolean isBetter(PreviewSize size, PreviewSize best, int sign,
+                                    float viewAspectRatio) {
+        if (best == null) {
+            return true;
+        }
+        int order = sign * (size.getPixels() - best.getPixels());
+        if (order != 0) {
+            return order > 0;
+        }
+        return Math.abs(size.getAspectRatio() - viewAspectRatio)
+                < Math.abs(best.getAspectRatio() - viewAspectRatio);
+    }
+
+    /**
+     * @return the preview pixels per module of the expected code inside the framing rect, when
+     * the preview is stretched over the view.
+     */
+    float pixelsPerModule(PreviewSize size, PreviewSize viewSize) {
+        // The preview as shown, turned to the orientation of the view
+        boolean viewPortrait = viewSize.width < viewSize.height;
+        int shownWidth = viewPortrait ? Math.min(size.width, size.height)
+                : Math.max(size.width, size.height);
+        int shownHeight = viewPortrait ? Math.max(size.width, size.height)
+                : Math.min(size.width, size.height);
+
+        float framingSide = Math.min(viewSize.width, viewSize.height)
+                * CameraManager.FRAMING_RECT_PERCENT / 100f;
+        float window = Math.min(framingSide * shownWidth / viewSize.width,
+                framingSide * shownHeight / viewSize.height);
+        return window * codeFraction / modules;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return "ModuleDensity/" + modules + "/" + codeFraction + "/" + minPixelsPerModule;
+    }
+
+    @Override
+    public String toString() {
+        return getCacheKey();
+    }
+}
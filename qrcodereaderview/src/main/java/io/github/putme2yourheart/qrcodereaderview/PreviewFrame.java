@@ -0,0 +1,145 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import com.google.zxing.ChecksumException;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import java.nio.ByteBuffer;
+
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedPlaneLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
+
+/**
+ * A preview frame on its way from a {@link ScanCamera} to the decoder: either the byte array
+ * filled by {@code android.hardware.Camera}, or the Y plane of an {@code android.media.Image},
+ * read in place through its strides.
+ * <p>
+ * Frames are pooled by the camera which delivered them and must be given back with
+ * {@link #release()} once decoded or dropped.
+ */
+final class PreviewFrame {
+
+    private final ScanCamera camera;
+
+    private byte[] data;
+    private ByteBuffer plane;
+    private int rowStride;
+    private int pixelStride;
+    private int width;
+    private int height;
+    // What the camera needs to get the frame back, such as the Image holding the plane
+    private Object owner;
+
+    PreviewFrame(ScanCamera camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * Points the frame at a preview buffer with the Y plane first.
+     */
+    void setData(byte[] data, int width, int height) {
+        this.data = data;
+        this.plane = null;
+        this.width = width;
+        this.height = height;
+        this.owner = null;
+    }
+
+    /**
+     * Points the frame at a plane of luminance.
+     */
+    void setPlane(ByteBuffer plane, int rowStride, int pixelStride, int width, int height,
+                  Object owner) {
+        this.data = null;
+        this.plane = plane;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.width = width;
+        this.height = height;
+        this.owner = owner;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    ByteBuffer getPlane() {
+        return plane;
+    }
+
+    int getRowStride() {
+        return rowStride;
+    }
+
+    int getPixelStride() {
+        return pixelStride;
+    }
+
+    Object getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the width of the frame, in sensor orientation.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the frame, in sensor orientation.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gives the frame back to the camera which delivered it.
+     */
+    void release() {
+        camera.releaseFrame(this);
+    }
+
+    /**
+     * @return the luminance of a window of the frame, read in place.
+     * @see RotatedYUVLuminanceSource
+     * @see RotatedPlaneLuminanceSource
+     */
+    LuminanceSource luminance(int rotation, int left, int top, int width, int height) {
+        if (data != null) {
+            return new RotatedYUVLuminanceSource(data, this.width, this.height, rotation,
+                    left, top, width, height);
+        }
+        return new RotatedPlaneLuminanceSource(plane, this.width, this.height, rowStride,
+                pixelStride, rotation, left, top, width, height);
+    }
+
+    /**
+     * @see FrameDecoder#decode(byte[], int, int, int, int, int, int, int)
+     */
+    Result decode(FrameDecoder decoder, int rotation, int left, int top, int width, int height)
+            throws NotFoundException, ChecksumException, FormatException {
+        if (data != null) {
+            return decoder.decode(data, this.width, this.height, rotation,
+                    left, top, width, height);
+        }
+        return decoder.decode(plane, this.width, this.height, rowStride, pixelStride, rotation,
+                left, top, width, height);
+    }
+
+    /**
+     * @see FrameDecoder#decodeMultiple(byte[], int, int, int, int, int, int, int)
+     */
+    Result[] decodeMultiple(FrameDecoder decoder, int rotation, int left, int top, int width,
+                            int height) throws NotFoundException {
+        if (data != null) {
+            return decoder.decodeMultiple(data, this.width, this.height, rotation,
+                    left, top, width, height);
+        }
+        return decoder.decodeMultiple(plane, this.width, this.height, rowStride, pixelStride,
+                rotation, left, top, width, height);
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+/**
+ * A camera preview size, in sensor orientation. A plain value rather than
+ * {@code Camera.Size}, so that {@link PreviewSizePolicy} implementations can be built and tested
+ * without a camera.
+ */
+public final class PreviewSize {
+
+    public final int width;
+    public final int height;
+
+    public PreviewSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getPixels() {
+        return width * height;
+    }
+
+    /**
+     * @return the long side over the short side, so that a size and its rotation compare equal.
+     */
+    public float getAspectRatio() {
+        return (float) Math.max(width, height) / Math.min(width, height);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PreviewSize)) {
+            return false;
+        }
+        PreviewSize other = (PreviewSize) o;
+        return width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
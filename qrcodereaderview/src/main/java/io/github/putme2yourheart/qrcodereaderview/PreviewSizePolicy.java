@@ -0,0 +1,35 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import java.util.List;
+
+/**
+ * Picks the preview size the camera delivers frames in, out of the sizes it supports.
+ * <p>
+ * The chosen size is cached on disk along with the rest of the camera configuration, under a
+ * key which includes {@link #getCacheKey()}.
+ *
+ * @see AspectRatioPreviewSizePolicy
+ * @see ModuleDensityPreviewSizePolicy
+ */
+public interface PreviewSizePolicy {
+
+    /**
+     * @param supportedSizes the sizes the camera supports, in sensor orientation, never empty.
+     * @param viewSize       the size of the view the preview is shown in, in its own
+     *                       orientation.
+     * @return one of {@code supportedSizes}, or null to keep the default size of the camera.
+     */
+    PreviewSize select(List<PreviewSize> supportedSizes, PreviewSize viewSize);
+
+    /**
+     * Names the policy and its parameters in the key of the cached camera configuration. It
+     * must stay the same from one launch to the next, and change with any parameter which
+     * changes the selected size, so that changing them negotiates the preview size again. Do
+     * not return {@link Object#toString()}, which changes with every process: each launch
+     * would miss the cache and add an entry of its own.
+     *
+     * @return a stable key such as the class name and the parameters, or null to select the
+     * preview size on every launch without caching it.
+     */
+    String getCacheKey();
+}
@@ -0,0 +1,273 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+import io.github.putme2yourheart.qrcodereaderview.core.ResultPoints;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.TiledDecoder;
+
+/**
+ * Decodes codes in still images, such as gallery pictures and document photos, with the
+ * reader chain {@link QRCodeReaderView} uses. Give it {@link QRCodeReaderView#getDecodeHints()}
+ * to read the same formats.
+ * <p>
+ * An image is first searched scaled down to about 1024 pixels, which finds the codes covering
+ * a good part of it. Only if that finds nothing is it searched again in overlapping tiles,
+ * scaled down to 4096 pixels if larger, decoded side by side on a shared pool of one thread
+ * per CPU, which finds the small ones. Images small enough for the first pass are only
+ * searched once.
+ * Result points are in the coordinates of the original image.
+ * <p>
+ * Every method is static and thread safe, and blocks while decoding: call them off the main
+ * thread.
+ */
+public final class QRCodeImageDecoder {
+
+    private static final String TAG = QRCodeImageDecoder.class.getName();
+
+    // Long side of the image of the first pass
+    private static final int FIRST_PASS_SIZE = 1024;
+    // Long side above which images are scaled down before being tiled
+    private static final int MAX_TILED_SIZE = 4096;
+    private static final int TILE_SIZE = 1024;
+    // Codes up to this size are whole in a tile, larger ones are found by the first pass
+    private static final int TILE_OVERLAP = 384;
+
+    private QRCodeImageDecoder() {
+    }
+
+    public static Result[] decode(Bitmap bitmap) throws NotFoundException {
+        return decode(bitmap, null);
+    }
+
+    /**
+     * Decodes every code in a bitmap.
+     *
+     * @param bitmap the image.
+     * @param hints  decode hints, may be null.
+     * @return the decoded codes, never empty.
+     * @throws NotFoundException if there is no code.
+     */
+    public static Result[] decode(final Bitmap bitmap, Map<DecodeHintType, ?> hints)
+            throws NotFoundException {
+        try {
+            return decode(bitmap.getWidth(), bitmap.getHeight(), new LuminanceLoader() {
+                @Override
+                public LuminanceSource load(int sampleSize) {
+                    return luminance(bitmap, sampleSize);
+                }
+            }, hints);
+        } catch (IOException e) {
+            // Never thrown, the bitmap is decoded already
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Result[] decode(byte[] jpeg) throws IOException, NotFoundException {
+        return decode(jpeg, null);
+    }
+
+    /**
+     * Decodes every code in a compressed image, JPEG or any other format BitmapFactory reads.
+     * The image is decoded at the sizes the passes need, never larger.
+     *
+     * @param jpeg  the compressed image.
+     * @param hints decode hints, may be null.
+     * @return the decoded codes, never empty.
+     * @throws IOException       if the image cannot be read.
+     * @throws NotFoundException if there is no code.
+     */
+    public static Result[] decode(final byte[] jpeg, Map<DecodeHintType, ?> hints)
+            throws IOException, NotFoundException {
+        return decode(new ImageSource() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+            }
+        }, hints);
+    }
+
+    public static Result[] decode(File file) throws IOException, NotFoundException {
+        return decode(file, null);
+    }
+
+    /**
+     * Decodes every code in an image file.
+     *
+     * @param file  the image file, in any format BitmapFactory reads.
+     * @param hints decode hints, may be null.
+     * @return the decoded codes, never empty.
+     * @throws IOException       if the file cannot be read.
+     * @throws NotFoundException if there is no code.
+     * @see #decode(byte[], Map)
+     */
+    public static Result[] decode(final File file, Map<DecodeHintType, ?> hints)
+            throws IOException, NotFoundException {
+        return decode(new ImageSource() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeFile(file.getPath(), options);
+            }
+        }, hints);
+    }
+
+    private interface ImageSource {
+
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * Reads the luminance of an image scaled down for a pass.
+     */
+    interface LuminanceLoader {
+
+        /**
+         * @param sampleSize the power of 2 the image is divided by.
+         * @return the luminance of the scaled down image.
+         */
+        LuminanceSource load(int sampleSize) throws IOException;
+    }
+
+    private static Result[] decode(final ImageSource source, Map<DecodeHintType, ?> hints)
+            throws IOException, NotFoundException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Cannot read the image");
+        }
+        return decode(width, height, new LuminanceLoader() {
+            @Override
+            public LuminanceSource load(int sampleSize) throws IOException {
+                // Let the image decoder do the scaling, the full image is never held
+                Bitmap bitmap = decodeBitmap(source, sampleSize);
+                try {
+                    return luminance(bitmap, 1);
+                } finally {
+                    bitmap.recycle();
+                }
+            }
+        }, hints);
+    }
+
+    /**
+     * Runs the passes over an image of the given size.
+     */
+    static Result[] decode(int width, int height, LuminanceLoader loader,
+                           Map<DecodeHintType, ?> hints) throws IOException, NotFoundException {
+        List<Result> results = new ArrayList<>();
+        int sampleSize = sampleSize(width, height, FIRST_PASS_SIZE);
+        decodeScaled(loader.load(sampleSize), sampleSize, hints, results);
+        if (!results.isEmpty()) {
+            return merge(results);
+        }
+
+        int tiledSampleSize = sampleSize(width, height, MAX_TILED_SIZE);
+        if (needsTiledPass(width, height, tiledSampleSize)) {
+            decodeTiled(loader.load(tiledSampleSize), tiledSampleSize, hints, results);
+        }
+        return merge(results);
+    }
+
+    /**
+     * @return false if the tiles would be a single tile of the image of the first pass.
+     */
+    private static boolean needsTiledPass(int width, int height, int tiledSampleSize) {
+        return Math.max(width, height) / tiledSampleSize > FIRST_PASS_SIZE;
+    }
+
+    private static Bitmap decodeBitmap(ImageSource source, int sampleSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        // Only the luminance is kept, half the memory of ARGB_8888
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = source.decode(options);
+        if (bitmap == null) {
+            throw new IOException("Cannot decode the image");
+        }
+        return bitmap;
+    }
+
+    private static void decodeScaled(LuminanceSource source, int sampleSize,
+                                     Map<DecodeHintType, ?> hints, List<Result> results) {
+        try {
+            for (Result result : new FrameDecoder(hints).decodeMultiple(source)) {
+                ResultPoints.scale(result, sampleSize);
+                results.add(result);
+            }
+        } catch (NotFoundException e) {
+            SimpleLog.d(TAG, "No code found at 1/" + sampleSize);
+        }
+    }
+
+    private static void decodeTiled(LuminanceSource source, int sampleSize,
+                                    Map<DecodeHintType, ?> hints, List<Result> results) {
+        TiledDecoder decoder = new TiledDecoder(TilePool.EXECUTOR, TILE_SIZE, TILE_OVERLAP);
+        decoder.setHints(hints);
+        try {
+            for (Result result : decoder.decodeMultiple(source)) {
+                ResultPoints.scale(result, sampleSize);
+                results.add(result);
+            }
+        } catch (NotFoundException e) {
+            SimpleLog.d(TAG, "No code found in tiles at 1/" + sampleSize);
+        }
+    }
+
+    private static Result[] merge(List<Result> results) throws NotFoundException {
+        if (results.isEmpty()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return TiledDecoder.merge(results);
+    }
+
+    /**
+     * @return the power of 2 the image is to be divided by for its long side to be at most
+     * {@code maxSize}, as expected by {@link BitmapFactory.Options#inSampleSize}.
+     */
+    static int sampleSize(int width, int height, int maxSize) {
+        int sampleSize = 1;
+        while (Math.max(width, height) / sampleSize > maxSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Converts a bitmap to luminance, keeping one pixel out of {@code sampleSize} in both
+     * directions. Read one row at a time, so no pixel array of the whole bitmap is needed.
+     */
+    private static LuminanceSource luminance(Bitmap bitmap, int sampleSize) {
+        int width = bitmap.getWidth() / sampleSize;
+        int height = bitmap.getHeight() / sampleSize;
+        int[] row = new int[bitmap.getWidth()];
+        byte[] luminance = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, bitmap.getWidth(), 0, y * sampleSize, bitmap.getWidth(), 1);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x * sampleSize];
+                // Same weights as RGBLuminanceSource of ZXing
+                int r = (pixel >> 16) & 0xff;
+                int g2 = (pixel >> 7) & 0x1fe;
+                int b = pixel & 0xff;
+                luminance[y * width + x] = (byte) ((r + g2 + b) / 4);
+            }
+        }
+        return new RotatedYUVLuminanceSource(luminance, width, height, 0, 0, 0, width, height);
+    }
+}
@@ -21,8 +21,11 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.hardware.Camera;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.Surface;
 import android.view.SurfaceHolder;
@@ -30,19 +33,31 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.view.WindowManager;
 
-import com.google.zxing.BinaryBitmap;
 import com.google.zxing.ChecksumException;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.FormatException;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+
+import io.github.putme2yourheart.qrcodereaderview.core.DecodeExecutor;
+import io.github.putme2yourheart.qrcodereaderview.core.FrameDecoder;
+import io.github.putme2yourheart.qrcodereaderview.core.FrameQuality;
+import io.github.putme2yourheart.qrcodereaderview.core.RegionTracker;
+import io.github.putme2yourheart.qrcodereaderview.core.ResultQueue;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedPlaneLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.RotatedYUVLuminanceSource;
+import io.github.putme2yourheart.qrcodereaderview.core.ScanMetrics;
+import io.github.putme2yourheart.qrcodereaderview.core.TiledDecoder;
 
 import static android.hardware.Camera.getCameraInfo;
 
@@ -52,28 +67,189 @@ import static android.hardware.Camera.getCameraInfo;
  *
  * @author David Lázaro
  */
-public class QRCodeReaderView extends SurfaceView
-        implements SurfaceHolder.Callback, Camera.PreviewCallback {
+public class QRCodeReaderView extends SurfaceView implements SurfaceHolder.Callback {
 
     public interface OnQRCodeReadListener {
 
         void onQRCodeRead(String text);
     }
 
-    private OnQRCodeReadListener mOnQRCodeReadListener;
+    public interface OnQRCodesReadListener {
+
+        /**
+         * Called with the codes found in a frame which were not reported yet in this session.
+         * Each result carries the decoded text and its corner points, relative to the
+         * framing rect in preview coordinates.
+         *
+         * @param results newly found codes, never empty.
+         */
+        void onQRCodesRead(List<Result> results);
+    }
+
+    public interface OnQRCodesBatchListener {
+
+        /**
+         * Called with the codes collected since the last batch, see
+         * {@link #setOnQRCodesBatchListener(OnQRCodesBatchListener, long, int)}.
+         *
+         * @param results the codes in the order they were decoded, never empty.
+         */
+        void onQRCodesBatch(List<Result> results);
+    }
+
+    public interface OnScanMetricsListener {
+
+        /**
+         * Called on the main thread with the live metrics of the view, see
+         * {@link #setOnScanMetricsListener(OnScanMetricsListener, long)}.
+         *
+         * @param metrics the metrics, still updated by the decode threads while being read.
+         */
+        void onScanMetrics(ScanMetrics metrics);
+    }
+
+    public interface OnCameraStateListener {
+
+        /**
+         * Called on the main thread when the camera starts opening, is previewing, failed to
+         * open or was lost, or was closed.
+         *
+         * @param state {@link #CAMERA_STATE_OPENING}, {@link #CAMERA_STATE_READY},
+         *              {@link #CAMERA_STATE_FAILED} or {@link #CAMERA_STATE_CLOSED}.
+         */
+        void onCameraStateChanged(int state);
+    }
+
+    /**
+     * The camera is not open.
+     */
+    public static final int CAMERA_STATE_CLOSED = 0;
+    /**
+     * The camera is being opened and configured on the camera thread.
+     */
+    public static final int CAMERA_STATE_OPENING = 1;
+    /**
+     * The camera is open and the preview started.
+     */
+    public static final int CAMERA_STATE_READY = 2;
+    /**
+     * The camera could not be opened or configured, or was taken by another app or failed
+     * while open. It is closed, and opened again the next time the surface is created.
+     */
+    public static final int CAMERA_STATE_FAILED = 3;
+
+    // Called on the executor of the result queue, which may not be the main thread
+    private volatile OnQRCodeReadListener mOnQRCodeReadListener;
+    private volatile OnQRCodesReadListener mOnQRCodesReadListener;
+    private volatile OnQRCodesBatchListener mOnQRCodesBatchListener;
+    private OnCameraStateListener mOnCameraStateListener;
+    private OnScanMetricsListener mOnScanMetricsListener;
+    private long mScanMetricsIntervalMs;
 
     private static final String TAG = QRCodeReaderView.class.getName();
 
-    private QRCodeReader mQRCodeReader;
-    private int mPreviewWidth;
-    private int mPreviewHeight;
-    private CameraManager mCameraManager;
-    private boolean mQrDecodingEnabled = true;
-    private DecodeFrameTask decodeFrameTask;
-    private Map<DecodeHintType, Object> decodeHints;
+    private static final int MSG_RESULTS_DELIVERED = 1;
+    private static final int MSG_CAMERA_STATE = 2;
+
+    // Results waiting for the listeners unless told otherwise by setResultDelivery()
+    private static final int DEFAULT_RESULT_QUEUE_CAPACITY = 8;
+
+    // The listener decoded codes are meant for
+    private static final int TARGET_SINGLE = 0;
+    private static final int TARGET_MULTIPLE = 1;
+    private static final int TARGET_BATCH = 2;
+
+    // Tiles of the framing rect in tiled decoding, small codes are whole in one of them
+    private static final int DEFAULT_TILE_SIZE = 384;
+    private static final int DEFAULT_TILE_OVERLAP = 160;
+
+    // Payloads remembered to report each code once per session in multiple decoding mode,
+    // or once per window in continuous scanning
+    private static final int RECENT_PAYLOADS_CAPACITY = 256;
+    private static final long DEFAULT_CONTINUOUS_SCAN_WINDOW_MS = 3000;
+
+    // Replaced on the camera thread when switching between camera APIs
+    private volatile ScanCamera mCamera;
+    // Only touched on the camera thread, created the first time camera2 is asked for
+    private Camera2Manager mCamera2Manager;
+    private final CameraThread mCameraThread = new CameraThread();
+    private volatile int mCameraState = CAMERA_STATE_CLOSED;
+    // Read by the camera thread and the decode threads
+    private volatile boolean mQrDecodingEnabled = true;
+    // Swapped on the main thread, frames are posted to it from the camera thread
+    private volatile DecodeExecutor<PreviewFrame, DecodedFrame> mDecodeExecutor;
+    private ResultHandler mResultHandler;
+    private volatile ResultQueue<DecodedResults> mResultQueue;
+    // Null unless a batch listener is set
+    private volatile ResultBatcher mResultBatcher;
+    private final Runnable mBatchFlusher = new Runnable() {
+        @Override
+        public void run() {
+            flushBatch(mResultBatcher);
+        }
+    };
+    private final Executor mMainThreadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mResultHandler.post(command);
+        }
+    };
+    private final ResultQueue.Consumer<DecodedResults> mResultConsumer =
+            new ResultQueue.Consumer<DecodedResults>() {
+                @Override
+                public void onResults(List<DecodedResults> results) {
+                    deliverResults(results);
+                }
+            };
+    private volatile Map<DecodeHintType, Object> decodeHints;
+    private volatile boolean mMultipleDecodingEnabled = false;
+    private volatile RegionTracker mRegionTracker;
+    private volatile boolean mDownsampledPassEnabled = false;
+    // Null unless tiled decoding is enabled
+    private volatile TiledDecoder mTiledDecoder;
+    private volatile float mMinSharpness = 0;
+    private volatile float mMinContrast = 0;
+    private final ScanMetrics mScanMetrics = new ScanMetrics();
+    private final Runnable mScanMetricsReporter = new Runnable() {
+        @Override
+        public void run() {
+            reportScanMetrics();
+            postDelayed(this, mScanMetricsIntervalMs);
+        }
+    };
+    private final RecentPayloads mReportedPayloads = new RecentPayloads(RECENT_PAYLOADS_CAPACITY);
+    // Null unless continuous scanning is enabled
+    private volatile RecentPayloads mContinuousPayloads;
+    private final ScanCamera.FrameCallback mFrameCallback = new ScanCamera.FrameCallback() {
+        @Override
+        public void onPreviewFrame(PreviewFrame frame) {
+            onFrame(frame);
+        }
+    };
+
+    // Called on the camera thread or the camera2 thread
+    private final ScanCamera.ErrorCallback mErrorCallback = new ScanCamera.ErrorCallback() {
+        @Override
+        public void onCameraError() {
+            mCameraThread.post(new Runnable() {
+                @Override
+                public void run() {
+                    onCameraLost();
+                }
+            });
+        }
+    };
 
     private BeepManager mBeepManager;
 
+    private volatile boolean mResultSnapshotEnabled = false;
+    // Double buffered: the decoders render into mResultSnapshot while the layout draws
+    // mShownSnapshot, the main thread swaps them, all under mSnapshotLock
+    private final Object mSnapshotLock = new Object();
+    private Bitmap mResultSnapshot;
+    private Bitmap mShownSnapshot;
+    private int[] mResultSnapshotPixels;
+
     private View mScannerLayout;
 
     public QRCodeReaderView(Context context) {
@@ -88,8 +264,13 @@ public class QRCodeReaderView extends SurfaceView
         }
 
         if (checkCameraHardware()) {
-            mCameraManager = CameraManager.getCameraManager(context);
-            mCameraManager.setPreviewCallback(this);
+            mCamera = CameraManager.getCameraManager(context);
+            mCamera.setFrameCallback(mFrameCallback);
+            mCamera.setErrorCallback(mErrorCallback);
+            mResultHandler = new ResultHandler(this);
+            setResultDelivery(null, DEFAULT_RESULT_QUEUE_CAPACITY,
+                    ResultQueue.OverflowPolicy.DROP_OLDEST);
+            setDecodeWorkerCount(1);
             getHolder().addCallback(this);
             setBackCamera();
             mBeepManager = new BeepManager((Activity) context);
@@ -112,6 +293,272 @@ public class QRCodeReaderView extends SurfaceView
         mOnQRCodeReadListener = onQRCodeReadListener;
     }
 
+    /**
+     * Set the callback to return every code found in a frame, used when multiple decoding
+     * is enabled
+     *
+     * @param onQRCodesReadListener the listener
+     * @see #setMultipleDecodingEnabled(boolean)
+     */
+    public void setOnQRCodesReadListener(OnQRCodesReadListener onQRCodesReadListener) {
+        mOnQRCodesReadListener = onQRCodesReadListener;
+    }
+
+    /**
+     * Set the callback to return decoded codes in batches instead of one by one, for scanning
+     * lines reading dozens of codes a second. Codes are collected until {@code maxCount} of
+     * them are in or the first of them is {@code intervalMs} old, then handed over in one call
+     * with a single beep. While it is set, {@link OnQRCodeReadListener} and
+     * {@link OnQRCodesReadListener} are left alone. Batches are delivered as set by
+     * {@link #setResultDelivery(Executor, int, ResultQueue.OverflowPolicy, int)}.
+     *
+     * @param onQRCodesBatchListener the listener, null to go back to one code per call.
+     * @param intervalMs             the longest time a code waits for its batch, in
+     *                               milliseconds, greater than 0.
+     * @param maxCount               the number of codes which make a batch, greater than 0.
+     */
+    public void setOnQRCodesBatchListener(OnQRCodesBatchListener onQRCodesBatchListener,
+                                          long intervalMs, int maxCount) {
+        ResultBatcher previous = mResultBatcher;
+        mResultBatcher = onQRCodesBatchListener != null
+                ? new ResultBatcher(intervalMs, maxCount) : null;
+        mOnQRCodesBatchListener = onQRCodesBatchListener;
+        if (previous != null) {
+            // The codes collected so far still go out, to the new listener
+            flushBatch(previous);
+        }
+    }
+
+    /**
+     * Set the callback told when the camera is opening, ready, failed to open or closed. The
+     * camera is opened on a thread of its own once the surface of the view is created.
+     *
+     * @param onCameraStateListener the listener
+     */
+    public void setOnCameraStateListener(OnCameraStateListener onCameraStateListener) {
+        mOnCameraStateListener = onCameraStateListener;
+    }
+
+    /**
+     * Get the state of the camera.
+     *
+     * @return {@link #CAMERA_STATE_CLOSED}, {@link #CAMERA_STATE_OPENING},
+     * {@link #CAMERA_STATE_READY} or {@link #CAMERA_STATE_FAILED}.
+     */
+    public int getCameraState() {
+        return mCameraState;
+    }
+
+    /**
+     * Set multiple decoding enabled/disabled. When enabled, every code inside the framing rect
+     * is decoded in one pass and reported through {@link OnQRCodesReadListener}, instead of
+     * one code per frame through {@link OnQRCodeReadListener}. A code is only reported the first
+     * time it is seen after {@link #startCamera()}.
+     * default value is false
+     *
+     * @param enabled multiple decoding enabled/disabled.
+     */
+    public void setMultipleDecodingEnabled(boolean enabled) {
+        this.mMultipleDecodingEnabled = enabled;
+    }
+
+    /**
+     * Set continuous scanning enabled/disabled, holding each code back for 3 seconds after it
+     * was reported. See {@link #setContinuousScanEnabled(boolean, long)}.
+     * default value is false
+     *
+     * @param enabled continuous scanning enabled/disabled.
+     */
+    public void setContinuousScanEnabled(boolean enabled) {
+        setContinuousScanEnabled(enabled, DEFAULT_CONTINUOUS_SCAN_WINDOW_MS);
+    }
+
+    /**
+     * Set continuous scanning enabled/disabled. When enabled, the preview and decoding keep
+     * running after a code is read, and each distinct code is reported, with a beep, at most
+     * once per window however long it stays in view. Codes are told apart by their text, the
+     * last 256 codes seen are remembered. Useful to sweep over
+     * many codes without restarting the camera between them.
+     * <p>
+     * In multiple decoding mode, a code is then reported again once the window has passed
+     * instead of once per {@link #startCamera()}.
+     *
+     * @param enabled  continuous scanning enabled/disabled.
+     * @param windowMs how long a reported code is held back, in milliseconds, greater than 0.
+     */
+    public void setContinuousScanEnabled(boolean enabled, long windowMs) {
+        mContinuousPayloads = enabled
+                ? new RecentPayloads(RECENT_PAYLOADS_CAPACITY, windowMs) : null;
+    }
+
+    /**
+     * Set region tracking enabled/disabled. When enabled, once a code has been seen the
+     * following frames are only decoded inside a padded box around it instead of the whole
+     * framing rect, which follows the code as it moves. The full framing rect is decoded again
+     * after {@link RegionTracker#DEFAULT_MAX_MISSES} frames in a row without a decoded code.
+     * default value is false
+     *
+     * @param enabled region tracking enabled/disabled.
+     */
+    public void setRegionTrackingEnabled(boolean enabled) {
+        setRegionTrackingEnabled(enabled, RegionTracker.DEFAULT_MAX_MISSES);
+    }
+
+    /**
+     * Same as {@link #setRegionTrackingEnabled(boolean)}, with the number of frames in a row
+     * without a decoded code after which the full framing rect is decoded again.
+     *
+     * @param enabled   region tracking enabled/disabled.
+     * @param maxMisses frames without a decoded code before widening back, greater than 0.
+     */
+    public void setRegionTrackingEnabled(boolean enabled, int maxMisses) {
+        mRegionTracker = enabled ? new RegionTracker(maxMisses) : null;
+    }
+
+    /**
+     * Set downsampled pass enabled/disabled. When enabled, large framing rects are first decoded
+     * at half resolution, from a 2x2 box filtered copy of the preview, and only decoded again at
+     * full resolution when nothing was found. Big, close codes then cost a quarter of the pixels.
+     * How often each resolution hits is counted by {@link #getDecodeLevelHits(int)}.
+     * default value is false
+     *
+     * @param enabled downsampled pass enabled/disabled.
+     */
+    public void setDownsampledPassEnabled(boolean enabled) {
+        this.mDownsampledPassEnabled = enabled;
+    }
+
+    /**
+     * Set tiled decoding enabled/disabled, with tiles of 384 pixels overlapping by 160. See
+     * {@link #setTiledDecodingEnabled(boolean, int, int)}.
+     * default value is false
+     *
+     * @param enabled tiled decoding enabled/disabled.
+     */
+    public void setTiledDecodingEnabled(boolean enabled) {
+        setTiledDecodingEnabled(enabled, DEFAULT_TILE_SIZE, DEFAULT_TILE_OVERLAP);
+    }
+
+    /**
+     * Set tiled decoding enabled/disabled. When enabled, the framing rect is split into
+     * overlapping square tiles which are binarized and decoded on their own, side by side on a
+     * pool of one thread per CPU, and codes found in several tiles are reported once. Small
+     * codes in a large framing rect or a high resolution preview are then found where a single
+     * pass over the whole rect misses them. Every code is found in one frame, as with
+     * {@link #setMultipleDecodingEnabled(boolean)}, but only the first is reported unless
+     * multiple decoding is enabled too.
+     * <p>
+     * Tiled frames skip the downsampled pass and the frame quality gate, and are left out of
+     * the decode counts of the scan metrics.
+     *
+     * @param enabled  tiled decoding enabled/disabled.
+     * @param tileSize the side of a tile, in preview pixels.
+     * @param overlap  the pixels neighbouring tiles share, the size of the largest code sure to
+     *                 be whole in a tile, smaller than {@code tileSize}.
+     */
+    public void setTiledDecodingEnabled(boolean enabled, int tileSize, int overlap) {
+        TiledDecoder tiledDecoder = null;
+        if (enabled) {
+            tiledDecoder = new TiledDecoder(TilePool.EXECUTOR, tileSize, overlap);
+            tiledDecoder.setHints(decodeHints);
+        }
+        mTiledDecoder = tiledDecoder;
+    }
+
+    /**
+     * Get the number of frames decoded at a resolution since the scan metrics were reset.
+     *
+     * @param level {@link FrameDecoder#LEVEL_FULL} or {@link FrameDecoder#LEVEL_HALF}.
+     * @return the number of frames in which a code was found at that resolution.
+     */
+    public long getDecodeLevelHits(int level) {
+        return mScanMetrics.getDecodeLevelHits(level);
+    }
+
+    /**
+     * Set frame quality gate enabled/disabled, with the default thresholds of
+     * {@link FrameQuality}. See {@link #setFrameQualityGateEnabled(boolean, float, float)}.
+     * default value is false
+     *
+     * @param enabled frame quality gate enabled/disabled.
+     */
+    public void setFrameQualityGateEnabled(boolean enabled) {
+        setFrameQualityGateEnabled(enabled, FrameQuality.DEFAULT_MIN_SHARPNESS,
+                FrameQuality.DEFAULT_MIN_CONTRAST);
+    }
+
+    /**
+     * Set frame quality gate enabled/disabled. When enabled, the sharpness and contrast of the
+     * framing rect are estimated on a sparse grid of pixels before anything else, and frames
+     * below either threshold are skipped without being binarized. Watch
+     * {@link #getFrameSkipRatio()} while tuning the thresholds for a device.
+     *
+     * @param enabled      frame quality gate enabled/disabled.
+     * @param minSharpness minimum {@link FrameQuality#getSharpness()} of a decoded frame.
+     * @param minContrast  minimum {@link FrameQuality#getContrast()} of a decoded frame.
+     */
+    public void setFrameQualityGateEnabled(boolean enabled, float minSharpness,
+                                           float minContrast) {
+        this.mMinContrast = enabled ? minContrast : 0;
+        this.mMinSharpness = enabled ? minSharpness : 0;
+    }
+
+    /**
+     * Get the number of frames skipped by the frame quality gate since the scan metrics were reset.
+     *
+     * @return the number of skipped frames.
+     */
+    public long getSkippedFrameCount() {
+        return mScanMetrics.getFramesSkipped();
+    }
+
+    /**
+     * Get the share of the frames measured by the frame quality gate which were skipped.
+     *
+     * @return a ratio between 0 and 1, 0 when no frame was measured yet.
+     */
+    public float getFrameSkipRatio() {
+        return mScanMetrics.getFrameSkipRatio();
+    }
+
+    /**
+     * Get the metrics of the scan pipeline: frames delivered, dropped and skipped, decode
+     * attempts and successes, the latency of each decode stage and the time from
+     * {@link #startCamera()} to the first result. They keep adding up until
+     * {@link ScanMetrics#reset()} is called.
+     *
+     * @return the live metrics, safe to read from any thread.
+     */
+    public ScanMetrics getScanMetrics() {
+        return mScanMetrics;
+    }
+
+    /**
+     * Set the listener the scan metrics are pushed to, on the main thread, every
+     * {@code intervalMs} while the view is attached to a window, and once more from
+     * {@link #stopCamera()}.
+     *
+     * @param listener   the listener, null to stop pushing.
+     * @param intervalMs the time between two pushes in ms.
+     */
+    public void setOnScanMetricsListener(OnScanMetricsListener listener, long intervalMs) {
+        if (listener != null && intervalMs <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than 0.");
+        }
+        this.mOnScanMetricsListener = listener;
+        this.mScanMetricsIntervalMs = intervalMs;
+        removeCallbacks(mScanMetricsReporter);
+        if (listener != null) {
+            postDelayed(mScanMetricsReporter, intervalMs);
+        }
+    }
+
+    private void reportScanMetrics() {
+        if (mOnScanMetricsListener != null) {
+            mOnScanMetricsListener.onScanMetrics(mScanMetrics);
+        }
+    }
+
     /**
      * Enable/disable logging, false by default
      *
@@ -132,26 +579,176 @@ public class QRCodeReaderView extends SurfaceView
     }
 
     /**
-     * Set QR hints required for decoding
+     * Set QR hints required for decoding.
+     * Other barcode formats can be read by listing them in the
+     * {@link DecodeHintType#POSSIBLE_FORMATS} hint, they are tried in the given order, except
+     * that the format decoded last is always tried first. Only QR codes are read by default.
      *
      * @param decodeHints hints for decoding qrcode
      */
     public void setDecodeHints(Map<DecodeHintType, Object> decodeHints) {
         this.decodeHints = decodeHints;
+        TiledDecoder tiledDecoder = mTiledDecoder;
+        if (tiledDecoder != null) {
+            tiledDecoder.setHints(decodeHints);
+        }
+    }
+
+    /**
+     * Get the hints set with {@link #setDecodeHints(Map)}, to decode still images the same way
+     * with {@link QRCodeImageDecoder}.
+     *
+     * @return the hints, null if none were set.
+     */
+    public Map<DecodeHintType, Object> getDecodeHints() {
+        return decodeHints;
+    }
+
+    /**
+     * Capture a snapshot of the framing window when a QR code is decoded, and show it on the
+     * bound {@link ScannerCoverLayout} through {@link ScannerCoverLayout#drawResultBitmap(Bitmap)}.
+     * The snapshot is only rendered for codes which are reported, after duplicates were left
+     * out, into one of two reused bitmaps: the one being drawn is never written to. Codes
+     * handed to {@link OnQRCodesBatchListener} get no snapshot.
+     * default value is false
+     *
+     * @param enabled result snapshot enabled/disabled.
+     */
+    public void setResultSnapshotEnabled(boolean enabled) {
+        this.mResultSnapshotEnabled = enabled;
+    }
+
+    /**
+     * Set how decoded codes reach the listeners, one result per call. See
+     * {@link #setResultDelivery(Executor, int, ResultQueue.OverflowPolicy, int)}.
+     * default is the main thread, 8 results, {@link ResultQueue.OverflowPolicy#DROP_OLDEST}
+     *
+     * @param executor runs the listeners, null for the main thread.
+     * @param capacity the number of results which may wait for the listeners, greater than 0.
+     * @param policy   what happens to a result decoded while the queue is full.
+     */
+    public void setResultDelivery(Executor executor, int capacity,
+                                  ResultQueue.OverflowPolicy policy) {
+        setResultDelivery(executor, capacity, policy, 1);
+    }
+
+    /**
+     * Set how decoded codes reach {@link OnQRCodeReadListener} and
+     * {@link OnQRCodesReadListener}. Results wait in a bounded queue and the listeners are
+     * called on the given executor, so a listener doing slow work, such as a database insert,
+     * on an executor of its own never stalls the main looper or the preview. While the queue is
+     * full, new results are handled as told by the policy:
+     * {@link ResultQueue.OverflowPolicy#BLOCK} holds back the decode thread handing results
+     * over until the listeners catch up, the other decode threads keep decoding and their
+     * results wait for it. The snapshot and the beep always happen on the main thread, once per call.
+     * <p>
+     * With a batch size greater than 1, the results which piled up while the listeners were
+     * busy are handed over in one go, with a single beep.
+     * <p>
+     * Results still queued are dropped when this is called again.
+     *
+     * @param executor     runs the listeners, null for the main thread.
+     * @param capacity     the number of results which may wait for the listeners, greater
+     *                     than 0.
+     * @param policy       what happens to a result decoded while the queue is full.
+     * @param maxBatchSize the number of results delivered at most in one go, greater than 0.
+     * @see #getDeliveredResultCount()
+     * @see #getDroppedResultCount()
+     */
+    public void setResultDelivery(Executor executor, int capacity,
+                                  ResultQueue.OverflowPolicy policy, int maxBatchSize) {
+        ResultQueue<DecodedResults> previous = mResultQueue;
+        mResultQueue = new ResultQueue<>(executor != null ? executor : mMainThreadExecutor,
+                mResultConsumer, capacity, policy, maxBatchSize);
+        if (previous != null) {
+            previous.clear();
+        }
+    }
+
+    /**
+     * Get the number of results handed to the listeners since the delivery was last set.
+     *
+     * @return the number of results delivered.
+     */
+    public long getDeliveredResultCount() {
+        ResultQueue<DecodedResults> resultQueue = mResultQueue;
+        return resultQueue != null ? resultQueue.getDeliveredCount() : 0;
+    }
+
+    /**
+     * Get the number of results dropped because the queue was full since the delivery was last
+     * set.
+     *
+     * @return the number of results dropped.
+     */
+    public long getDroppedResultCount() {
+        ResultQueue<DecodedResults> resultQueue = mResultQueue;
+        return resultQueue != null ? resultQueue.getDroppedCount() : 0;
+    }
+
+    /**
+     * Set the number of threads decoding preview frames. With more than one worker, consecutive
+     * frames are decoded at the same time, each worker with its own reader. Results are still
+     * delivered in frame order, and a code found by frames which were decoded at the same time
+     * is only reported once.
+     * default value is 1
+     *
+     * @param workerCount number of decode threads, greater than 0.
+     */
+    public void setDecodeWorkerCount(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Decode worker count must be greater than 0.");
+        }
+        if (mDecodeExecutor != null && mDecodeExecutor.getWorkerCount() == workerCount) {
+            return;
+        }
+
+        DecodeExecutor<PreviewFrame, DecodedFrame> previous = mDecodeExecutor;
+        DecodeExecutor<PreviewFrame, DecodedFrame> executor =
+                new DecodeExecutor<>(new DecodeFrameHandler(workerCount), workerCount);
+        mDecodeExecutor = executor;
+        if (previous != null && previous.isRunning()) {
+            previous.stop();
+            executor.start();
+        }
     }
 
     /**
      * Starts camera preview and decoding
      */
     public void startCamera() {
-        mCameraManager.startPreview();
+        if (mResultSnapshotEnabled && mScannerLayout instanceof ScannerCoverLayout) {
+            ((ScannerCoverLayout) mScannerLayout).drawViewfinder();
+        }
+        mReportedPayloads.clear();
+        RecentPayloads continuousPayloads = mContinuousPayloads;
+        if (continuousPayloads != null) {
+            continuousPayloads.clear();
+        }
+        RegionTracker regionTracker = mRegionTracker;
+        if (regionTracker != null) {
+            regionTracker.reset();
+        }
+        mScanMetrics.onScanStarted();
+        mCameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                mCamera.startPreview();
+            }
+        });
     }
 
     /**
      * Stop camera preview and decoding
      */
     public void stopCamera() {
-        mCameraManager.stopPreview();
+        mCameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                mCamera.stopPreview();
+            }
+        });
+        reportScanMetrics();
     }
 
     /**
@@ -161,8 +758,8 @@ public class QRCodeReaderView extends SurfaceView
      * @param autofocusIntervalInMs autofocus interval value
      */
     public void setAutofocusInterval(long autofocusIntervalInMs) {
-        if (mCameraManager != null) {
-            mCameraManager.setAutofocusInterval(autofocusIntervalInMs);
+        if (mCamera != null) {
+            mCamera.setAutofocusInterval(autofocusIntervalInMs);
         }
     }
 
@@ -170,8 +767,13 @@ public class QRCodeReaderView extends SurfaceView
      * Trigger an auto focus
      */
     public void forceAutoFocus() {
-        if (mCameraManager != null) {
-            mCameraManager.forceAutoFocus();
+        if (mCamera != null) {
+            mCameraThread.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCamera.forceAutoFocus();
+                }
+            });
         }
     }
 
@@ -181,9 +783,113 @@ public class QRCodeReaderView extends SurfaceView
      *
      * @param enabled torch enabled/disabled.
      */
-    public void setTorchEnabled(boolean enabled) {
-        if (mCameraManager != null) {
-            mCameraManager.setTorchEnabled(enabled);
+    public void setTorchEnabled(final boolean enabled) {
+        if (mCamera != null) {
+            mCameraThread.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCamera.setTorchEnabled(enabled);
+                }
+            });
+        }
+    }
+
+    /**
+     * Set preview buffer recycling enabled/disabled. When enabled the camera fills a small pool of
+     * reused buffers instead of allocating a new one for every preview frame. The camera2 API
+     * always recycles its images.
+     * default value is true
+     *
+     * @param enabled preview buffer recycling enabled/disabled.
+     */
+    public void setPreviewBufferEnabled(final boolean enabled) {
+        if (mCamera != null) {
+            mCameraThread.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCamera.setPreviewBufferEnabled(enabled);
+                }
+            });
+        }
+    }
+
+    /**
+     * Set the policy picking the camera preview size, such as
+     * {@link ModuleDensityPreviewSizePolicy} to get the smallest frames still sharp enough for
+     * the expected codes. Takes effect the next time the camera is opened.
+     * default value is {@link AspectRatioPreviewSizePolicy}
+     *
+     * @param policy the policy, null for the default one.
+     */
+    public void setPreviewSizePolicy(final PreviewSizePolicy policy) {
+        mCameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                mCamera.setPreviewSizePolicy(policy);
+            }
+        });
+    }
+
+    /**
+     * Set camera2 enabled/disabled. When enabled, on Android 5.0 and later the camera is driven
+     * through the camera2 API, and preview frames are decoded straight from the images of the
+     * camera instead of being copied into arrays first. Older devices keep using
+     * {@link Camera}. An open camera is closed and opened again with the other API, the camera
+     * id and the preview size policy carry over.
+     * default value is false
+     *
+     * @param enabled camera2 enabled/disabled.
+     */
+    public void setCamera2Enabled(boolean enabled) {
+        final boolean camera2 = enabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+        if (enabled && !camera2) {
+            SimpleLog.i(TAG, "camera2 needs Android 5.0, keeping android.hardware.Camera");
+        }
+        final int width = getWidth();
+        final int height = getHeight();
+        final int displayOrientation = getCameraDisplayOrientation();
+        mCameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                switchCamera(camera2, width, height, displayOrientation);
+            }
+        });
+    }
+
+    /**
+     * Replaces the camera with the one of the other API, called on the camera thread.
+     */
+    private void switchCamera(boolean camera2, int width, int height, int displayOrientation) {
+        ScanCamera camera;
+        if (camera2) {
+            if (mCamera2Manager == null) {
+                mCamera2Manager = new Camera2Manager(getContext());
+            }
+            camera = mCamera2Manager;
+        } else {
+            camera = CameraManager.getCameraManager(getContext());
+        }
+        ScanCamera previous = mCamera;
+        if (camera == previous) {
+            return;
+        }
+
+        boolean reopen = previous.isOpen();
+        if (reopen) {
+            closeCamera();
+        }
+        previous.setFrameCallback(null);
+        previous.setErrorCallback(null);
+        camera.setPreviewCameraId(previous.getPreviewCameraId());
+        camera.setPreviewSizePolicy(previous.getPreviewSizePolicy());
+        camera.setDisplayOrientation(displayOrientation);
+        camera.setFrameCallback(mFrameCallback);
+        camera.setErrorCallback(mErrorCallback);
+        mCamera = camera;
+        if (reopen) {
+            setCameraState(CAMERA_STATE_OPENING);
+            openCamera(getHolder(), width, height);
         }
     }
 
@@ -194,7 +900,7 @@ public class QRCodeReaderView extends SurfaceView
      * @param cameraId camera ID of the camera to use. A negative value means "no preference".
      */
     public void setPreviewCameraId(int cameraId) {
-        mCameraManager.setPreviewCameraId(cameraId);
+        mCamera.setPreviewCameraId(cameraId);
     }
 
     /**
@@ -211,42 +917,61 @@ public class QRCodeReaderView extends SurfaceView
         setPreviewCameraId(Camera.CameraInfo.CAMERA_FACING_FRONT);
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        if (mDecodeExecutor != null) {
+            mDecodeExecutor.start();
+        }
+        if (mOnScanMetricsListener != null) {
+            removeCallbacks(mScanMetricsReporter);
+            postDelayed(mScanMetricsReporter, mScanMetricsIntervalMs);
+        }
+    }
+
     @Override
     public void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
-        if (decodeFrameTask != null) {
-            decodeFrameTask.cancel(true);
-            decodeFrameTask = null;
+        if (mDecodeExecutor != null) {
+            mDecodeExecutor.stop();
+        }
+        // Also wakes the decoders waiting for room
+        ResultQueue<DecodedResults> resultQueue = mResultQueue;
+        if (resultQueue != null) {
+            resultQueue.clear();
+        }
+        if (mResultHandler != null) {
+            mResultHandler.removeMessages(MSG_RESULTS_DELIVERED);
+            mResultHandler.removeCallbacks(mBatchFlusher);
+        }
+        ResultBatcher batcher = mResultBatcher;
+        if (batcher != null) {
+            batcher.drain();
         }
+        removeCallbacks(mScanMetricsReporter);
+        mCameraThread.quit();
     }
 
     /****************************************************
-     * SurfaceHolder.Callback,Camera.PreviewCallback
+     * SurfaceHolder.Callback,ScanCamera.FrameCallback
      ****************************************************/
 
     @Override
     public void surfaceCreated(final SurfaceHolder holder) {
         SimpleLog.d(TAG, "surfaceCreated");
 
-        try {
-            // Indicate camera, our View dimensions
-            mCameraManager.openDriver(holder, this.getWidth(), this.getHeight());
-            if (mScannerLayout != null) {
-                mScannerLayout.requestLayout();
+        // Opening and configuring the camera takes long, keep it off the main thread
+        final int width = getWidth();
+        final int height = getHeight();
+        setCameraState(CAMERA_STATE_OPENING);
+        mCameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                openCamera(holder, width, height);
             }
-        } catch (IOException | RuntimeException e) {
-            SimpleLog.w(TAG, "Can not openDriver: " + e.getMessage());
-            mCameraManager.closeDriver();
-        }
-
-        try {
-            mQRCodeReader = new QRCodeReader();
-            mCameraManager.startPreview();
-        } catch (Exception e) {
-            SimpleLog.e(TAG, "Exception: " + e.getMessage());
-            mCameraManager.closeDriver();
-        }
+        });
     }
 
     @Override
@@ -258,42 +983,124 @@ public class QRCodeReaderView extends SurfaceView
             return;
         }
 
-        if (mCameraManager.getPreviewSize() == null) {
-            SimpleLog.e(TAG, "Error: preview size does not exist");
+        // Runs after the camera was opened by surfaceCreated
+        final int displayOrientation = getCameraDisplayOrientation();
+        final int surfaceWidth = width;
+        final int surfaceHeight = height;
+        mCameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                restartPreview(displayOrientation, surfaceWidth, surfaceHeight);
+            }
+        });
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        SimpleLog.d(TAG, "surfaceDestroyed");
+
+        // The surface is gone once this returns, the camera must not draw into it anymore
+        mCameraThread.runAndWait(new Runnable() {
+            @Override
+            public void run() {
+                closeCamera();
+            }
+        });
+        setCameraState(CAMERA_STATE_CLOSED);
+    }
+
+    /**
+     * Stops the preview and closes the camera, called on the camera thread.
+     */
+    private void closeCamera() {
+        mCamera.setFrameCallback(null);
+        mCamera.stopPreview();
+        mCamera.closeDriver();
+    }
+
+    /**
+     * Closes the camera the system took away or which failed, called on the camera thread.
+     */
+    private void onCameraLost() {
+        if (!mCamera.isOpen()) {
+            // Closed or switched since
             return;
         }
+        SimpleLog.w(TAG, "Camera lost");
+        closeCamera();
+        setCameraState(CAMERA_STATE_FAILED);
+    }
+
+    /**
+     * Opens the camera and starts the preview, called on the camera thread.
+     */
+    private void openCamera(SurfaceHolder holder, int width, int height) {
+        try {
+            // Indicate camera, our View dimensions
+            mCamera.openDriver(holder, width, height);
+            mCamera.startPreview();
+            setCameraState(CAMERA_STATE_READY);
+        } catch (IOException | RuntimeException e) {
+            SimpleLog.w(TAG, "Can not openDriver: " + e.getMessage());
+            mCamera.closeDriver();
+            setCameraState(CAMERA_STATE_FAILED);
+        }
+    }
 
-        mPreviewWidth = mCameraManager.getPreviewSize().x;
-        mPreviewHeight = mCameraManager.getPreviewSize().y;
+    /**
+     * Restarts the preview in the orientation of the display and on a surface of the given
+     * size, called on the camera thread.
+     */
+    private void restartPreview(int displayOrientation, int surfaceWidth, int surfaceHeight) {
+        if (mCamera.getPreviewSize() == null) {
+            SimpleLog.e(TAG, "Error: preview size does not exist");
+            return;
+        }
 
-        mCameraManager.stopPreview();
+        mCamera.stopPreview();
 
         // Fix the camera sensor rotation
-        mCameraManager.setPreviewCallback(this);
-        mCameraManager.setDisplayOrientation(getCameraDisplayOrientation());
+        mCamera.setFrameCallback(mFrameCallback);
+        mCamera.setDisplayOrientation(displayOrientation);
+        mCamera.setSurfaceSize(surfaceWidth, surfaceHeight);
 
-        mCameraManager.startPreview();
+        mCamera.startPreview();
     }
 
-    @Override
-    public void surfaceDestroyed(SurfaceHolder holder) {
-        SimpleLog.d(TAG, "surfaceDestroyed");
+    private void setCameraState(int state) {
+        mCameraState = state;
+        mResultHandler.obtainMessage(MSG_CAMERA_STATE, state, 0).sendToTarget();
+    }
 
-        mCameraManager.setPreviewCallback(null);
-        mCameraManager.stopPreview();
-        mCameraManager.closeDriver();
+    /**
+     * Called on the main thread for every change of the camera state.
+     */
+    private void onCameraStateChanged(int state) {
+        if (state == CAMERA_STATE_READY && mScannerLayout != null) {
+            // The framing rect is only known once the camera is open
+            if (mScannerLayout instanceof ScannerCoverLayout) {
+                ((ScannerCoverLayout) mScannerLayout).setCamera(mCamera);
+            }
+            mScannerLayout.requestLayout();
+            mScannerLayout.invalidate();
+        }
+        if (mOnCameraStateListener != null) {
+            mOnCameraStateListener.onCameraStateChanged(state);
+        }
     }
 
-    // Called when camera take a frame
-    @Override
-    public void onPreviewFrame(byte[] data, Camera camera) {
-        if (!mQrDecodingEnabled || decodeFrameTask != null && (decodeFrameTask.getStatus()
-                == AsyncTask.Status.RUNNING || decodeFrameTask.getStatus() == AsyncTask.Status.PENDING)) {
+    // Called on the camera thread, or the camera2 thread, when camera take a frame
+    private void onFrame(PreviewFrame frame) {
+        mScanMetrics.onFrameDelivered();
+        if (!mQrDecodingEnabled) {
+            // Dropped, give the buffer straight back to the camera
+            frame.release();
             return;
         }
 
-        decodeFrameTask = new DecodeFrameTask(this, decodeHints);
-        decodeFrameTask.execute(data);
+        // Replaces the frame still waiting for the decoder, if any. A frame posted to an
+        // executor which was just replaced is dropped and released by it.
+        mDecodeExecutor.post(frame);
     }
 
     /**
@@ -321,7 +1128,7 @@ public class QRCodeReaderView extends SurfaceView
     private int getCameraDisplayOrientation() {
 
         Camera.CameraInfo info = new Camera.CameraInfo();
-        getCameraInfo(mCameraManager.getPreviewCameraId(), info);
+        getCameraInfo(mCamera.getPreviewCameraId(), info);
         WindowManager windowManager =
                 (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
         int rotation = windowManager.getDefaultDisplay().getRotation();
@@ -353,79 +1160,501 @@ public class QRCodeReaderView extends SurfaceView
         return result;
     }
 
-    private static class DecodeFrameTask extends AsyncTask<byte[], Void, Result> {
+    /**
+     * Decodes a preview frame, called on the decode thread.
+     *
+     * @param worker the state of the calling worker, left holding the framing window and the
+     *               rotation of the frame, for the snapshot.
+     * @return the decoded results, or null if nothing was found.
+     */
+    private Result[] decodeFrame(PreviewFrame frame, DecodeWorker worker) {
+        ScanCamera camera = mCamera;
+        Rect rect = camera.getFramingRectInPreview();
+
+        // Crop the framing rect out of the preview while rotating it, the rest of the
+        // frame is never read
+        int rotation = camera.getFrameRotation();
+        int[] framingWindow = worker.framingWindow;
+        if (rect != null) {
+            framingWindow[0] = rect.left;
+            framingWindow[1] = rect.top;
+            framingWindow[2] = rect.width();
+            framingWindow[3] = rect.height();
+        } else {
+            rotation = 0;
+            framingWindow[0] = 0;
+            framingWindow[1] = 0;
+            framingWindow[2] = frame.getWidth();
+            framingWindow[3] = frame.getHeight();
+        }
+        worker.rotation = rotation;
+        int[] window = worker.window;
+        System.arraycopy(framingWindow, 0, window, 0, window.length);
+
+        // Narrow it down to where the code was last seen
+        RegionTracker regionTracker = mRegionTracker;
+        if (regionTracker != null) {
+            regionTracker.getWindow(window[0], window[1], window[2], window[3], window);
+        }
+        worker.clearPoints();
 
-        private final WeakReference<QRCodeReaderView> viewRef;
-        private final WeakReference<Map<DecodeHintType, Object>> hintsRef;
+        TiledDecoder tiledDecoder = mTiledDecoder;
+        Result[] results = null;
+        try {
+            if (tiledDecoder != null) {
+                results = tiledDecoder.decodeMultiple(frame.luminance(rotation,
+                        window[0], window[1], window[2], window[3]));
+                if (!mMultipleDecodingEnabled) {
+                    results = new Result[]{results[0]};
+                }
+                SimpleLog.d(TAG, "Decoded in tiles");
+            } else if (mMultipleDecodingEnabled) {
+                results = frame.decodeMultiple(worker.decoder, rotation,
+                        window[0], window[1], window[2], window[3]);
+                SimpleLog.d(TAG, "Decoded at level " + worker.decoder.getLastLevel());
+            } else {
+                results = new Result[]{frame.decode(worker.decoder, rotation,
+                        window[0], window[1], window[2], window[3])};
+                SimpleLog.d(TAG, "Decoded at level " + worker.decoder.getLastLevel());
+            }
+        } catch (ChecksumException e) {
+            SimpleLog.d(TAG, "ChecksumException", e);
+        } catch (NotFoundException e) {
+            SimpleLog.d(TAG, wasSkipped(worker, tiledDecoder) ? "Frame skipped"
+                    : "No code found");
+        } catch (FormatException e) {
+            SimpleLog.d(TAG, "FormatException", e);
+        } catch (RuntimeException e) {
+            SimpleLog.w(TAG, "Unexpected exception while decoding", e);
+        }
 
-        DecodeFrameTask(QRCodeReaderView view, Map<DecodeHintType, Object> hints) {
-            viewRef = new WeakReference<>(view);
-            hintsRef = new WeakReference<>(hints);
+        if (wasSkipped(worker, tiledDecoder)) {
+            // Nothing was learnt about the code, keep the tracker as it is
+            return null;
         }
 
-        @Override
-        protected Result doInBackground(byte[]... params) {
-            final QRCodeReaderView view = viewRef.get();
-            if (view == null) {
-                return null;
+        if (regionTracker != null) {
+            if (results != null) {
+                // Box the decoded codes rather than whatever else the readers came across
+                worker.clearPoints();
+                for (Result result : results) {
+                    worker.addPoints(result.getResultPoints());
+                }
+            }
+            regionTracker.onFrameDecoded(results != null, worker.points, worker.pointCount,
+                    window[0], window[1]);
+            if (results != null) {
+                // Listeners get points relative to the framing rect, wherever the code was
+                // decoded, the tracker above was fed the points of the narrowed window
+                RegionTracker.toScanWindow(results, window[0], window[1],
+                        framingWindow[0], framingWindow[1]);
             }
+        }
+        return results;
+    }
 
-            Rect rect = view.mCameraManager.getFramingRectInPreview();
+    /**
+     * @return true if the quality gate of the worker skipped the frame, tiled frames never go
+     * through it.
+     */
+    private static boolean wasSkipped(DecodeWorker worker, TiledDecoder tiledDecoder) {
+        return tiledDecoder == null && worker.decoder.wasLastFrameSkipped();
+    }
 
-            //modify here
-            byte[] rotatedData = new byte[params[0].length];
-            for (int y = 0; y < view.mPreviewHeight; y++) {
-                for (int x = 0; x < view.mPreviewWidth; x++)
-                    rotatedData[x * view.mPreviewHeight + view.mPreviewHeight - y - 1] =
-                            params[0][x + y * view.mPreviewWidth];
+    /**
+     * Called on the executor of the result queue with the next queued results.
+     */
+    private void deliverResults(List<DecodedResults> batch) {
+        boolean notified = false;
+        Bitmap snapshot = null;
+        for (DecodedResults decoded : batch) {
+            if (decoded.snapshot != null) {
+                snapshot = decoded.snapshot;
             }
-            int w = view.mPreviewHeight;
-            int h = view.mPreviewWidth;
-
-            final PlanarYUVLuminanceSource source;
-            if (rect != null) {
-                source = view.mCameraManager.buildLuminanceSource(rotatedData, w, h, rect);
+            if (decoded.target == TARGET_BATCH) {
+                OnQRCodesBatchListener listener = mOnQRCodesBatchListener;
+                if (listener != null) {
+                    listener.onQRCodesBatch(decoded.results);
+                    notified = true;
+                }
+            } else if (decoded.target == TARGET_MULTIPLE) {
+                OnQRCodesReadListener listener = mOnQRCodesReadListener;
+                if (listener != null) {
+                    listener.onQRCodesRead(decoded.results);
+                    notified = true;
+                }
             } else {
-                source = view.mCameraManager.buildLuminanceSource(params[0], view.mPreviewWidth,
-                        view.mPreviewHeight);
+                // Notify we found a QRCode
+                OnQRCodeReadListener listener = mOnQRCodeReadListener;
+                if (listener != null) {
+                    listener.onQRCodeRead(decoded.results.get(0).getText());
+                    notified = true;
+                }
+            }
+        }
+
+        if (notified) {
+            mScanMetrics.onResultDelivered();
+        }
+
+        // The snapshot and the beep belong to the main thread, whatever runs the listeners
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            onResultsDelivered(snapshot, notified);
+        } else {
+            mResultHandler.obtainMessage(MSG_RESULTS_DELIVERED, notified ? 1 : 0, 0, snapshot)
+                    .sendToTarget();
+        }
+    }
+
+    /**
+     * Called on the main thread once per call to the listeners.
+     */
+    private void onResultsDelivered(Bitmap snapshot, boolean notified) {
+        if (snapshot != null && mScannerLayout instanceof ScannerCoverLayout) {
+            showResultSnapshot(snapshot);
+        }
+
+        // A single beep for the whole batch
+        if (notified) {
+            mBeepManager.playBeepSoundAndVibrate();
+        }
+    }
+
+    /**
+     * Called on a decode thread with the codes of a frame which are to be reported.
+     */
+    private void reportResults(List<Result> results, int target, DecodedFrame decoded) {
+        ResultBatcher batcher = mResultBatcher;
+        if (batcher == null) {
+            Bitmap snapshot = null;
+            if (decoded.frame != null) {
+                snapshot = renderResultSnapshot(decoded.frame, decoded.rotation,
+                        decoded.framingWindow);
             }
+            mResultQueue.offer(new DecodedResults(results, target, snapshot));
+            return;
+        }
 
-            int[] pixels = source.renderThumbnail();
-            int width = source.getThumbnailWidth();
-            int height = source.getThumbnailHeight();
-            Bitmap b = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
+        switch (batcher.add(results, SystemClock.elapsedRealtime())) {
+            case ResultBatcher.FULL:
+                flushBatch(batcher);
+                break;
+            case ResultBatcher.STARTED:
+                mResultHandler.postDelayed(mBatchFlusher, batcher.getIntervalMs());
+                break;
+            default:
+                break;
+        }
+    }
 
-            final HybridBinarizer hybBin = new HybridBinarizer(source);
-            final BinaryBitmap bitmap = new BinaryBitmap(hybBin);
+    /**
+     * Hands the current batch over to the result queue if it is due, or waits for it on the
+     * main thread.
+     */
+    private void flushBatch(ResultBatcher batcher) {
+        if (batcher == null) {
+            return;
+        }
+        long wait = batcher.timeToFlush(SystemClock.elapsedRealtime());
+        if (wait > 0 && batcher == mResultBatcher) {
+            // A full batch went out in the meantime, this is the next one
+            mResultHandler.postDelayed(mBatchFlusher, wait);
+            return;
+        }
+        List<Result> results = batcher.drain();
+        if (results != null) {
+            mResultQueue.offer(new DecodedResults(results, TARGET_BATCH, null));
+        }
+    }
+
+    /**
+     * The codes of one decoded frame, or of a batch of frames, on their way to the listeners.
+     */
+    private static final class DecodedResults {
+
+        final List<Result> results;
+        // TARGET_SINGLE, TARGET_MULTIPLE or TARGET_BATCH
+        final int target;
+        // Null unless result snapshots are enabled
+        final Bitmap snapshot;
+
+        DecodedResults(List<Result> results, int target, Bitmap snapshot) {
+            this.results = results;
+            this.target = target;
+            this.snapshot = snapshot;
+        }
+    }
 
+    /**
+     * The codes found in a preview frame, on their way from the decode worker to the in order
+     * duplicate check. Holds on to the frame when a snapshot may be rendered from it.
+     */
+    private static final class DecodedFrame {
+
+        final Result[] results;
+        // Null unless result snapshots are enabled, released once the results are handled
+        final PreviewFrame frame;
+        final int rotation;
+        final int[] framingWindow;
+
+        DecodedFrame(Result[] results, PreviewFrame frame, int rotation, int[] framingWindow) {
+            this.results = results;
+            this.frame = frame;
+            this.rotation = rotation;
+            this.framingWindow = framingWindow;
+        }
+    }
+
+    private final class DecodeFrameHandler
+            implements DecodeExecutor.FrameHandler<PreviewFrame, DecodedFrame> {
+
+        // One decoder per decode worker, each only ever used by its own worker
+        private final DecodeWorker[] workers;
+        private final int workerCount;
+        private String lastText;
+        private long lastSequence;
+
+        DecodeFrameHandler(int workerCount) {
+            this.workers = new DecodeWorker[workerCount];
+            this.workerCount = workerCount;
+            for (int i = 0; i < workerCount; i++) {
+                workers[i] = new DecodeWorker();
+                workers[i].decoder.setMetrics(mScanMetrics);
+            }
+        }
+
+        @Override
+        public DecodedFrame onDecodeFrame(PreviewFrame frame, int worker) {
+            DecodeWorker decodeWorker = workers[worker];
+            // Only rebuilds the reader chain when the hints have changed
+            decodeWorker.decoder.setHints(decodeHints);
+            decodeWorker.decoder.setDownsampledPassEnabled(mDownsampledPassEnabled);
+            decodeWorker.decoder.setQualityGate(mMinSharpness, mMinContrast);
+
+            // Batched codes get no snapshot
+            boolean snapshot = mResultSnapshotEnabled && mResultBatcher == null;
+            Result[] results = null;
+            try {
+                results = decodeFrame(frame, decodeWorker);
+            } finally {
+                if (results == null || !snapshot) {
+                    frame.release();
+                }
+            }
+            if (results == null) {
+                return null;
+            }
+            if (!snapshot) {
+                return new DecodedFrame(results, null, 0, null);
+            }
+            // Kept until the results are known to be reported, the snapshot is rendered then
+            return new DecodedFrame(results, frame, decodeWorker.rotation,
+                    decodeWorker.framingWindow.clone());
+        }
+
+        @Override
+        public void onDropFrame(PreviewFrame frame) {
+            mScanMetrics.onFrameDropped();
+            frame.release();
+        }
+
+        @Override
+        public void onFrameResult(DecodedFrame decoded, long sequence) {
             try {
-                return view.mQRCodeReader.decode(bitmap, hintsRef.get());
-            } catch (ChecksumException e) {
-                SimpleLog.d(TAG, "ChecksumException", e);
-            } catch (NotFoundException e) {
-                SimpleLog.d(TAG, "No QR Code found");
-            } catch (FormatException e) {
-                SimpleLog.d(TAG, "FormatException", e);
+                // Decoded before decoding was disabled, or a code already reported
+                if (!mQrDecodingEnabled || !onFrameResult(decoded, decoded.results, sequence)) {
+                    mScanMetrics.onFrameDropped();
+                }
             } finally {
-                view.mQRCodeReader.reset();
+                if (decoded.frame != null) {
+                    decoded.frame.release();
+                }
             }
+        }
 
-            return null;
+        /**
+         * @return true if codes of the frame were reported, false if they were all left out
+         * as duplicates.
+         */
+        private boolean onFrameResult(DecodedFrame decoded, Result[] results, long sequence) {
+            RecentPayloads continuousPayloads = mContinuousPayloads;
+            if (mMultipleDecodingEnabled) {
+                // Codes already reported in this session, or within the window, are left out
+                long now = SystemClock.elapsedRealtime();
+                List<Result> newResults = new ArrayList<>(results.length);
+                for (Result result : results) {
+                    if (continuousPayloads != null ? continuousPayloads.add(result.getText(), now)
+                            : mReportedPayloads.add(result.getText())) {
+                        newResults.add(result);
+                    }
+                }
+                if (newResults.isEmpty()) {
+                    return false;
+                }
+                reportResults(newResults, TARGET_MULTIPLE, decoded);
+                return true;
+            }
+
+            Result result = results[0];
+            if (continuousPayloads != null) {
+                // Covers the frames decoded side by side as well
+                if (!continuousPayloads.add(result.getText(), SystemClock.elapsedRealtime())) {
+                    return false;
+                }
+                reportResults(Collections.singletonList(result), TARGET_SINGLE, decoded);
+                return true;
+            }
+
+            // Frames decoded side by side see the same code, report it once per round of
+            // workers, as often as a single worker would
+            boolean duplicate = result.getText().equals(lastText)
+                    && sequence - lastSequence < workerCount;
+            if (duplicate) {
+                return false;
+            }
+            lastText = result.getText();
+            lastSequence = sequence;
+
+            reportResults(Collections.singletonList(result), TARGET_SINGLE, decoded);
+            return true;
+        }
+    }
+
+    /**
+     * What a decode worker keeps from one frame to the next: its decoder, the framing window
+     * and the decoded window of the current frame and the points the readers found in it.
+     */
+    private static final class DecodeWorker implements ResultPointCallback {
+
+        private static final int MAX_POINTS = 16;
+
+        final FrameDecoder decoder = new FrameDecoder();
+        final int[] framingWindow = new int[4];
+        // The framing window, or the part of it the region tracker narrowed it down to
+        final int[] window = new int[4];
+        int rotation;
+        final ResultPoint[] points = new ResultPoint[MAX_POINTS];
+        int pointCount;
+
+        DecodeWorker() {
+            decoder.setResultPointCallback(this);
+        }
+
+        void clearPoints() {
+            pointCount = 0;
+        }
+
+        void addPoints(ResultPoint[] resultPoints) {
+            if (resultPoints == null) {
+                return;
+            }
+            for (ResultPoint point : resultPoints) {
+                foundPossibleResultPoint(point);
+            }
         }
 
         @Override
-        protected void onPostExecute(Result result) {
-            super.onPostExecute(result);
+        public void foundPossibleResultPoint(ResultPoint point) {
+            if (point != null && pointCount < MAX_POINTS) {
+                points[pointCount++] = point;
+            }
+        }
+    }
+
+    private static final class ResultHandler extends Handler {
+
+        private final WeakReference<QRCodeReaderView> viewRef;
+
+        ResultHandler(QRCodeReaderView view) {
+            super(Looper.getMainLooper());
+            viewRef = new WeakReference<>(view);
+        }
 
+        @Override
+        public void handleMessage(Message msg) {
             final QRCodeReaderView view = viewRef.get();
+            if (view == null) {
+                return;
+            }
+            switch (msg.what) {
+                case MSG_RESULTS_DELIVERED:
+                    view.onResultsDelivered((Bitmap) msg.obj, msg.arg1 == 1);
+                    break;
+                case MSG_CAMERA_STATE:
+                    view.onCameraStateChanged(msg.arg1);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Render the framing window into the snapshot bitmap the layout is not drawing, it is only
+     * (re)allocated when the size of the framing window changes. Called on a decode thread.
+     *
+     * @return the rendered bitmap, to be shown by {@link #showResultSnapshot(Bitmap)}.
+     */
+    private Bitmap renderResultSnapshot(PreviewFrame frame, int rotation, int[] window) {
+        synchronized (mSnapshotLock) {
+            if (frame.getData() != null) {
+                renderResultSnapshot(new RotatedYUVLuminanceSource(frame.getData(),
+                        frame.getWidth(), frame.getHeight(), rotation,
+                        window[0], window[1], window[2], window[3]));
+            } else {
+                renderResultSnapshot(new RotatedPlaneLuminanceSource(frame.getPlane(),
+                        frame.getWidth(), frame.getHeight(), frame.getRowStride(),
+                        frame.getPixelStride(), rotation,
+                        window[0], window[1], window[2], window[3]));
+            }
+            return mResultSnapshot;
+        }
+    }
 
-            // Notify we found a QRCode
-            if (view != null && result != null && view.mOnQRCodeReadListener != null) {
-                view.mOnQRCodeReadListener.onQRCodeRead(result.getText());
+    private void renderResultSnapshot(RotatedYUVLuminanceSource source) {
+        int width = source.getThumbnailWidth();
+        int height = source.getThumbnailHeight();
+        source.renderThumbnail(obtainResultSnapshotPixels(width, height));
+        mResultSnapshot.setPixels(mResultSnapshotPixels, 0, width, 0, 0, width, height);
+    }
 
-                view.mBeepManager.playBeepSoundAndVibrate();
+    /**
+     * Same as {@link #renderResultSnapshot(RotatedYUVLuminanceSource)}, for frames read from
+     * the plane of a camera2 image.
+     */
+    private void renderResultSnapshot(RotatedPlaneLuminanceSource source) {
+        int width = source.getThumbnailWidth();
+        int height = source.getThumbnailHeight();
+        source.renderThumbnail(obtainResultSnapshotPixels(width, height));
+        mResultSnapshot.setPixels(mResultSnapshotPixels, 0, width, 0, 0, width, height);
+    }
+
+    private int[] obtainResultSnapshotPixels(int width, int height) {
+        if (mResultSnapshot == null || mResultSnapshot.getWidth() != width
+                || mResultSnapshot.getHeight() != height) {
+            mResultSnapshot = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        if (mResultSnapshotPixels == null || mResultSnapshotPixels.length != width * height) {
+            mResultSnapshotPixels = new int[width * height];
+        }
+        return mResultSnapshotPixels;
+    }
+
+    /**
+     * Hands a rendered snapshot to the layout, called on the main thread. The bitmap shown so
+     * far becomes the one the decoders render into.
+     */
+    private void showResultSnapshot(Bitmap snapshot) {
+        synchronized (mSnapshotLock) {
+            if (snapshot == mResultSnapshot) {
+                mResultSnapshot = mShownSnapshot;
+                mShownSnapshot = snapshot;
+            } else if (snapshot != mShownSnapshot) {
+                // Replaced by a bitmap of another size since it was rendered
+                return;
             }
         }
+        ((ScannerCoverLayout) mScannerLayout).drawResultBitmap(snapshot);
     }
 
     /**
@@ -434,6 +1663,9 @@ public class QRCodeReaderView extends SurfaceView
      */
     public void touchScannerLayout(View view) {
         this.mScannerLayout = view;
+        if (view instanceof ScannerCoverLayout && mCamera != null) {
+            ((ScannerCoverLayout) view).setCamera(mCamera);
+        }
     }
 
     /**
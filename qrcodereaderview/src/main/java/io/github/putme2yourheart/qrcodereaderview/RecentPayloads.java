@@ -0,0 +1,89 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded set of recently reported payloads, used to report each code once per scanning
+ * session, or once per window of time in continuous scanning. When full, the payload seen
+ * longest ago is forgotten, so codes still in view are the last to go.
+ */
+final class RecentPayloads {
+
+    // Payload -> time it was last reported
+    private final Map<String, Long> payloads;
+    private final long windowMs;
+
+    /**
+     * Remembers payloads until {@link #clear()}.
+     */
+    RecentPayloads(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param windowMs how long a reported payload is held back, in the unit of the times given
+     *                 to {@link #add(String, long)}.
+     */
+    RecentPayloads(int capacity, long windowMs) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0.");
+        }
+        if (windowMs <= 0) {
+            throw new IllegalArgumentException("Window must be greater than 0.");
+        }
+        this.windowMs = windowMs;
+        this.payloads = new LruMap(capacity);
+    }
+
+    /**
+     * @return true if the payload was not reported recently, it is then remembered.
+     */
+    synchronized boolean add(String payload) {
+        return add(payload, 0);
+    }
+
+    /**
+     * Same as {@link #add(String)}, a payload reported more than the window ago is reported
+     * again.
+     *
+     * @param now the current time, such as {@code SystemClock.elapsedRealtime()}.
+     * @return true if the payload was not reported within the window, it is then remembered
+     * as reported now.
+     */
+    synchronized boolean add(String payload, long now) {
+        // Seeing the payload again makes it the most recently used, even when held back
+        Long reported = payloads.get(payload);
+        if (reported != null && now - reported < windowMs) {
+            return false;
+        }
+        payloads.put(payload, now);
+        return true;
+    }
+
+    synchronized boolean contains(String payload) {
+        return payloads.containsKey(payload);
+    }
+
+    synchronized void clear() {
+        payloads.clear();
+    }
+
+    // Ordered by access, the least recently seen payload goes first
+    private static final class LruMap extends LinkedHashMap<String, Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > capacity;
+        }
+    }
+}
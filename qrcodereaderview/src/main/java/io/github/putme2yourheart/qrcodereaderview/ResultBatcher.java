@@ -0,0 +1,90 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects decoded codes into batches, a batch is due once it holds {@code maxCount} codes or
+ * its first code is {@code intervalMs} old. Whoever feeds it drains the due batches, nothing
+ * is timed in here.
+ */
+final class ResultBatcher {
+
+    /**
+     * The codes started a new batch.
+     */
+    static final int STARTED = 0;
+    /**
+     * The codes joined the current batch.
+     */
+    static final int ADDED = 1;
+    /**
+     * The batch holds {@code maxCount} codes or more, it is due.
+     */
+    static final int FULL = 2;
+
+    private final long intervalMs;
+    private final int maxCount;
+
+    private List<Result> batch;
+    private long startedAt;
+
+    ResultBatcher(long intervalMs, int maxCount) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than 0.");
+        }
+        if (maxCount <= 0) {
+            throw new IllegalArgumentException("Count must be greater than 0.");
+        }
+        this.intervalMs = intervalMs;
+        this.maxCount = maxCount;
+    }
+
+    long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * Adds the codes of a frame to the current batch, starting a new one if there is none.
+     *
+     * @param now the current time, such as {@code SystemClock.elapsedRealtime()}.
+     * @return {@link #STARTED}, {@link #ADDED} or {@link #FULL}.
+     */
+    synchronized int add(List<Result> results, long now) {
+        boolean started = batch == null;
+        if (started) {
+            batch = new ArrayList<>(maxCount);
+            startedAt = now;
+        }
+        batch.addAll(results);
+        if (batch.size() >= maxCount) {
+            return FULL;
+        }
+        return started ? STARTED : ADDED;
+    }
+
+    /**
+     * @return the time left before the current batch is due, 0 if it is, -1 if there is no
+     * batch.
+     */
+    synchronized long timeToFlush(long now) {
+        if (batch == null) {
+            return -1;
+        }
+        if (batch.size() >= maxCount) {
+            return 0;
+        }
+        return Math.max(0, startedAt + intervalMs - now);
+    }
+
+    /**
+     * @return the current batch, null if there is none. The next code starts a new one.
+     */
+    synchronized List<Result> drain() {
+        List<Result> drained = batch;
+        batch = null;
+        return drained;
+    }
+}
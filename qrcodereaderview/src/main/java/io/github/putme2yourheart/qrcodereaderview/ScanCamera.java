@@ -0,0 +1,146 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * What {@link QRCodeReaderView} needs from a camera: open it on a surface, run the preview,
+ * hand its frames over for decoding and map the framing rect into them.
+ * <p>
+ * {@link CameraManager} talks to {@code android.hardware.Camera} and works everywhere,
+ * {@link Camera2Manager} talks to {@code android.hardware.camera2} on Android 5.0 and later.
+ * Every method but {@link #getFramingRect()}, {@link #getFramingRectInPreview()} and
+ * {@link #getFrameRotation()} is called from the camera thread of the view.
+ */
+interface ScanCamera {
+
+    interface FrameCallback {
+
+        /**
+         * Called for every preview frame. The frame belongs to the callback until it is given
+         * back with {@link PreviewFrame#release()}, which may happen on any thread.
+         *
+         * @param frame the frame, in sensor orientation.
+         */
+        void onPreviewFrame(PreviewFrame frame);
+    }
+
+    interface ErrorCallback {
+
+        /**
+         * Called on any thread when the open camera was taken by another app or failed. The
+         * camera stays open until {@link #closeDriver()} is called.
+         */
+        void onCameraError();
+    }
+
+    /**
+     * Set the callback preview frames are handed to.
+     *
+     * @param callback the callback, null to stop receiving frames.
+     */
+    void setFrameCallback(FrameCallback callback);
+
+    /**
+     * Set the callback told when the open camera is lost.
+     *
+     * @param callback the callback, null to not be told.
+     */
+    void setErrorCallback(ErrorCallback callback);
+
+    /**
+     * Opens the camera and configures it for a view of the given size.
+     *
+     * @param holder The surface object which the camera will draw preview frames into.
+     * @throws IOException Indicates the camera driver failed to open.
+     */
+    void openDriver(SurfaceHolder holder, int width, int height) throws IOException;
+
+    /**
+     * Closes the camera if still in use.
+     */
+    void closeDriver();
+
+    boolean isOpen();
+
+    /**
+     * Asks the camera to begin drawing preview frames to the screen and delivering them.
+     */
+    void startPreview();
+
+    /**
+     * Tells the camera the size the preview surface was changed to, before the preview is
+     * started again for it.
+     */
+    void setSurfaceSize(int width, int height);
+
+    /**
+     * Tells the camera to stop drawing and delivering preview frames.
+     */
+    void stopPreview();
+
+    /**
+     * @param degrees the rotation of the preview on the display, as set with
+     *                {@code android.hardware.Camera#setDisplayOrientation(int)}.
+     */
+    void setDisplayOrientation(int degrees);
+
+    /**
+     * @return the size of the preview frames in sensor orientation, null until the camera was
+     * opened.
+     */
+    Point getPreviewSize();
+
+    /**
+     * @return the rectangle codes are read from, in view coordinates, null until the camera
+     * was opened.
+     */
+    Rect getFramingRect();
+
+    /**
+     * @return {@link #getFramingRect()} in the coordinates of a preview frame rotated by
+     * {@link #getFrameRotation()}, null until the camera was opened.
+     */
+    Rect getFramingRectInPreview();
+
+    /**
+     * @return the clockwise rotation, 0, 90, 180 or 270, which turns preview frames to the
+     * orientation of the view.
+     */
+    int getFrameRotation();
+
+    void setAutofocusInterval(long autofocusIntervalInMs);
+
+    void forceAutoFocus();
+
+    void setTorchEnabled(boolean enabled);
+
+    void setPreviewBufferEnabled(boolean enabled);
+
+    /**
+     * Sets the policy picking the preview size, used the next time the camera is opened.
+     *
+     * @param policy the policy, null for {@link AspectRatioPreviewSizePolicy}.
+     */
+    void setPreviewSizePolicy(PreviewSizePolicy policy);
+
+    /**
+     * @return the policy set with {@link #setPreviewSizePolicy(PreviewSizePolicy)}, never null.
+     */
+    PreviewSizePolicy getPreviewSizePolicy();
+
+    /**
+     * @param cameraId index of the camera to use. A negative value means "no preference".
+     */
+    void setPreviewCameraId(int cameraId);
+
+    int getPreviewCameraId();
+
+    /**
+     * Gives a frame handed to the frame callback back to the camera.
+     */
+    void releaseFrame(PreviewFrame frame);
+}
@@ -77,7 +77,8 @@ public final class ScannerCoverLayout extends ViewGroup {
     private Collection<ResultPoint> possibleResultPoints;
     private Collection<ResultPoint> lastPossibleResultPoints;
 
-    private CameraManager mCameraManager;
+    // The camera the framing rect comes from, set by QRCodeReaderView
+    private volatile ScanCamera mCamera;
 
     // This constructor is used when the class is built from an XML resource.
     public ScannerCoverLayout(Context context, AttributeSet attrs) {
@@ -94,7 +95,7 @@ public final class ScannerCoverLayout extends ViewGroup {
         resultColor = array.getColor(R.styleable.ScannerCoverLayout_result_color, 0xB0000000);
 
         // Initialize these once for performance rather than calling them every time in onDraw().
-        mCameraManager = CameraManager.getCameraManager(context);
+        mCamera = CameraManager.getCameraManager(context);
         paint = new Paint();
         paint.setAntiAlias(true);
         scannerAlpha = 0;
@@ -106,6 +107,13 @@ public final class ScannerCoverLayout extends ViewGroup {
         setWillNotDraw(false);
     }
 
+    /**
+     * Set the camera the framing rect is taken from.
+     */
+    void setCamera(ScanCamera camera) {
+        mCamera = camera;
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         final int size = getChildCount();
@@ -115,7 +123,7 @@ public final class ScannerCoverLayout extends ViewGroup {
             measureChild(child, widthMeasureSpec, heightMeasureSpec);
         }
 
-        Rect rect = mCameraManager.getFramingRect();
+        Rect rect = mCamera.getFramingRect();
 
         if (topView != null) {
             LayoutParams layoutParams = topView.getLayoutParams();
@@ -139,7 +147,7 @@ public final class ScannerCoverLayout extends ViewGroup {
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         if (topView != null) {
             LayoutParams layoutParams = topView.getLayoutParams();
-            Rect rect = mCameraManager.getFramingRect();
+            Rect rect = mCamera.getFramingRect();
             if (rect != null) {
                 layoutParams.height = rect.top;
                 layoutParams.width = r;
@@ -150,7 +158,7 @@ public final class ScannerCoverLayout extends ViewGroup {
 
         if (bottomView != null) {
             LayoutParams layoutParams = bottomView.getLayoutParams();
-            Rect rect = mCameraManager.getFramingRect();
+            Rect rect = mCamera.getFramingRect();
             if (rect != null) {
                 layoutParams.height = b - rect.bottom;
                 layoutParams.width = r;
@@ -182,7 +190,7 @@ public final class ScannerCoverLayout extends ViewGroup {
 
     @Override
     public void onDraw(Canvas canvas) {
-        Rect frame = mCameraManager.getFramingRect();
+        Rect frame = mCamera.getFramingRect();
         if (frame == null) {
             return;
         }
@@ -0,0 +1,44 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads decoding tiles for {@link QRCodeImageDecoder} and the tiled decoding of
+ * {@link QRCodeReaderView}, one per CPU, created the first time they are needed. They go away
+ * after a while without work.
+ * <p>
+ * A plain ThreadPoolExecutor rather than a ForkJoinPool, which is only there from Android 5.0.
+ */
+final class TilePool {
+
+    static final ExecutorService EXECUTOR;
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    static {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "QRCodeTile-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        EXECUTOR = executor;
+    }
+
+    private TilePool() {
+    }
+}
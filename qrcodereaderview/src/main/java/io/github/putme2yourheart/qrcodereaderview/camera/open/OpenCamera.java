@@ -31,6 +31,10 @@ public final class OpenCamera {
         this.orientation = orientation;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     public Camera getCamera() {
         return camera;
     }
@@ -0,0 +1,130 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CameraConfigCacheTest {
+
+    private static final String KEY = CameraConfigCache.key(0, "Pixel 2", 1080, 1794);
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("camera", ".properties");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void entries_surviveANewInstance() {
+        new CameraConfigCache(file).put(KEY, new CameraConfigCache.Entry(1280, 720, "auto",
+                false, true));
+
+        CameraConfigCache.Entry entry = new CameraConfigCache(file).get(KEY);
+        assertEquals(1280, entry.previewWidth);
+        assertEquals(720, entry.previewHeight);
+        assertEquals("auto", entry.focusMode);
+        assertFalse(entry.safeMode);
+        assertTrue(entry.torchSupported);
+    }
+
+    @Test
+    public void safeModeEntry_hasNoFocusMode() {
+        CameraConfigCache cache = new CameraConfigCache(file);
+        cache.put(KEY, new CameraConfigCache.Entry(1280, 720, "auto", false, true));
+        cache.put(KEY, new CameraConfigCache.Entry(640, 480, null, true, false));
+
+        CameraConfigCache.Entry entry = new CameraConfigCache(file).get(KEY);
+        assertEquals(640, entry.previewWidth);
+        assertNull(entry.focusMode);
+        assertTrue(entry.safeMode);
+        assertFalse(entry.torchSupported);
+    }
+
+    @Test
+    public void keys_tellCamerasModelsAndSizesApart() {
+        CameraConfigCache cache = new CameraConfigCache(file);
+        cache.put(KEY, new CameraConfigCache.Entry(1280, 720, "auto", false, true));
+
+        assertNull(cache.get(CameraConfigCache.key(1, "Pixel 2", 1080, 1794)));
+        assertNull(cache.get(CameraConfigCache.key(0, "Pixel 3", 1080, 1794)));
+        assertNull(cache.get(CameraConfigCache.key(0, "Pixel 2", 1794, 1080)));
+    }
+
+    @Test
+    public void removedEntry_isGoneForGood() {
+        CameraConfigCache cache = new CameraConfigCache(file);
+        cache.put(KEY, new CameraConfigCache.Entry(1280, 720, "auto", false, true));
+        cache.remove(KEY);
+
+        assertNull(cache.get(KEY));
+        assertNull(new CameraConfigCache(file).get(KEY));
+    }
+
+    @Test
+    public void fileOfAnotherVersion_isIgnored() throws IOException {
+        new CameraConfigCache(file).put(KEY, new CameraConfigCache.Entry(1280, 720, "auto",
+                false, true));
+        Properties properties = load();
+        properties.setProperty("version", Integer.toString(CameraConfigCache.VERSION + 1));
+        store(properties);
+
+        assertNull(new CameraConfigCache(file).get(KEY));
+    }
+
+    @Test
+    public void malformedEntry_isDropped() throws IOException {
+        new CameraConfigCache(file).put(KEY, new CameraConfigCache.Entry(1280, 720, "auto",
+                false, true));
+        Properties properties = load();
+        properties.setProperty(KEY + ".previewSize", "1280");
+        store(properties);
+
+        assertNull(new CameraConfigCache(file).get(KEY));
+        assertFalse(load().containsKey(KEY + ".previewSize"));
+    }
+
+    @Test
+    public void missingFile_isEmpty() {
+        assertNull(new CameraConfigCache(new File(file, "missing")).get(KEY));
+    }
+
+    private Properties load() throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    private void store(Properties properties) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class PreviewSizePolicyTest {
+
+    // Back camera of a Nexus 5, in the order the driver lists them
+    private static final List<PreviewSize> NEXUS_5 = sizes(1920, 1080, 1280, 960, 1280, 720,
+            960, 720, 800, 480, 768, 576, 720, 576, 720, 480, 640, 480, 352, 288, 320, 240,
+            176, 144);
+    // Back camera of a Moto G, first generation
+    private static final List<PreviewSize> MOTO_G = sizes(1280, 720, 960, 720, 864, 480,
+            800, 480, 768, 432, 720, 480, 640, 480, 576, 432, 480, 320, 384, 288, 352, 288,
+            320, 240, 240, 160, 176, 144);
+
+    private static final PreviewSize PORTRAIT_1080P = new PreviewSize(1080, 1776);
+    private static final PreviewSize PORTRAIT_720P = new PreviewSize(720, 1184);
+
+    @Test
+    public void aspectRatio_prefersExactMatch() {
+        assertEquals(new PreviewSize(1280, 720), new AspectRatioPreviewSizePolicy()
+                .select(NEXUS_5, new PreviewSize(720, 1280)));
+    }
+
+    @Test
+    public void aspectRatio_picksClosestRatioWithinBounds() {
+        // 1920x1080 and 1280x960 are over MAX_PREVIEW_PIXELS
+        assertEquals(new PreviewSize(800, 480), new AspectRatioPreviewSizePolicy()
+                .select(NEXUS_5, PORTRAIT_1080P));
+        assertEquals(new PreviewSize(800, 480), new AspectRatioPreviewSizePolicy()
+                .select(MOTO_G, PORTRAIT_720P));
+    }
+
+    @Test
+    public void aspectRatio_nothingWithinBounds_keepsDefault() {
+        assertNull(new AspectRatioPreviewSizePolicy()
+                .select(sizes(1920, 1080, 176, 144), PORTRAIT_1080P));
+    }
+
+    @Test
+    public void moduleDensity_measuresFramingCrop() {
+        ModuleDensityPreviewSizePolicy policy = new ModuleDensityPreviewSizePolicy();
+        // 70% of 1080 px wide view is 756 px. The 640 px side of the preview spans the
+        // 1776 px height of the view, so the crop is 756 * 640 / 1776 = 272 px high.
+        assertEquals(272.43f * 0.5f / 33, policy.pixelsPerModule(new PreviewSize(640, 480),
+                PORTRAIT_1080P), 0.01f);
+        // Same preview, turned the other way, same crop
+        assertEquals(policy.pixelsPerModule(new PreviewSize(640, 480), PORTRAIT_1080P),
+                policy.pixelsPerModule(new PreviewSize(480, 640), PORTRAIT_1080P), 0.001f);
+    }
+
+    @Test
+    public void moduleDensity_picksSmallestSizeDenseEnough() {
+        assertEquals(new PreviewSize(640, 480), new ModuleDensityPreviewSizePolicy()
+                .select(NEXUS_5, PORTRAIT_1080P));
+        // A smaller view has a smaller framing rect, which needs fewer preview pixels
+        assertEquals(new PreviewSize(480, 320), new ModuleDensityPreviewSizePolicy()
+                .select(MOTO_G, PORTRAIT_720P));
+    }
+
+    @Test
+    public void moduleDensity_higherDensity_picksLargerSizes() {
+        assertEquals(new PreviewSize(800, 480), new ModuleDensityPreviewSizePolicy(33, 0.5f, 5)
+                .select(NEXUS_5, PORTRAIT_1080P));
+        assertEquals(new PreviewSize(1920, 1080), new ModuleDensityPreviewSizePolicy(33, 0.5f, 10)
+                .select(NEXUS_5, PORTRAIT_1080P));
+    }
+
+    @Test
+    public void moduleDensity_nothingDenseEnough_picksLargest() {
+        assertEquals(new PreviewSize(1920, 1080), new ModuleDensityPreviewSizePolicy(33, 0.5f, 20)
+                .select(NEXUS_5, PORTRAIT_1080P));
+        assertEquals(new PreviewSize(1280, 720), new ModuleDensityPreviewSizePolicy(33, 0.5f, 20)
+                .select(MOTO_G, PORTRAIT_720P));
+    }
+
+    @Test
+    public void moduleDensity_tiesGoToClosestAspectRatio() {
+        List<PreviewSize> sameArea = sizes(960, 960, 1280, 720);
+        PreviewSize view = new PreviewSize(1080, 1920);
+        assertEquals(new PreviewSize(1280, 720), new ModuleDensityPreviewSizePolicy()
+                .select(sameArea, view));
+        assertEquals(new PreviewSize(1280, 720), new ModuleDensityPreviewSizePolicy(33, 0.5f, 20)
+                .select(sameArea, view));
+    }
+
+    @Test
+    public void cacheKey_isStableAndFollowsParameters() {
+        assertEquals(new AspectRatioPreviewSizePolicy().getCacheKey(),
+                new AspectRatioPreviewSizePolicy().getCacheKey());
+        assertEquals(new ModuleDensityPreviewSizePolicy().getCacheKey(),
+                new ModuleDensityPreviewSizePolicy().getCacheKey());
+        assertNotEquals(new ModuleDensityPreviewSizePolicy().getCacheKey(),
+                new ModuleDensityPreviewSizePolicy(33, 0.5f, 4).getCacheKey());
+        assertNotEquals(new AspectRatioPreviewSizePolicy().getCacheKey(),
+                new ModuleDensityPreviewSizePolicy().getCacheKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moduleDensity_rejectsCodesLargerThanFramingRect() {
+        new ModuleDensityPreviewSizePolicy(33, 1.5f, 3);
+    }
+
+    private static List<PreviewSize> sizes(int... dimensions) {
+        List<PreviewSize> sizes = new ArrayList<>(dimensions.length / 2);
+        for (int i = 0; i < dimensions.length; i += 2) {
+            sizes.add(new PreviewSize(dimensions[i], dimensions[i + 1]));
+        }
+        return sizes;
+    }
+}
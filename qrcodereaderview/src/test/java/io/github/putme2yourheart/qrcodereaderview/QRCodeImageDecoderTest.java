@@ -0,0 +1,114 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QRCodeImageDecoderTest {
+
+    @Test
+    public void sampleSize_isPowerOf2FittingLongSide() {
+        assertEquals(1, QRCodeImageDecoder.sampleSize(1024, 768, 1024));
+        assertEquals(2, QRCodeImageDecoder.sampleSize(768, 1025, 1024));
+        assertEquals(4, QRCodeImageDecoder.sampleSize(4000, 3000, 1024));
+    }
+
+    @Test
+    public void largeCode_isFoundByFirstPassAlone() throws Exception {
+        Image image = new Image(2048, 1536);
+        image.drawCode("large", 200, 300, 800);
+
+        Result[] results = QRCodeImageDecoder.decode(image.width, image.height, image, null);
+
+        assertEquals(Collections.singletonList("large"), texts(results));
+        // No tiled pass once the first one found a code
+        assertEquals(Collections.singletonList(2), image.sampleSizes);
+        // In the coordinates of the full image
+        float x = results[0].getResultPoints()[0].getX();
+        assertTrue(x > 200 && x < 1000);
+    }
+
+    @Test
+    public void smallCode_isFoundInTiles() throws Exception {
+        Image image = new Image(2048, 1536);
+        image.drawCode("small", 1500, 1000, 58);
+
+        Result[] results = QRCodeImageDecoder.decode(image.width, image.height, image, null);
+
+        assertEquals(Collections.singletonList("small"), texts(results));
+        assertEquals(Arrays.asList(2, 1), image.sampleSizes);
+        float x = results[0].getResultPoints()[0].getX();
+        assertTrue(x > 1500 && x < 1558);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void blankImage_throwsNotFound() throws Exception {
+        Image image = new Image(1024, 768);
+
+        QRCodeImageDecoder.decode(image.width, image.height, image, null);
+    }
+
+    private static List<String> texts(Result[] results) {
+        List<String> texts = new ArrayList<>();
+        for (Result result : results) {
+            texts.add(result.getText());
+        }
+        return texts;
+    }
+
+    // A white luminance image, scaled down by keeping one pixel out of sampleSize
+    private static final class Image implements QRCodeImageDecoder.LuminanceLoader {
+
+        final int width;
+        final int height;
+        final byte[] pixels;
+        final List<Integer> sampleSizes = new ArrayList<>();
+
+        Image(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.pixels = new byte[width * height];
+            Arrays.fill(pixels, (byte) 0xff);
+        }
+
+        void drawCode(String text, int left, int top, int size) throws WriterException {
+            BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size);
+            for (int y = 0; y < code.getHeight(); y++) {
+                for (int x = 0; x < code.getWidth(); x++) {
+                    pixels[(top + y) * width + left + x] = code.get(x, y) ? 0 : (byte) 0xff;
+                }
+            }
+        }
+
+        @Override
+        public LuminanceSource load(int sampleSize) throws IOException {
+            sampleSizes.add(sampleSize);
+            int scaledWidth = width / sampleSize;
+            int scaledHeight = height / sampleSize;
+            byte[] scaled = new byte[scaledWidth * scaledHeight];
+            for (int y = 0; y < scaledHeight; y++) {
+                for (int x = 0; x < scaledWidth; x++) {
+                    scaled[y * scaledWidth + x] = pixels[y * sampleSize * width + x * sampleSize];
+                }
+            }
+            return new PlanarYUVLuminanceSource(scaled, scaledWidth, scaledHeight, 0, 0,
+                    scaledWidth, scaledHeight, false);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecentPayloadsTest {
+
+    @Test
+    public void session_reportsEachPayloadOnce() {
+        RecentPayloads payloads = new RecentPayloads(4);
+
+        assertTrue(payloads.add("a"));
+        assertFalse(payloads.add("a"));
+        assertTrue(payloads.add("b"));
+
+        payloads.clear();
+        assertTrue(payloads.add("a"));
+    }
+
+    @Test
+    public void window_reportsPayloadAgainOnceItHasPassed() {
+        RecentPayloads payloads = new RecentPayloads(4, 1000);
+
+        assertTrue(payloads.add("a", 10000));
+        assertFalse(payloads.add("a", 10500));
+        // Still held back: the window runs from the report, not from the last sighting
+        assertFalse(payloads.add("a", 10999));
+        assertTrue(payloads.add("a", 11000));
+        assertFalse(payloads.add("a", 11200));
+    }
+
+    @Test
+    public void full_forgetsPayloadSeenLongestAgo() {
+        RecentPayloads payloads = new RecentPayloads(2, 1000);
+
+        payloads.add("a", 0);
+        payloads.add("b", 0);
+        // "a" is still in view, "b" is now the one seen longest ago
+        assertFalse(payloads.add("a", 100));
+        payloads.add("c", 100);
+
+        assertTrue(payloads.contains("a"));
+        assertFalse(payloads.contains("b"));
+        assertTrue(payloads.add("b", 200));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyWindow_isRejected() {
+        new RecentPayloads(4, 0);
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.putme2yourheart.qrcodereaderview;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResultBatcherTest {
+
+    @Test
+    public void count_makesBatchDue() {
+        ResultBatcher batcher = new ResultBatcher(1000, 3);
+
+        assertEquals(ResultBatcher.STARTED, batcher.add(codes("a"), 0));
+        assertEquals(ResultBatcher.ADDED, batcher.add(codes("b"), 10));
+        assertEquals(990, batcher.timeToFlush(10));
+        assertEquals(ResultBatcher.FULL, batcher.add(codes("c"), 20));
+        assertEquals(0, batcher.timeToFlush(20));
+
+        assertEquals(Arrays.asList("a", "b", "c"), texts(batcher.drain()));
+        assertEquals(-1, batcher.timeToFlush(20));
+        assertNull(batcher.drain());
+    }
+
+    @Test
+    public void interval_makesBatchDue() {
+        ResultBatcher batcher = new ResultBatcher(1000, 10);
+
+        batcher.add(codes("a"), 5000);
+        batcher.add(codes("b", "c"), 5600);
+        assertEquals(1, batcher.timeToFlush(5999));
+        assertEquals(0, batcher.timeToFlush(6000));
+        assertEquals(Arrays.asList("a", "b", "c"), texts(batcher.drain()));
+
+        // The next code starts the clock again
+        assertEquals(ResultBatcher.STARTED, batcher.add(codes("d"), 7000));
+        assertEquals(1000, batcher.timeToFlush(7000));
+    }
+
+    @Test
+    public void frameWithManyCodes_fillsBatchAtOnce() {
+        ResultBatcher batcher = new ResultBatcher(1000, 2);
+
+        assertEquals(ResultBatcher.FULL, batcher.add(codes("a", "b", "c"), 0));
+        assertEquals(3, batcher.drain().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBatch_isRejected() {
+        new ResultBatcher(1000, 0);
+    }
+
+    private static List<Result> codes(String... texts) {
+        Result[] results = new Result[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            results[i] = new Result(texts[i], null, null, BarcodeFormat.QR_CODE);
+        }
+        return Arrays.asList(results);
+    }
+
+    private static List<String> texts(List<Result> results) {
+        String[] texts = new String[results.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = results.get(i).getText();
+        }
+        return Collections.unmodifiableList(Arrays.asList(texts));
+    }
+}